@@ -0,0 +1,163 @@
+// Times the Shopify helpers' variant sync (PageScripts.SHOPIFY_HELPERS) on large variant
+// sets, against the pre-index helpers and against the index with its WeakMap cache
+// disabled, and checks that all three pick the same variant ids.
+//
+//   node variant-index.js <dir>   where <dir> holds the scripts WriteScripts dumped
+//
+// Run through `gradle -p jvm variantBench`. The DOM is a minimal stand-in with one
+// select-based picker, so the numbers are the helpers' own work (JSON parse, lookup,
+// input update), not a browser's querySelector or layout cost.
+
+'use strict';
+
+const fs = require('fs');
+const path = require('path');
+const vm = require('vm');
+
+const dir = process.argv[2];
+const CURRENT = fs.readFileSync(path.join(dir, 'shopify-helpers.js'), 'utf8');
+const LEGACY = fs.readFileSync(path.join(dir, 'shopify-helpers-legacy.js'), 'utf8');
+
+const SHAPES = [[10, 10], [10, 10, 6], [16, 16, 8]]; // 100, 600 and 2048 variants
+const SYNCS = 2000;
+const SEED = 20240611;
+
+function random(seed) {
+    let s = seed >>> 0;
+    return function () {
+        s = (s * 1664525 + 1013904223) >>> 0;
+        return s / 4294967296;
+    };
+}
+
+// Option values carry their dimension as a prefix, so a shuffled pick can only match
+// through the unordered (sorted-tuple) path.
+function variants(shape) {
+    const out = [];
+    (function walk(dim, opts) {
+        if (dim === shape.length) {
+            out.push({
+                id: 40000000 + out.length,
+                options: opts.slice(),
+                option1: opts[0],
+                option2: opts.length > 1 ? opts[1] : null,
+                option3: opts.length > 2 ? opts[2] : null
+            });
+            return;
+        }
+        for (let i = 0; i < shape[dim]; i++) {
+            walk(dim + 1, opts.concat('d' + dim + 'v' + i));
+        }
+    })(0, []);
+    return out;
+}
+
+function page(json, dims) {
+    const listeners = {};
+    const input = { value: '', disabled: false, removeAttribute: function () {} };
+    const form = {
+        tagName: 'FORM',
+        querySelector: function (s) { return s === 'input[name="id"]' ? input : null; }
+    };
+    const selects = [];
+    const script = { textContent: json };
+    const picker = {
+        querySelector: function (s) { return s === 'script[type="application/json"]' ? script : null; },
+        querySelectorAll: function (s) { return s === 'select' ? selects : []; },
+        closest: function (s) { return s === 'form' ? form : null; }
+    };
+    for (let i = 0; i < dims; i++) {
+        selects.push({ value: '', closest: function () { return picker; } });
+    }
+    const document = {
+        readyState: 'complete',
+        querySelector: function () { return null; },
+        querySelectorAll: function (s) { return s === 'variant-radios,variant-selects' ? [picker] : []; },
+        getElementById: function () { return null; },
+        addEventListener: function (type, fn) { listeners[type] = fn; }
+    };
+    return { document: document, listeners: listeners, selects: selects, input: input };
+}
+
+function run(script, variantList, dims, picks, cached) {
+    const p = page(JSON.stringify(variantList), dims);
+    const sandbox = {
+        document: p.document,
+        location: { pathname: '/collections/all' },
+        performance: performance,
+        setTimeout: function () {}
+    };
+    sandbox.window = sandbox;
+    sandbox.top = sandbox; // the helpers only run in the top frame
+    vm.createContext(sandbox);
+    if (!cached) {
+        vm.runInContext('WeakMap=undefined;', sandbox);
+    }
+    vm.runInContext(script, sandbox);
+
+    const ids = new Array(picks.length);
+    const change = p.listeners.change;
+    const event = { target: p.selects[0] };
+    const t0 = process.hrtime.bigint();
+    for (let n = 0; n < picks.length; n++) {
+        const pick = picks[n];
+        for (let i = 0; i < dims; i++) {
+            p.selects[i].value = pick[i];
+        }
+        change(event);
+        ids[n] = p.input.value;
+    }
+    const ms = Number(process.hrtime.bigint() - t0) / 1e6;
+    return { ms: ms, ids: ids, stats: sandbox.__cngVariantStats };
+}
+
+function picksFor(variantList, rnd) {
+    const picks = [];
+    for (let n = 0; n < SYNCS; n++) {
+        const opts = variantList[Math.floor(rnd() * variantList.length)].options.slice();
+        if (n % 2) {
+            for (let i = opts.length - 1; i > 0; i--) {
+                const j = Math.floor(rnd() * (i + 1));
+                const t = opts[i];
+                opts[i] = opts[j];
+                opts[j] = t;
+            }
+        }
+        picks.push(opts);
+    }
+    return picks;
+}
+
+let failed = false;
+console.log('variants  helpers         ms/sync   parses');
+for (const shape of SHAPES) {
+    const list = variants(shape);
+    const picks = picksFor(list, random(SEED));
+    // Warm each path up once so the JIT isn't part of the comparison.
+    run(LEGACY, list, shape.length, picks.slice(0, 200), true);
+    run(CURRENT, list, shape.length, picks.slice(0, 200), false);
+    run(CURRENT, list, shape.length, picks.slice(0, 200), true);
+
+    const results = [
+        ['legacy', run(LEGACY, list, shape.length, picks, true)],
+        ['index, uncached', run(CURRENT, list, shape.length, picks, false)],
+        ['index, cached', run(CURRENT, list, shape.length, picks, true)]
+    ];
+    for (const [name, r] of results) {
+        const parses = r.stats ? String(r.stats.parses) : '-';
+        console.log(String(list.length).padStart(8) + '  ' + name.padEnd(15) + ' '
+            + (r.ms / picks.length).toFixed(4).padStart(8) + '  ' + parses.padStart(7));
+    }
+    const expected = results[0][1].ids;
+    for (const [name, r] of results.slice(1)) {
+        const mismatch = r.ids.findIndex(function (id, i) { return id !== expected[i]; });
+        if (mismatch >= 0) {
+            failed = true;
+            console.error(name + ' picked ' + r.ids[mismatch] + ' where legacy picked '
+                + expected[mismatch] + ' for ' + picks[mismatch].join(' / '));
+        }
+    }
+}
+if (failed) {
+    process.exit(1);
+}
@@ -0,0 +1,80 @@
+package com.curbngo.browser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The shouldOverrideUrlLoading whitelist check: one navigation URL against a kiosk-sized
+ * whitelist, for a mix of allowed and refused hosts, with the compiled matcher and with
+ * the HashSet lookup it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DomainMatcherBenchmark {
+
+    static final String[] URLS = {
+        "https://www.shop0.com/products/hoodie?variant=123",
+        "https://cdn.shopify.com/s/files/1/theme.js?v=42",
+        "https://checkout.pay7.net/c/abc#step2",
+        "https://tracker.example.org/collect?e=pageview",
+        "https://shop23.com.evil.io/login",
+        "about:blank",
+    };
+
+    @Param({ "8", "48" })
+    int domains;
+
+    DomainMatcher matcher;
+    LegacyWhitelist legacy;
+    int next;
+
+    /** {@code n} domains in the mix a kiosk whitelists: shops, their wildcards, CDNs and payment hosts. */
+    static List<String> whitelist(int n) {
+        List<String> list = new ArrayList<>(n);
+        for (int i = 0; list.size() < n; i++) {
+            switch (i % 4) {
+                case 0: list.add("shop" + i + ".com"); break;
+                case 1: list.add("*.cdn" + i + ".net"); break;
+                case 2: list.add("*.pay" + i + ".net"); break;
+                default: list.add("static" + i + ".example.com"); break;
+            }
+        }
+        list.add("*.shopify.com");
+        return list;
+    }
+
+    @Setup
+    public void setUp() {
+        List<String> whitelist = whitelist(domains);
+        matcher = DomainMatcher.compile(whitelist);
+        legacy = new LegacyWhitelist(new HashSet<>(whitelist));
+    }
+
+    @Benchmark
+    public boolean matcher() {
+        return matcher.matchesUrl(URLS[next++ % URLS.length]);
+    }
+
+    @Benchmark
+    public boolean legacyHashSet() {
+        return legacy.isDomainWhitelisted(URLS[next++ % URLS.length]);
+    }
+}
@@ -0,0 +1,71 @@
+package com.curbngo.browser;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-event cost of the coalescer in both delivery modes, and of draining a window of
+ * touch/scroll traffic into one batch payload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventCoalescerBenchmark {
+
+    static final String[] TYPES = { "touchstart", "keyup", "scroll", "touchstart", "touchstart", "keyup" };
+    static final int WINDOW = 120; // events in one 1 s window of brisk tapping and scrolling
+
+    EventCoalescer raw;
+    EventCoalescer batched;
+    long now;
+
+    @Setup
+    public void setUp() {
+        Map<String, Long> limits = new HashMap<>();
+        limits.put("scroll", 100L);
+        limits.put("touchstart", 50L);
+        raw = new EventCoalescer(false, 1000, limits);
+        batched = new EventCoalescer(true, 1000, limits);
+    }
+
+    @Benchmark
+    public int offerRaw() {
+        now += 8;
+        return raw.offer(EventCoalescer.CHANNEL_EVENTS, TYPES[(int) (now & 7) % TYPES.length], now);
+    }
+
+    @Benchmark
+    public int offerBatched() {
+        now += 8;
+        return batched.offer(EventCoalescer.CHANNEL_EVENTS, TYPES[(int) (now & 7) % TYPES.length], now);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WINDOW)
+    public JSONObject window() throws JSONException {
+        for (int i = 0; i < WINDOW; i++) {
+            now += 8;
+            batched.offer(i % 5 == 0 ? EventCoalescer.CHANNEL_ACTIVITY : EventCoalescer.CHANNEL_EVENTS,
+                TYPES[i % TYPES.length], now);
+        }
+        return batched.drain(now);
+    }
+}
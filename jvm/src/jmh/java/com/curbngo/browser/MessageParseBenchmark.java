@@ -0,0 +1,60 @@
+package com.curbngo.browser;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What WebAppInterface.postMessage does with each message on the JavaBridge thread
+ * before anything reaches Cordova: parse it, and run activity messages through the
+ * coalescer. Uses desktop org.json, so absolute numbers differ from a device's.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageParseBenchmark {
+
+    static final String ACTIVITY = "{\"active\":true,\"type\":\"touchstart\"}";
+    static final String CART = "{\"type\":\"cartUpdated\",\"cart\":{\"token\":\"c1a2b3\",\"item_count\":3,"
+        + "\"total_price\":15900,\"items\":[{\"id\":1,\"quantity\":1,\"title\":\"Hoodie - M / Black\"},"
+        + "{\"id\":2,\"quantity\":2,\"title\":\"Cap\"}]}}";
+
+    final EventCoalescer coalescer =
+        new EventCoalescer(true, 1000, Collections.singletonMap("touchstart", 250L));
+    long now;
+
+    @Benchmark
+    public Object activityMessage() throws JSONException {
+        return postMessage(ACTIVITY);
+    }
+
+    @Benchmark
+    public Object cartMessage() throws JSONException {
+        return postMessage(CART);
+    }
+
+    private Object postMessage(String json) throws JSONException {
+        JSONObject message = new JSONObject(json);
+        if (message.optBoolean("active", false)) {
+            int verdict = coalescer.offer(EventCoalescer.CHANNEL_ACTIVITY, message.optString("type", null), now += 16);
+            if (verdict != EventCoalescer.SEND) {
+                return null;
+            }
+        }
+        return message;
+    }
+}
@@ -0,0 +1,73 @@
+package com.curbngo.browser;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Native-side cost of one page message on each transport, reported as throughput:
+ *  - bridge: WebAppInterface.postMessage, which parses every message into a JSONObject;
+ *  - port: PortChannel.receive, which reads the type prefix and parses the payload only
+ *    when the host subscribed to that type ({@code subscribed=false} is the dropped case).
+ *
+ * Only the parsing differs between the two paths measured here. The WebView hop that
+ * carries the message (the synchronous JavaBridge call, or the posted port message) runs
+ * inside Chromium and can't be reproduced on a JVM; measure that on a device with the
+ * Browser.* trace sections instead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PortTransportBenchmark {
+
+    @Param({"activity", "cart"})
+    public String message;
+
+    @Param({"true", "false"})
+    public boolean subscribed;
+
+    String bridgeMessage;
+    String portFrame;
+    Set<String> subscriptions;
+
+    @Setup
+    public void setUp() {
+        boolean cart = "cart".equals(message);
+        bridgeMessage = cart ? MessageParseBenchmark.CART : MessageParseBenchmark.ACTIVITY;
+        String type = cart ? "cartUpdated" : "touchstart";
+        portFrame = PortFrame.encode(type, bridgeMessage);
+        subscriptions = subscribed ? Collections.singleton(type) : new HashSet<>(Collections.singleton("pageMetrics"));
+    }
+
+    @Benchmark
+    public Object bridge() throws JSONException {
+        return new JSONObject(bridgeMessage);
+    }
+
+    @Benchmark
+    public Object port() throws JSONException {
+        String type = PortFrame.type(portFrame);
+        if (!subscriptions.contains(type)) {
+            return type;
+        }
+        return PortFrame.payload(portFrame);
+    }
+}
@@ -0,0 +1,29 @@
+package com.curbngo.browser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Writes the page scripts the JS benchmarks run into the directory given as the only
+ * argument, straight from the Java constants so the benchmarks never measure a stale copy.
+ */
+public final class WriteScripts {
+
+    private WriteScripts() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        File dir = new File(args[0]);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        write(new File(dir, "shopify-helpers.js"), PageScripts.SHOPIFY_HELPERS);
+        write(new File(dir, "shopify-helpers-legacy.js"), LegacyShopifyHelpers.SHOPIFY_HELPERS);
+    }
+
+    private static void write(File file, String script) throws IOException {
+        Files.write(file.toPath(), script.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,22 @@
+package android.os;
+
+/**
+ * JVM stand-in for SystemClock.elapsedRealtime(). The clock only moves when a test
+ * moves it, so time-based accounting can be checked exactly.
+ */
+public final class SystemClock {
+
+    private static long now;
+
+    private SystemClock() {
+    }
+
+    public static synchronized long elapsedRealtime() {
+        return now;
+    }
+
+    /** Moves the clock forward by {@code ms}. Shim only. */
+    public static synchronized void advance(long ms) {
+        now += ms;
+    }
+}
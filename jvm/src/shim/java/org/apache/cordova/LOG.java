@@ -0,0 +1,22 @@
+package org.apache.cordova;
+
+/**
+ * JVM stand-in for Cordova's LOG with the calls the covered classes make. Prints
+ * warnings and errors to stderr; debug output is dropped.
+ */
+public final class LOG {
+
+    private LOG() {
+    }
+
+    public static void d(String tag, String message) {
+    }
+
+    public static void w(String tag, String message) {
+        System.err.println("W/" + tag + ": " + message);
+    }
+
+    public static void e(String tag, String message) {
+        System.err.println("E/" + tag + ": " + message);
+    }
+}
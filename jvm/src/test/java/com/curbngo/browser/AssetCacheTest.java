@@ -0,0 +1,263 @@
+package com.curbngo.browser;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** AssetCache against a local HTTP stand-in for the storefront CDN. */
+public class AssetCacheTest {
+
+    private static final List<Pattern> RULES = Collections.singletonList(Pattern.compile("\\.(js|css|png)(\\?|$)"));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private final Map<String, Asset> assets = new ConcurrentHashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final Map<String, String> lastRequest = new ConcurrentHashMap<>();
+
+    private static final class Asset {
+        final byte[] body;
+        final Map<String, String> headers = new HashMap<>();
+
+        Asset(String body, String... headers) {
+            this.body = body.getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < headers.length; i += 2) {
+                this.headers.put(headers[i], headers[i + 1]);
+            }
+        }
+    }
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                lastRequest.clear();
+                for (Map.Entry<String, List<String>> h : exchange.getRequestHeaders().entrySet()) {
+                    lastRequest.put(h.getKey().toLowerCase(), h.getValue().get(0));
+                }
+                Asset asset = assets.get(exchange.getRequestURI().getPath());
+                if (asset == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.getResponseHeaders().add("Content-Type", "text/javascript; charset=utf-8");
+                for (Map.Entry<String, String> h : asset.headers.entrySet()) {
+                    exchange.getResponseHeaders().add(h.getKey(), h.getValue());
+                }
+                exchange.sendResponseHeaders(200, asset.body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(asset.body);
+                out.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private AssetCache cache(long maxBytes) throws IOException {
+        return new AssetCache(folder.newFolder(), maxBytes, RULES);
+    }
+
+    private static String read(AssetCache.Response r) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        InputStream in = r.body;
+        for (int n; (n = in.read(buffer)) >= 0; ) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> headers(String... pairs) {
+        Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            map.put(pairs[i], pairs[i + 1]);
+        }
+        return map;
+    }
+
+    @Test
+    public void missThenHitFromDisk() throws IOException {
+        assets.put("/theme.js", new Asset("var theme=1;", "Cache-Control", "public, max-age=31536000"));
+        AssetCache cache = cache(1 << 20);
+        assertTrue(cache.matches(url("/theme.js?v=3")));
+        assertFalse(cache.matches(url("/products/hoodie")));
+
+        AssetCache.Response first = cache.get(url("/theme.js"), null);
+        assertFalse(first.hit);
+        assertEquals("text/javascript", first.mimeType);
+        assertEquals("utf-8", first.encoding);
+        assertEquals("var theme=1;", read(first));
+
+        AssetCache.Response second = cache.get(url("/theme.js"), null);
+        assertTrue(second.hit);
+        assertEquals("public, max-age=31536000", second.headers.get("cache-control"));
+        assertEquals("var theme=1;", read(second));
+        assertEquals(1, requests.get());
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.entryCount());
+        assertEquals(12, cache.sizeBytes());
+    }
+
+    @Test
+    public void survivesARestart() throws IOException {
+        assets.put("/a.css", new Asset("body{}"));
+        File dir = folder.newFolder();
+        read(new AssetCache(dir, 1 << 20, RULES).get(url("/a.css"), null));
+
+        AssetCache reopened = new AssetCache(dir, 1 << 20, RULES);
+        assertEquals(1, reopened.entryCount());
+        assertTrue(reopened.get(url("/a.css"), null).hit);
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void neverSendsCookiesAndSkipsPrivateResponses() throws IOException {
+        assets.put("/user.js", new Asset("me", "Cache-Control", "private, max-age=60"));
+        AssetCache cache = cache(1 << 20);
+        read(cache.get(url("/user.js"), headers("Cookie", "session=1", "X-Test", "yes")));
+        assertNull(lastRequest.get("cookie"));
+        assertEquals("yes", lastRequest.get("x-test"));
+        assertFalse(cache.get(url("/user.js"), null).hit);
+        assertEquals(0, cache.entryCount());
+    }
+
+    @Test
+    public void noCacheAndZeroMaxAgeAreNotStored() throws IOException {
+        assets.put("/a.js", new Asset("a", "Cache-Control", "no-cache"));
+        assets.put("/b.js", new Asset("b", "Cache-Control", "max-age=0"));
+        AssetCache cache = cache(1 << 20);
+        read(cache.get(url("/a.js"), null));
+        read(cache.get(url("/b.js"), null));
+        assertEquals(0, cache.entryCount());
+    }
+
+    @Test
+    public void expiresAfterMaxAge() throws Exception {
+        assets.put("/short.js", new Asset("v1", "Cache-Control", "max-age=1"));
+        AssetCache cache = cache(1 << 20);
+        read(cache.get(url("/short.js"), null));
+        assertTrue(cache.get(url("/short.js"), null).hit);
+
+        Thread.sleep(1100);
+        assets.put("/short.js", new Asset("v2", "Cache-Control", "max-age=60"));
+        AssetCache.Response refreshed = cache.get(url("/short.js"), null);
+        assertFalse(refreshed.hit);
+        assertEquals("v2", read(refreshed));
+        assertEquals("v2", read(cache.get(url("/short.js"), null)));
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void honoursVary() throws IOException {
+        assets.put("/img.png", new Asset("webp", "Vary", "Accept, Accept-Encoding"));
+        AssetCache cache = cache(1 << 20);
+        read(cache.get(url("/img.png"), headers("Accept", "image/webp")));
+        assertTrue(cache.get(url("/img.png"), headers("accept", "image/webp")).hit);
+
+        AssetCache.Response other = cache.get(url("/img.png"), headers("Accept", "image/png"));
+        assertFalse("another variant is fetched, not served from cache", other.hit);
+        read(other);
+        assertEquals(2, requests.get());
+        assertTrue(cache.get(url("/img.png"), headers("Accept", "image/png")).hit);
+        assertFalse(cache.get(url("/img.png"), null).hit);
+    }
+
+    @Test
+    public void varyOnCookieOrStarIsNotStored() throws IOException {
+        assets.put("/c.js", new Asset("c", "Vary", "Cookie"));
+        assets.put("/s.js", new Asset("s", "Vary", "*"));
+        AssetCache cache = cache(1 << 20);
+        read(cache.get(url("/c.js"), null));
+        read(cache.get(url("/s.js"), null));
+        assertEquals(0, cache.entryCount());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedOverBudget() throws IOException {
+        String body = new String(new char[100]).replace('\0', 'x');
+        for (int i = 1; i <= 9; i++) {
+            assets.put("/" + i + ".js", new Asset(body));
+        }
+        AssetCache cache = cache(800); // eight 100-byte entries; also the per-entry limit
+        for (int i = 1; i <= 8; i++) {
+            read(cache.get(url("/" + i + ".js"), null));
+        }
+        assertEquals(800, cache.sizeBytes());
+        assertTrue(cache.get(url("/1.js"), null).hit); // 1 is now the most recently used
+        read(cache.get(url("/9.js"), null));
+        assertEquals(1, cache.evictionCount());
+        assertEquals(8, cache.entryCount());
+        assertTrue(cache.get(url("/1.js"), null).hit);
+        assertFalse(cache.get(url("/2.js"), null).hit);
+
+        cache.configure(200, RULES);
+        assertEquals(200, cache.sizeBytes());
+    }
+
+    @Test
+    public void partialReadIsNotCommitted() throws IOException {
+        assets.put("/big.js", new Asset("0123456789"));
+        AssetCache cache = cache(1 << 20);
+        AssetCache.Response r = cache.get(url("/big.js"), null);
+        byte[] some = new byte[4];
+        assertEquals(4, r.body.read(some));
+        r.body.close();
+        assertArrayEquals("0123".getBytes(StandardCharsets.UTF_8), some);
+        assertEquals(0, cache.entryCount());
+    }
+
+    @Test
+    public void parsesCacheControlAndVary() {
+        assertEquals(60000L, AssetCache.maxAgeMs("public, max-age=60, immutable"));
+        assertEquals(60000L, AssetCache.maxAgeMs("MAX-AGE=\"60\""));
+        assertEquals(-1L, AssetCache.maxAgeMs("public"));
+        assertEquals(-1L, AssetCache.maxAgeMs(null));
+        assertEquals(Collections.singletonList("accept"), AssetCache.varyHeaders(" Accept , accept-encoding,ACCEPT"));
+        assertTrue(AssetCache.varyHeaders(null).isEmpty());
+        assertNull(AssetCache.varyHeaders("Origin, Authorization"));
+    }
+}
@@ -0,0 +1,90 @@
+package com.curbngo.browser;
+
+import android.os.SystemClock;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BackgroundMeterTest {
+
+    @Test
+    public void splitsTimeAndRequestsBetweenVisibleAndPaused() throws JSONException {
+        BackgroundMeter m = new BackgroundMeter();
+        SystemClock.advance(1000);
+        for (int i = 0; i < 10; i++) {
+            m.requestSeen();
+        }
+        m.paused();
+        SystemClock.advance(2000);
+        m.requestSeen();
+
+        JSONObject o = m.toJSON();
+        assertTrue(o.getBoolean("paused"));
+        assertEquals(1, o.getInt("pauseCount"));
+        assertEquals(1000, o.getLong("visibleMs"));
+        assertEquals(2000, o.getLong("pausedMs"));
+        assertEquals(10, o.getLong("requestsVisible"));
+        assertEquals(1, o.getLong("requestsPaused"));
+        // 10 requests a second while visible would have been 20 over the paused 2 s; 1 was made.
+        assertEquals(19, o.getLong("estimatedRequestsAvoided"));
+    }
+
+    @Test
+    public void accumulatesSpansAcrossPauses() throws JSONException {
+        BackgroundMeter m = new BackgroundMeter();
+        SystemClock.advance(100);
+        m.paused();
+        SystemClock.advance(300);
+        m.resumed();
+        SystemClock.advance(200);
+        m.paused();
+        SystemClock.advance(400);
+        m.resumed();
+        SystemClock.advance(50);
+
+        JSONObject o = m.toJSON();
+        assertFalse(o.getBoolean("paused"));
+        assertEquals(2, o.getInt("pauseCount"));
+        assertEquals(350, o.getLong("visibleMs"));
+        assertEquals(700, o.getLong("pausedMs"));
+    }
+
+    @Test
+    public void repeatedPauseOrResumeIsIgnored() throws JSONException {
+        BackgroundMeter m = new BackgroundMeter();
+        m.resumed();
+        SystemClock.advance(100);
+        m.paused();
+        SystemClock.advance(100);
+        m.paused();
+        SystemClock.advance(100);
+
+        JSONObject o = m.toJSON();
+        assertEquals(1, o.getInt("pauseCount"));
+        assertEquals(100, o.getLong("visibleMs"));
+        assertEquals(200, o.getLong("pausedMs"));
+    }
+
+    @Test
+    public void estimatesNothingWithoutVisibleTimeOrWhenThePageKeptGoing() throws JSONException {
+        BackgroundMeter m = new BackgroundMeter();
+        m.paused();
+        SystemClock.advance(1000);
+        m.requestSeen();
+        assertEquals(0, m.toJSON().getLong("estimatedRequestsAvoided"));
+
+        BackgroundMeter busy = new BackgroundMeter();
+        SystemClock.advance(1000);
+        busy.requestSeen();
+        busy.paused();
+        SystemClock.advance(1000);
+        busy.requestSeen();
+        busy.requestSeen();
+        assertEquals(0, busy.toJSON().getLong("estimatedRequestsAvoided"));
+    }
+}
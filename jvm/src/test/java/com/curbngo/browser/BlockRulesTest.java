@@ -0,0 +1,69 @@
+package com.curbngo.browser;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class BlockRulesTest {
+
+    private static final BlockRules RULES = BlockRules.compile(Arrays.asList(
+        "doubleclick.net",          // 0
+        "*.hotjar.com",             // 1
+        "example.com/collect",      // 2
+        "/fbevents.js",             // 3
+        "*pixel",                   // 4
+        "  ",                       // skipped
+        null));                     // skipped
+
+    @Test
+    public void skipsBlankEntries() {
+        assertEquals(5, RULES.size());
+    }
+
+    @Test
+    public void hostRulesMatchTheHostAndSubdomains() {
+        assertEquals(0, RULES.match("https://doubleclick.net/x"));
+        assertEquals(0, RULES.match("https://ad.G.DoubleClick.net:443/x"));
+        assertEquals(1, RULES.match("https://script.hotjar.com/a.js"));
+        assertEquals(-1, RULES.match("https://notdoubleclick.net/x"));
+    }
+
+    @Test
+    public void hostAndPathRulesNeedBoth() {
+        assertEquals(2, RULES.match("https://www.example.com/api/collect?v=1"));
+        assertEquals(-1, RULES.match("https://www.example.com/api/other"));
+        assertEquals(-1, RULES.match("https://other.com/collect"));
+    }
+
+    @Test
+    public void hostlessPatternsMatchAnywhereInPathOrQuery() {
+        assertEquals(3, RULES.match("https://connect.facebook.net/en_US/fbevents.js"));
+        assertEquals(4, RULES.match("https://cdn.shop.com/t?type=PIXEL"));
+        assertEquals(-1, RULES.match("https://pixel.shop.com/a.js"));
+        assertEquals(-1, RULES.match("https://cdn.shop.com/a.js#pixel"));
+    }
+
+    @Test
+    public void nonNetworkUrlsAreNeverBlocked() {
+        assertEquals(-1, RULES.match("data:text/javascript,pixel"));
+        assertEquals(-1, RULES.match("about:blank"));
+    }
+
+    @Test
+    public void countsChecksAndHitsPerRule() throws JSONException {
+        BlockRules rules = BlockRules.compile(Arrays.asList("a.com", "/b"));
+        rules.match("https://a.com/");
+        rules.match("https://a.com/b");
+        rules.match("https://c.com/b");
+        rules.match("https://c.com/");
+        JSONObject stats = rules.toJSON();
+        assertEquals(4, stats.getLong("checked"));
+        assertEquals(3, stats.getLong("blocked"));
+        assertEquals(2, stats.getJSONArray("rules").getJSONObject(0).getLong("hits"));
+        assertEquals("/b", stats.getJSONArray("rules").getJSONObject(1).getString("rule"));
+    }
+}
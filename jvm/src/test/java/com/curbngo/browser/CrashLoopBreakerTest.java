@@ -0,0 +1,50 @@
+package com.curbngo.browser;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CrashLoopBreakerTest {
+
+    @Test
+    public void tripsOnTheCrashAfterTheLimitWithinTheWindow() {
+        CrashLoopBreaker b = new CrashLoopBreaker(3, 60000);
+        assertTrue(b.allow(0));
+        assertTrue(b.allow(1000));
+        assertTrue(b.allow(2000));
+        assertFalse(b.isOpen());
+        assertFalse(b.allow(3000));
+        assertTrue(b.isOpen());
+        assertEquals(4, b.recent());
+        assertEquals(4, b.total());
+    }
+
+    @Test
+    public void crashesOutsideTheWindowAreForgotten() {
+        CrashLoopBreaker b = new CrashLoopBreaker(2, 1000);
+        assertTrue(b.allow(0));
+        assertTrue(b.allow(500));
+        assertTrue(b.allow(1600));
+        assertTrue(b.allow(2000));
+        assertEquals(2, b.recent());
+        assertFalse(b.allow(2100));
+    }
+
+    @Test
+    public void staysOpenOnceTripped() {
+        CrashLoopBreaker b = new CrashLoopBreaker(1, 10);
+        assertTrue(b.allow(0));
+        assertFalse(b.allow(1));
+        assertFalse(b.allow(1000000));
+        assertEquals(3, b.total());
+    }
+
+    @Test
+    public void clampsItsLimits() {
+        CrashLoopBreaker b = new CrashLoopBreaker(0, -5);
+        assertTrue(b.allow(0));
+        assertTrue("a zero window forgets every earlier crash", b.allow(1));
+    }
+}
@@ -0,0 +1,63 @@
+package com.curbngo.browser;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Randomized check that {@link DomainMatcher} allows exactly what the old HashSet
+ * lookup allowed, for the inputs both handle alike: lower-case whitelists and URLs
+ * without a trailing-dot host (the matcher also ignores case and that dot).
+ */
+public class DomainMatcherEquivalenceTest {
+
+    private static final String[] LABELS = { "a", "b", "shop", "cdn", "www", "pay", "com", "net", "io", "x-y" };
+    private static final String[] SCHEMES = { "http", "https", "HTTPS", "ftp", "about", "data", "intent" };
+    private static final String[] TAILS = { "", "/", "/p/1", "?q=a.b", "#f", ":8080/x", "/a@b" };
+
+    @Test
+    public void agreesWithTheLegacyLookup() {
+        Random random = new Random(20240611L);
+        int checked = 0;
+        for (int round = 0; round < 500; round++) {
+            Set<String> whitelist = new HashSet<>();
+            int size = 1 + random.nextInt(12);
+            for (int i = 0; i < size; i++) {
+                whitelist.add((random.nextInt(3) == 0 ? "*." : "") + host(random, 1 + random.nextInt(3)));
+            }
+            LegacyWhitelist legacy = new LegacyWhitelist(whitelist);
+            DomainMatcher matcher = DomainMatcher.compile(whitelist);
+
+            for (int i = 0; i < 200; i++) {
+                String url = url(random);
+                assertEquals(url + " against " + whitelist, legacy.isDomainWhitelisted(url), matcher.matchesUrl(url));
+                checked++;
+            }
+        }
+        assertEquals(100000, checked);
+    }
+
+    static String host(Random random, int labels) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < labels; i++) {
+            if (i > 0) {
+                sb.append('.');
+            }
+            sb.append(LABELS[random.nextInt(LABELS.length)]);
+        }
+        return sb.toString();
+    }
+
+    static String url(Random random) {
+        StringBuilder sb = new StringBuilder(SCHEMES[random.nextInt(SCHEMES.length)]).append("://");
+        if (random.nextInt(10) == 0) {
+            sb.append("user:pw@");
+        }
+        sb.append(host(random, 1 + random.nextInt(4)));
+        return sb.append(TAILS[random.nextInt(TAILS.length)]).toString();
+    }
+}
@@ -0,0 +1,79 @@
+package com.curbngo.browser;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DomainMatcherTest {
+
+    private static DomainMatcher matcher(String... domains) {
+        return DomainMatcher.compile(Arrays.asList(domains));
+    }
+
+    @Test
+    public void entryMatchesItselfAndSubdomains() {
+        DomainMatcher m = matcher("shop.com");
+        assertTrue(m.matchesUrl("https://shop.com/"));
+        assertTrue(m.matchesUrl("https://www.shop.com/products/x"));
+        assertTrue(m.matchesUrl("http://a.b.shop.com"));
+        assertFalse(m.matchesUrl("https://myshop.com/"));
+        assertFalse(m.matchesUrl("https://shop.com.evil.net/"));
+        assertFalse(m.matchesUrl("https://com/"));
+    }
+
+    @Test
+    public void wildcardPrefixMeansTheSame() {
+        DomainMatcher m = matcher("*.cdn.net");
+        assertTrue(m.matchesUrl("https://cdn.net/a.js"));
+        assertTrue(m.matchesUrl("https://img.cdn.net/a.png"));
+        assertFalse(m.matchesUrl("https://xcdn.net/"));
+    }
+
+    @Test
+    public void ignoresCaseUserinfoPortAndTrailingDot() {
+        DomainMatcher m = matcher(" Shop.COM ");
+        assertTrue(m.matchesUrl("HTTPS://WWW.SHOP.com:8443/?q"));
+        assertTrue(m.matchesUrl("https://user:pw@shop.com/"));
+        assertTrue(m.matchesUrl("https://shop.com./"));
+        assertTrue(m.matchesUrl("ftp://shop.com"));
+        assertFalse(m.matchesUrl("https://shop.com@evil.net/"));
+    }
+
+    @Test
+    public void urlsWithoutANetworkHostNeverMatch() {
+        DomainMatcher m = matcher("shop.com");
+        assertFalse(m.matchesUrl("about:blank"));
+        assertFalse(m.matchesUrl("data:text/html,shop.com"));
+        assertFalse(m.matchesUrl("intent://shop.com#Intent;end"));
+        assertFalse(m.matchesUrl("https:shop.com"));
+        assertFalse(m.matchesUrl(""));
+        assertFalse(m.matchesUrl(null));
+    }
+
+    @Test
+    public void ipv6LiteralsKeepTheirBrackets() {
+        String url = "http://[::1]:8080/x";
+        long range = DomainMatcher.hostRange(url);
+        assertEquals("[::1]", url.substring((int) (range >>> 32), (int) range));
+        assertTrue(matcher("[::1]").matchesUrl(url));
+    }
+
+    @Test
+    public void blankEntriesAreSkippedAndDuplicatesCountOnce() {
+        DomainMatcher m = DomainMatcher.compile(Arrays.asList("", "  ", "*.", null, "a.com", "A.com", "*.a.com"));
+        assertEquals(1, m.size());
+        assertEquals(1, m.domains().size());
+        assertTrue(matcher().isEmpty());
+    }
+
+    @Test
+    public void broaderEntryCoversNarrowerOnes() {
+        DomainMatcher m = matcher("pay.shop.com", "shop.com", "x.y.shop.com");
+        assertTrue(m.matchesUrl("https://other.shop.com/"));
+        assertEquals(3, m.domains().size());
+    }
+}
@@ -0,0 +1,69 @@
+package com.curbngo.browser;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class EventCoalescerTest {
+
+    @Test
+    public void rawModeSendsUnlessThrottled() {
+        EventCoalescer c = new EventCoalescer(false, 1000, Collections.singletonMap("scroll", 100L));
+        assertEquals(EventCoalescer.SEND, c.offer(EventCoalescer.CHANNEL_EVENTS, "scroll", 1000));
+        assertEquals(EventCoalescer.DROP, c.offer(EventCoalescer.CHANNEL_EVENTS, "scroll", 1050));
+        assertEquals(EventCoalescer.SEND, c.offer(EventCoalescer.CHANNEL_EVENTS, "scroll", 1100));
+        assertEquals(EventCoalescer.SEND, c.offer(EventCoalescer.CHANNEL_EVENTS, "tap", 1101));
+    }
+
+    @Test
+    public void batchedModeAggregatesPerWindow() throws JSONException {
+        EventCoalescer c = new EventCoalescer(true, 1000, Collections.singletonMap("scroll", 100L));
+        assertEquals(EventCoalescer.QUEUED_NEW_WINDOW, c.offer(EventCoalescer.CHANNEL_EVENTS, "scroll", 1000));
+        assertEquals(EventCoalescer.QUEUED, c.offer(EventCoalescer.CHANNEL_EVENTS, "scroll", 1010));
+        assertEquals(EventCoalescer.QUEUED, c.offer(EventCoalescer.CHANNEL_EVENTS, "scroll", 1200));
+        assertEquals(EventCoalescer.QUEUED, c.offer(EventCoalescer.CHANNEL_ACTIVITY, "cart", 1300));
+
+        JSONObject batch = c.drain(2000);
+        assertEquals("activityBatch", batch.getString("type"));
+        assertEquals(1000L, batch.getLong("windowStart"));
+        assertEquals(2000L, batch.getLong("windowEnd"));
+        JSONObject scroll = batch.getJSONObject("events").getJSONObject("scroll");
+        assertEquals(2, scroll.getInt("count"));
+        assertEquals(1, scroll.getInt("throttled"));
+        assertEquals(1000L, scroll.getLong("first"));
+        assertEquals(1200L, scroll.getLong("last"));
+        assertEquals(1, batch.getJSONObject("activity").getJSONObject("cart").getInt("count"));
+
+        assertNull("counters reset after a drain", c.drain(2100));
+        assertEquals(EventCoalescer.QUEUED_NEW_WINDOW, c.offer(EventCoalescer.CHANNEL_EVENTS, "scroll", 3000));
+    }
+
+    @Test
+    public void throttledOnlyWindowReportsNoTimes() throws JSONException {
+        EventCoalescer c = new EventCoalescer(true, 1000, Collections.singletonMap("scroll", 10000L));
+        c.offer(EventCoalescer.CHANNEL_EVENTS, "scroll", 0);
+        c.drain(500);
+        assertEquals(EventCoalescer.QUEUED_NEW_WINDOW, c.offer(EventCoalescer.CHANNEL_EVENTS, "scroll", 600));
+        JSONObject scroll = c.drain(700).getJSONObject("events").getJSONObject("scroll");
+        assertEquals(0, scroll.getInt("count"));
+        assertEquals(1, scroll.getInt("throttled"));
+        assertEquals(false, scroll.has("first"));
+    }
+
+    @Test
+    public void typesBeyondTheCapShareTheOtherBucket() throws JSONException {
+        EventCoalescer c = new EventCoalescer(true, 1000, null);
+        for (int i = 0; i < EventCoalescer.MAX_TYPES + 10; i++) {
+            c.offer(EventCoalescer.CHANNEL_EVENTS, "t" + i, i);
+        }
+        c.offer(EventCoalescer.CHANNEL_EVENTS, null, 100);
+        JSONObject events = c.drain(200).getJSONObject("events");
+        assertEquals(EventCoalescer.MAX_TYPES + 1, events.length());
+        assertEquals(11, events.getJSONObject("other").getInt("count"));
+    }
+}
@@ -0,0 +1,49 @@
+package com.curbngo.browser;
+
+import java.util.Set;
+
+/**
+ * Browser.isDomainWhitelisted as it was before {@link DomainMatcher}, kept verbatim
+ * (bar the logging) as the reference for equivalence tests and benchmarks.
+ */
+final class LegacyWhitelist {
+
+    private final Set<String> whitelistDomains;
+
+    LegacyWhitelist(Set<String> whitelistDomains) {
+        this.whitelistDomains = whitelistDomains;
+    }
+
+    boolean isDomainWhitelisted(String url) {
+        if (whitelistDomains == null || whitelistDomains.isEmpty()) {
+            return true; // No whitelist means all domains are allowed
+        }
+
+        try {
+            java.net.URL urlObj = new java.net.URL(url);
+            String domain = urlObj.getHost();
+
+            // Direct lookup - O(1) performance
+            if (whitelistDomains.contains(domain)) {
+                return true;
+            }
+
+            // Check for wildcard domain matches
+            for (String whitelistedDomain : whitelistDomains) {
+                if (whitelistedDomain.startsWith("*.")) {
+                    String baseDomain = whitelistedDomain.substring(2); // Remove "*."
+                    if (domain.equals(baseDomain) || domain.endsWith("." + baseDomain)) {
+                        return true;
+                    }
+                }
+                // Check for subdomain matching
+                else if (domain.endsWith("." + whitelistedDomain)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.curbngo.browser;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NavigationTimelineTest {
+
+    private static JSONObject report(String url, int ttfb) throws JSONException {
+        return new JSONObject().put("url", url).put("navigation", new JSONObject().put("ttfb", ttfb));
+    }
+
+    @Test
+    public void anIframeReportDoesNotTakeTheMainFramesPlace() throws JSONException {
+        NavigationTimeline t = new NavigationTimeline(4);
+        t.navigationStarted("https://shop.com/products/hoodie");
+        t.navigationFinished(true);
+
+        // Embedded frames usually reach load first.
+        assertNull(t.pageReported(report("https://shop.app/pay/installments", 900)));
+        JSONObject done = t.pageReported(report("https://shop.com/products/hoodie", 120));
+        assertNotNull(done);
+        assertEquals(120, done.getJSONObject("page").getJSONObject("navigation").getInt("ttfb"));
+
+        JSONArray all = t.snapshot();
+        assertEquals(1, all.length());
+        assertEquals(120, all.getJSONObject(0).getJSONObject("page").getJSONObject("navigation").getInt("ttfb"));
+    }
+
+    @Test
+    public void aSameDocumentUrlChangeStillReportsToTheCurrentNavigation() throws JSONException {
+        NavigationTimeline t = new NavigationTimeline(4);
+        t.navigationStarted("https://shop.com/products/hoodie");
+        JSONObject done = t.pageReported(report("https://shop.com/products/hoodie?variant=42#reviews", 80));
+        assertNotNull(done);
+        assertEquals("https://shop.com/products/hoodie", done.getString("url"));
+        assertFalse(done.getJSONObject("page").has("url"));
+    }
+
+    @Test
+    public void aReportGoesToTheNewestNavigationForItsUrl() throws JSONException {
+        NavigationTimeline t = new NavigationTimeline(4);
+        t.navigationStarted("https://shop.com/");
+        t.navigationStarted("https://shop.com/cart");
+        assertNotNull(t.pageReported(report("https://shop.com/", 50)));
+        assertNull("only one report per navigation", t.pageReported(report("https://shop.com/", 60)));
+
+        JSONArray all = t.snapshot();
+        assertTrue(all.getJSONObject(0).has("page"));
+        assertFalse(all.getJSONObject(1).has("page"));
+    }
+
+    @Test
+    public void theRingKeepsTheNewestRecords() throws JSONException {
+        NavigationTimeline t = new NavigationTimeline(2);
+        t.navigationStarted("https://a.com/");
+        t.navigationStarted("https://b.com/");
+        t.navigationStarted("https://c.com/");
+        JSONArray all = t.snapshot();
+        assertEquals(2, all.length());
+        assertEquals("https://b.com/", all.getJSONObject(0).getString("url"));
+        assertEquals("https://c.com/", all.getJSONObject(1).getString("url"));
+        assertNull("dropped with its record", t.pageReported(report("https://a.com/", 1)));
+    }
+
+    @Test
+    public void sameDocumentIgnoresOnlyQueryAndFragment() {
+        assertTrue(NavigationTimeline.sameDocument("https://s.com/p?a=1", "https://s.com/p#x"));
+        assertFalse(NavigationTimeline.sameDocument("https://s.com/p", "https://s.com/q"));
+        assertFalse(NavigationTimeline.sameDocument("https://s.com/p", null));
+    }
+}
@@ -0,0 +1,168 @@
+package com.curbngo.browser;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OpenOptionsTest {
+
+    @Test
+    public void nullAndEmptyOptionsGiveTheDefaults() throws JSONException {
+        for (OpenOptions o : new OpenOptions[] { OpenOptions.parse(null), OpenOptions.parse(new JSONObject()) }) {
+            assertNull(o.barcodeScanURL);
+            assertFalse(o.barcodeCapture);
+            assertTrue(o.barcodeNavigate);
+            assertEquals(ScanDetector.DEFAULT_MAX_INTER_KEY_MS, o.barcodeMaxInterKeyMs);
+            assertFalse(o.barcodeTabTerminator);
+            assertTrue(o.loader);
+            assertEquals(OpenOptions.DEFAULT_LOADER_DELAY_MS, o.loaderDelayMs);
+            assertEquals(OpenOptions.DEFAULT_LOADER_MIN_DISPLAY_MS, o.loaderMinDisplayMs);
+            assertEquals(ResetScope.ALL, o.resetScope);
+            assertFalse(o.portTransport);
+            assertNotNull(o.whitelist);
+            assertTrue(o.whitelist.isEmpty());
+            assertTrue(o.rendererRecovery);
+            assertEquals(OpenOptions.DEFAULT_SNAPSHOT_MAX_BYTES, o.snapshotMaxBytes);
+            assertNull(o.eventCoalescer());
+        }
+    }
+
+    @Test
+    public void parsesEveryOption() throws JSONException {
+        OpenOptions o = OpenOptions.parse(new JSONObject(
+            "{barcodeScanURL:'/scan/', barcodeNavigate:false, barcodeMaxInterKeyMs:30, barcodeMinLength:6,"
+                + "barcodeMaxLength:64, barcodeTabTerminator:true, shopifyHelpers:true, shopifyImages:true, shopifyImageMaxWidth:800,"
+                + "loader:false, loaderLabel:'Wait', loaderDelayMs:100, loaderMinDisplayMs:300,"
+                + "eventDelivery:'batched', eventRateLimits:{scroll:200}, eventFlushMs:500,"
+                + "assetCache:true, assetCacheMaxMB:64, assetCacheRules:['\\\\.js$'], blockRules:['doubleclick.net'],"
+                + "resetScope:'identity', metrics:true, metricsEvents:true, metricsBufferSize:20,"
+                + "transport:'port', portSubscribe:['cart'], whitelist:['*.shop.com','cdn.com'],"
+                + "snapshot:true, snapshotMaxKB:64, snapshotTtlMs:1000, rendererRecovery:false,"
+                + "rendererMaxCrashes:5, rendererCrashWindowMs:2000, offsetTop:48}"));
+
+        assertEquals("/scan/", o.barcodeScanURL);
+        assertTrue("a scan URL implies native capture", o.barcodeCapture);
+        assertFalse(o.barcodeNavigate);
+        assertEquals(30L, o.barcodeMaxInterKeyMs);
+        assertEquals(6, o.barcodeMinLength);
+        assertEquals(64, o.barcodeMaxLength);
+        assertTrue(o.barcodeTabTerminator);
+        assertTrue(o.shopifyHelpers);
+        assertTrue(o.shopifyImages);
+        assertEquals(800, o.shopifyImageMaxWidth);
+        assertFalse(o.loader);
+        assertEquals("Wait", o.loaderLabel);
+        assertEquals(100L, o.loaderDelayMs);
+        assertEquals(300L, o.loaderMinDisplayMs);
+        assertTrue(o.eventBatched);
+        assertEquals(Long.valueOf(200L), o.eventRateLimits.get("scroll"));
+        assertEquals(500L, o.eventFlushMs);
+        assertTrue(o.assetCache);
+        assertEquals(64L, o.assetCacheMaxMB);
+        assertEquals("\\.js$", o.assetCacheRules.get(0).pattern());
+        assertEquals(Arrays.asList("doubleclick.net"), o.blockRules);
+        assertEquals(ResetScope.IDENTITY, o.resetScope);
+        assertTrue(o.metrics);
+        assertTrue(o.metricsEvents);
+        assertEquals(20, o.metricsBufferSize);
+        assertTrue(o.portTransport);
+        assertEquals(Arrays.asList("cart"), o.portSubscribe);
+        assertEquals(2, o.whitelist.size());
+        assertTrue(o.whitelist.contains("*.shop.com"));
+        assertTrue(o.snapshot);
+        assertEquals(64 * 1024, o.snapshotMaxBytes);
+        assertEquals(1000L, o.snapshotTtlMs);
+        assertFalse(o.rendererRecovery);
+        assertEquals(5, o.rendererMaxCrashes);
+        assertEquals(2000L, o.rendererCrashWindowMs);
+        assertEquals(48, o.offsetTop);
+
+        EventCoalescer c = o.eventCoalescer();
+        assertTrue(c.isBatched());
+        assertEquals(500L, c.getFlushMs());
+    }
+
+    @Test
+    public void clampsOutOfRangeValues() throws JSONException {
+        OpenOptions o = OpenOptions.parse(new JSONObject(
+            "{eventFlushMs:1, shopifyImageMaxWidth:-5, metricsBufferSize:-1, eventRateLimits:{tap:-10},"
+                + "rendererMaxCrashes:0, rendererCrashWindowMs:-1, snapshotTtlMs:-1, snapshotMaxKB:-3}"));
+        assertEquals(OpenOptions.MIN_EVENT_FLUSH_MS, o.eventFlushMs);
+        assertEquals(0, o.shopifyImageMaxWidth);
+        assertEquals(0, o.metricsBufferSize);
+        assertEquals(Long.valueOf(0L), o.eventRateLimits.get("tap"));
+        assertEquals(1, o.rendererMaxCrashes);
+        assertEquals(0L, o.rendererCrashWindowMs);
+        assertEquals(0L, o.snapshotTtlMs);
+        assertEquals(OpenOptions.DEFAULT_SNAPSHOT_MAX_BYTES, o.snapshotMaxBytes);
+    }
+
+    @Test
+    public void shopifyImagesNeedTheHelpers() throws JSONException {
+        assertFalse(OpenOptions.parse(new JSONObject("{shopifyImages:true}")).shopifyImages);
+    }
+
+    @Test
+    public void portSubscriptionsAreIgnoredOnTheBridge() throws JSONException {
+        assertNull(OpenOptions.parse(new JSONObject("{portSubscribe:['cart']}")).portSubscribe);
+    }
+
+    @Test
+    public void unknownResetScopeFallsBackToAll() throws JSONException {
+        assertEquals(ResetScope.ALL, OpenOptions.parse(new JSONObject("{resetScope:'everything'}")).resetScope);
+        assertEquals(ResetScope.NONE, OpenOptions.parse(new JSONObject("{resetScope:'NONE'}")).resetScope);
+    }
+
+    @Test
+    public void rateLimitsAloneGiveARawCoalescer() throws JSONException {
+        EventCoalescer c = OpenOptions.parse(new JSONObject("{eventRateLimits:{scroll:100}}")).eventCoalescer();
+        assertNotNull(c);
+        assertFalse(c.isBatched());
+    }
+
+    @Test(expected = JSONException.class)
+    public void wrongTypeIsRejected() throws JSONException {
+        OpenOptions.parse(new JSONObject("{whitelist:'shop.com'}"));
+    }
+
+    @Test(expected = PatternSyntaxException.class)
+    public void badAssetRuleIsRejected() throws JSONException {
+        OpenOptions.parse(new JSONObject("{assetCacheRules:['(']}"));
+    }
+
+    @Test
+    public void fallbackAllowsEveryDomain() {
+        OpenOptions o = OpenOptions.fallback();
+        assertNull(o.whitelist);
+        assertNull(BrowserProfile.compile(null, o).whitelistFor("shop.com"));
+    }
+
+    @Test
+    public void hostOf() {
+        assertEquals("shop.com", OpenOptions.hostOf("https://user@shop.com:8443/a?b#c"));
+        assertNull(OpenOptions.hostOf("about:blank"));
+        assertNull(OpenOptions.hostOf("not a url"));
+        assertNull(OpenOptions.hostOf(null));
+    }
+
+    @Test
+    public void profileAddsTheOpenedHostOnlyWhenNotAlreadyAllowed() throws JSONException {
+        BrowserProfile p = BrowserProfile.compile("kiosk", OpenOptions.parse(new JSONObject("{whitelist:['*.shop.com']}")));
+        DomainMatcher same = p.whitelistFor("www.shop.com");
+        assertSame(same, p.whitelistFor("shop.com"));
+        DomainMatcher extended = p.whitelistFor("pay.example");
+        assertTrue(extended.matchesUrl("https://pay.example/checkout"));
+        assertTrue(extended.matchesUrl("https://cdn.shop.com/x.js"));
+        assertFalse(same.matchesUrl("https://pay.example/checkout"));
+    }
+}
@@ -0,0 +1,104 @@
+package com.curbngo.browser;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PageScriptsTest {
+
+    @Test
+    public void minimalSessionInjectsOnlyTheEnhancement() {
+        PageScripts s = new PageScripts(null, false, false, false, null);
+        assertEquals(Arrays.asList(PageScripts.BROWSER_ENHANCEMENT), s.documentScripts());
+        assertNull(s.barcode());
+        assertFalse(s.hasPortBridge());
+    }
+
+    @Test
+    public void everythingComesInInjectionOrder() {
+        PageScripts s = new PageScripts("/scan/", true, true, true, "tok");
+        List<String> scripts = s.documentScripts();
+        assertEquals(6, scripts.size());
+        assertSame(PageScripts.SHOPIFY_HELPERS, scripts.get(0));
+        assertSame(PageScripts.METRICS_COLLECTOR, scripts.get(1));
+        assertTrue(scripts.get(2).contains("window.BrowserPort"));
+        assertSame(PageScripts.BROWSER_ENHANCEMENT, scripts.get(3));
+        assertSame(PageScripts.BARCODE_COMPANION, scripts.get(4));
+        assertSame(PageScripts.ACTIVITY_LISTENERS, scripts.get(5));
+        assertTrue(s.hasShopifyHelpers() && s.hasMetrics() && s.hasActivityListeners() && s.hasPortBridge());
+    }
+
+    @Test
+    public void emptyScanUrlSkipsTheBarcodeCompanion() {
+        assertNull(new PageScripts("", false, true, false, null).barcode());
+    }
+
+    @Test
+    public void everyStaticScriptGuardsItself() {
+        for (String script : new String[] { PageScripts.BROWSER_ENHANCEMENT, PageScripts.ACTIVITY_LISTENERS,
+                PageScripts.METRICS_COLLECTOR, PageScripts.SHOPIFY_HELPERS, PageScripts.BARCODE_COMPANION }) {
+            assertTrue(script.startsWith("(function(){"));
+            assertTrue(script.endsWith("})();"));
+            assertTrue(script.contains("if(window."));
+        }
+    }
+
+    @Test
+    public void everyDocumentScriptReturnsOutsideTheTopFrame() {
+        for (String script : new PageScripts("/scan/", true, true, true, "tok").documentScripts()) {
+            assertTrue(script, script.startsWith("(function(){if(window!==window.top)return;"));
+        }
+    }
+
+    @Test
+    public void sessionValuesAreQuotedAsJavaScriptStrings() {
+        String port = PageScripts.portBridgeScript("a\"b</script>");
+        assertTrue(port.contains("var HANDSHAKE=\"" + PageScripts.PORT_HANDSHAKE + "a\\\"b<\\/script>\";"));
+
+        String batch = PageScripts.scriptBatch("id'1", "[\"1+1\"]", 250);
+        assertTrue(batch.endsWith("})(\"id'1\",[\"1+1\"],250)"));
+        assertTrue(PageScripts.cancelScriptBatch("x\"y").contains("window.__cngBatches[\"x\\\"y\"]"));
+
+        String stream = PageScripts.scriptStream("s", "document.title", 1000, 5000);
+        assertTrue(stream.endsWith("})(\"s\",\"document.title\",1000,5000)"));
+        assertTrue(PageScripts.nextStreamChunk("s").endsWith("})(\"s\")"));
+        assertTrue(PageScripts.discardScriptStream("s").contains("delete window.__cngStreams[\"s\"]"));
+    }
+
+    @Test
+    public void balancedBrackets() {
+        for (String script : new PageScripts("/scan/", true, true, true, "tok").documentScripts()) {
+            assertEquals(script, 0, depth(script));
+        }
+    }
+
+    /** Bracket depth at the end of {@code js}, skipping string and regex-free literals well enough for these scripts. */
+    private static int depth(String js) {
+        int depth = 0;
+        char quote = 0;
+        for (int i = 0; i < js.length(); i++) {
+            char c = js.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '(' || c == '{' || c == '[') {
+                depth++;
+            } else if (c == ')' || c == '}' || c == ']') {
+                depth--;
+            }
+        }
+        return depth;
+    }
+}
@@ -0,0 +1,55 @@
+package com.curbngo.browser;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PortFrameTest {
+
+    @Test
+    public void roundTripsTypeAndPayload() throws JSONException {
+        String frame = PortFrame.encode("cart", "{\"count\":3}");
+        assertEquals("cart\n{\"count\":3}", frame);
+        assertEquals("cart", PortFrame.type(frame));
+        assertEquals(3, ((JSONObject) PortFrame.payload(frame)).getInt("count"));
+    }
+
+    @Test
+    public void aBareTypeHasNoPayload() throws JSONException {
+        assertEquals("ping", PortFrame.encode("ping", null));
+        assertEquals("ping", PortFrame.type("ping"));
+        assertNull(PortFrame.payload("ping"));
+        assertNull(PortFrame.payload("ping\n"));
+    }
+
+    @Test
+    public void payloadMayBeAnyJsonValue() throws JSONException {
+        assertTrue(PortFrame.payload("a\n[1,2]") instanceof JSONArray);
+        assertEquals("x", PortFrame.payload("a\n\"x\""));
+        assertEquals(Boolean.TRUE, PortFrame.payload("a\ntrue"));
+        assertEquals(JSONObject.NULL, PortFrame.payload("a\nnull"));
+    }
+
+    @Test
+    public void onlyTheFirstNewlineSplits() throws JSONException {
+        String frame = "log\n\"line1\\nline2\"";
+        assertEquals("log", PortFrame.type(frame));
+        assertEquals("line1\nline2", PortFrame.payload(frame));
+    }
+
+    @Test
+    public void theTypeIsReadableWhenThePayloadIsNotJson() {
+        String frame = "cart\n{not json";
+        assertEquals("cart", PortFrame.type(frame));
+        try {
+            PortFrame.payload(frame);
+            throw new AssertionError("expected a JSONException");
+        } catch (JSONException expected) {
+        }
+    }
+}
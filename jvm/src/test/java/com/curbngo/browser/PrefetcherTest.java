@@ -0,0 +1,163 @@
+package com.curbngo.browser;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** Prefetcher against a local HTTP stand-in. */
+public class PrefetcherTest {
+
+    private static final Prefetcher.UrlFilter ALL = new Prefetcher.UrlFilter() {
+        @Override
+        public boolean allows(String url) {
+            return true;
+        }
+    };
+
+    private HttpServer server;
+    private Prefetcher prefetcher;
+    private final Map<String, String> cookieJar = new ConcurrentHashMap<>();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                byte[] body;
+                if (path.endsWith(".css")) {
+                    exchange.getResponseHeaders().add("Content-Type", "text/css");
+                    body = "body{}".getBytes(StandardCharsets.UTF_8);
+                } else {
+                    exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+                    exchange.getResponseHeaders().add("Content-Security-Policy", "default-src 'self'");
+                    exchange.getResponseHeaders().add("X-Frame-Options", "DENY");
+                    exchange.getResponseHeaders().add("Set-Cookie", "cart=1");
+                    exchange.getResponseHeaders().add("Cache-Control", path.contains("short") ? "max-age=1" : "max-age=600");
+                    body = "<html><head><link rel=stylesheet href=/a.css></head><body>hi</body></html>"
+                        .getBytes(StandardCharsets.UTF_8);
+                }
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        prefetcher = new Prefetcher(2, 60000, new Prefetcher.CookieStore() {
+            @Override
+            public String get(String url) {
+                return null;
+            }
+
+            @Override
+            public void set(String url, String setCookieHeader) {
+                cookieJar.put(url, setCookieHeader);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        prefetcher.shutdown();
+        server.stop(0);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private Prefetcher.Result prefetch(String instance, String... urls) throws InterruptedException {
+        final BlockingQueue<Prefetcher.Result> done = new ArrayBlockingQueue<>(1);
+        prefetcher.prefetch(instance, Arrays.asList(urls), ALL, 1 << 20, true, new Prefetcher.Listener() {
+            @Override
+            public void onComplete(Prefetcher.Result result) {
+                done.add(result);
+            }
+        });
+        Prefetcher.Result result = done.poll(10, TimeUnit.SECONDS);
+        assertNotNull("prefetch timed out", result);
+        return result;
+    }
+
+    @Test
+    public void entriesBelongToTheInstanceThatAsked() throws InterruptedException {
+        assertEquals(2, prefetch("a", url("/page")).fetched.get());
+        assertNull(prefetcher.take("b", url("/page")));
+        assertNotNull(prefetcher.take("a", url("/page#top")));
+        assertNull("served once", prefetcher.take("a", url("/page")));
+        assertNotNull(prefetcher.take("a", url("/a.css")));
+    }
+
+    @Test
+    public void clearingOneInstanceKeepsTheOthers() throws InterruptedException {
+        prefetch("a", url("/page"));
+        prefetch("b", url("/page"));
+        prefetcher.cancelInFlight("a");
+        prefetcher.clear("a");
+        assertNull(prefetcher.take("a", url("/page")));
+        assertNotNull(prefetcher.take("b", url("/page")));
+
+        assertEquals("a cleared instance can prefetch again", 2, prefetch("a", url("/page")).fetched.get());
+        prefetcher.clear();
+        assertNull(prefetcher.take("a", url("/page")));
+    }
+
+    @Test
+    public void documentsKeepTheirSecurityHeaders() throws InterruptedException {
+        prefetch("a", url("/page"));
+        Prefetcher.Entry page = prefetcher.take("a", url("/page"));
+        assertEquals("text/html", page.mimeType);
+        assertEquals("utf-8", page.encoding);
+        assertEquals("default-src 'self'", page.headers.get("Content-security-policy"));
+        assertEquals("DENY", page.headers.get("X-frame-options"));
+        assertEquals("max-age=600", page.headers.get("Cache-control"));
+        assertFalse(page.headers.containsKey("Set-cookie"));
+        assertFalse(page.headers.containsKey("Content-length"));
+        assertTrue("cookies go to the cookie store instead", cookieJar.containsKey(url("/page")));
+    }
+
+    @Test
+    public void maxAgeBoundsHowLongAnEntryIsServed() throws InterruptedException {
+        prefetch("a", url("/short"));
+        Thread.sleep(1100);
+        assertNull(prefetcher.take("a", url("/short")));
+    }
+
+    @Test
+    public void repeatedHeadersAreJoined() {
+        Map<String, List<String>> fields = new HashMap<>();
+        fields.put(null, Collections.singletonList("HTTP/1.1 200 OK"));
+        fields.put("Link", Arrays.asList("</a.css>; rel=preload", "</b.js>; rel=preload"));
+        fields.put("Set-Cookie", Collections.singletonList("x=1"));
+        fields.put("X-Android-Sent-Millis", Collections.singletonList("1"));
+        Map<String, String> headers = Prefetcher.replayedHeaders(fields);
+        assertEquals(1, headers.size());
+        assertEquals("</a.css>; rel=preload, </b.js>; rel=preload", headers.get("Link"));
+    }
+}
@@ -0,0 +1,94 @@
+package com.curbngo.browser;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ScanDetectorTest {
+
+    private static long type(ScanDetector d, String s, long start, long gap) {
+        long t = start;
+        for (int i = 0; i < s.length(); i++) {
+            d.onChar(s.charAt(i), t);
+            t += gap;
+        }
+        return t;
+    }
+
+    @Test
+    public void fastBurstWithTerminatorIsAScan() {
+        ScanDetector d = new ScanDetector(50, 4, 128);
+        long t = type(d, "0123456789", 1000, 10);
+        assertTrue(d.onTerminator(t));
+        assertEquals("0123456789", d.code());
+        assertEquals(t - 1000, d.scanDurationMs());
+        assertEquals(t, d.scanEndedAt());
+    }
+
+    @Test
+    public void theTailOfAnOverlongBurstIsNotAScan() {
+        ScanDetector d = new ScanDetector(50, 4, 16);
+        StringBuilder burst = new StringBuilder();
+        for (int i = 0; i < 16 + 4 + 1; i++) {
+            burst.append((char) ('a' + i));
+        }
+        long t = type(d, burst.toString(), 1000, 5);
+        assertFalse(d.onTerminator(t));
+
+        // The next burst after the terminator is judged on its own.
+        t = type(d, "ABCDE", t + 5, 5);
+        assertTrue(d.onTerminator(t));
+        assertEquals("ABCDE", d.code());
+    }
+
+    @Test
+    public void aGapEndsAnOverlongBurst() {
+        ScanDetector d = new ScanDetector(50, 4, 8);
+        long t = type(d, "0123456789", 1000, 5);
+        t = type(d, "WXYZ", t + 500, 5);
+        assertTrue(d.onTerminator(t));
+        assertEquals("WXYZ", d.code());
+    }
+
+    @Test
+    public void humanTypingIsNot() {
+        ScanDetector d = new ScanDetector(50, 4, 128);
+        long t = type(d, "hello", 1000, 120);
+        assertFalse(d.onTerminator(t));
+    }
+
+    @Test
+    public void slowGapStartsANewRun() {
+        ScanDetector d = new ScanDetector(50, 4, 128);
+        long t = type(d, "ab", 1000, 10);
+        t = type(d, "WXYZ", t + 500, 10);
+        assertTrue(d.onTerminator(t));
+        assertEquals("WXYZ", d.code());
+    }
+
+    @Test
+    public void lateTerminatorOrShortRunIsRejected() {
+        ScanDetector d = new ScanDetector(50, 4, 128);
+        long t = type(d, "12345", 0, 10);
+        assertFalse(d.onTerminator(t + 100));
+        t = type(d, "123", 1000, 10);
+        assertFalse(d.onTerminator(t));
+    }
+
+    @Test
+    public void overlongRunIsDropped() {
+        ScanDetector d = new ScanDetector(50, 4, 8);
+        long t = type(d, "123456789", 0, 5);
+        assertFalse(d.onTerminator(t));
+    }
+
+    @Test
+    public void resetDropsThePartialRun() {
+        ScanDetector d = new ScanDetector(50, 4, 128);
+        long t = type(d, "1234", 0, 5);
+        d.reset();
+        assertFalse(d.onTerminator(t));
+    }
+}
@@ -0,0 +1,614 @@
+package com.curbngo.browser;
+
+import org.apache.cordova.LOG;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * On-disk LRU cache for immutable storefront assets (theme JS/CSS, fonts, product
+ * images), served to the WebView from shouldInterceptRequest.
+ *
+ * It lives in its own directory under the app cache dir, so the per-session wipe
+ * (cookies, WebStorage, WebView HTTP cache) does not touch it. Only URLs matching
+ * one of the configured patterns are cached, requests are made without cookies,
+ * and responses marked no-store/private are passed through uncached, so it never
+ * holds customer data.
+ *
+ * Freshness follows the response: an entry with {@code Cache-Control: max-age}
+ * expires after it (no-cache and max-age=0 are not stored), one without lives until
+ * evicted since the rules only pick immutable assets. {@code Vary} is honoured: the
+ * request headers it names are stored with the entry and must match for a hit,
+ * Accept-Encoding aside (bodies are stored decoded). {@code Vary: *} and variants on
+ * headers the cache never forwards (Cookie, Authorization) are not stored.
+ *
+ * On a miss the response is streamed to the WebView while being copied to a temp
+ * file; the entry is committed only if the body was read to the end. Total body
+ * size is kept under {@code maxBytes} by evicting least recently used entries. The
+ * body and meta of an entry are both written to temp files and renamed into place,
+ * the old meta removed first, so a crash never pairs a body with the wrong meta.
+ *
+ * Pure Java (java.net + java.io) so it can be exercised against a local HTTP server.
+ * Thread-safe; WebView calls shouldInterceptRequest from several threads.
+ */
+final class AssetCache {
+
+    private static final String TAG = "BrowserAssetCache";
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+    private static final String BODY = ".body";
+    private static final String META = ".meta";
+    private static final String TMP = ".tmp";
+    private static final int META_VERSION = 2;
+
+    /** Response headers worth replaying from cache; the rest are dropped. */
+    static final List<String> KEPT_HEADERS = Arrays.asList(
+        "content-type", "cache-control", "access-control-allow-origin", "timing-allow-origin", "last-modified", "etag");
+
+    /** A response ready to hand to the WebView. The caller owns {@link #body}. */
+    static final class Response {
+        final int status;
+        final String reason;
+        final String mimeType;
+        final String encoding;
+        final Map<String, String> headers;
+        final InputStream body;
+        final boolean hit;
+
+        Response(int status, String reason, String mimeType, String encoding,
+                 Map<String, String> headers, InputStream body, boolean hit) {
+            this.status = status;
+            this.reason = reason;
+            this.mimeType = mimeType;
+            this.encoding = encoding;
+            this.headers = headers;
+            this.body = body;
+            this.hit = hit;
+        }
+    }
+
+    private final File dir;
+    private volatile long maxBytes;
+    private volatile List<Pattern> rules;
+
+    // Access-ordered: iteration starts at the least recently used entry.
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    AssetCache(File dir, long maxBytes, List<Pattern> rules) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.rules = rules;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            LOG.e(TAG, "Could not create cache dir " + dir);
+        }
+        loadIndex();
+    }
+
+    /** Replaces the URL rules and byte budget (e.g. from a new open()), trimming if needed. */
+    void configure(long maxBytes, List<Pattern> rules) {
+        this.maxBytes = maxBytes;
+        this.rules = rules;
+        synchronized (this) {
+            evictToBudget();
+        }
+    }
+
+    /** True when {@code url} matches one of the cacheable-asset patterns. */
+    boolean matches(String url) {
+        for (Pattern p : rules) {
+            if (p.matcher(url).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    long hitCount() {
+        return hits.get();
+    }
+
+    long missCount() {
+        return misses.get();
+    }
+
+    long evictionCount() {
+        return evictions.get();
+    }
+
+    synchronized long sizeBytes() {
+        return totalBytes;
+    }
+
+    synchronized int entryCount() {
+        return index.size();
+    }
+
+    long maxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Serves {@code url} from disk, or fetches it from the network and caches it on
+     * the way through. Returns null if the request should be left to the WebView.
+     */
+    Response get(String url, Map<String, String> requestHeaders) {
+        String key = keyFor(url);
+        Response cached = read(key, requestHeaders);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        try {
+            return fetch(url, key, requestHeaders);
+        } catch (IOException e) {
+            LOG.d(TAG, "Fetch failed for " + url + ": " + e.getMessage());
+            return null; // let the WebView try (and report) it itself
+        }
+    }
+
+    /** Deletes every entry. Counters are kept. */
+    synchronized void clear() {
+        for (String key : new ArrayList<>(index.keySet())) {
+            remove(key);
+        }
+    }
+
+    // --- internals ----------------------------------------------------------
+
+    private Response read(String key, Map<String, String> requestHeaders) {
+        synchronized (this) {
+            if (index.get(key) == null) { // get() also marks it most recently used
+                return null;
+            }
+        }
+        DataInputStream meta = null;
+        try {
+            meta = new DataInputStream(new FileInputStream(new File(dir, key + META)));
+            if (meta.readInt() != META_VERSION) {
+                throw new IOException("stale meta");
+            }
+            long expiresAt = meta.readLong();
+            int status = meta.readInt();
+            String reason = meta.readUTF();
+            String mime = meta.readUTF();
+            String encoding = meta.readUTF();
+            int n = meta.readInt();
+            Map<String, String> headers = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                headers.put(meta.readUTF(), meta.readUTF());
+            }
+            int varied = meta.readInt();
+            boolean sameVariant = true;
+            for (int i = 0; i < varied; i++) {
+                String name = meta.readUTF();
+                String current = headerValue(requestHeaders, name);
+                sameVariant &= meta.readUTF().equals(current != null ? current : "");
+            }
+            if (expiresAt != 0 && System.currentTimeMillis() >= expiresAt) {
+                throw new IOException("expired"); // refetched and replaced on the way through
+            }
+            if (!sameVariant) {
+                return null; // another variant; the fetch replaces this one
+            }
+            InputStream body = new FileInputStream(new File(dir, key + BODY));
+            return new Response(status, reason, mime, encoding.isEmpty() ? null : encoding, headers, body, true);
+        } catch (IOException e) {
+            synchronized (this) {
+                remove(key);
+            }
+            return null;
+        } finally {
+            closeQuietly(meta);
+        }
+    }
+
+    private Response fetch(String url, String key, Map<String, String> requestHeaders) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        conn.setReadTimeout(READ_TIMEOUT_MS);
+        conn.setUseCaches(false);
+        if (requestHeaders != null) {
+            for (Map.Entry<String, String> h : requestHeaders.entrySet()) {
+                String name = h.getKey().toLowerCase(Locale.US);
+                // No cookies: cached assets must never carry customer state. Let
+                // HttpURLConnection negotiate gzip so we store the decoded body.
+                if (!name.equals("cookie") && !name.equals("accept-encoding") && !name.equals("range")) {
+                    conn.setRequestProperty(h.getKey(), h.getValue());
+                }
+            }
+        }
+
+        int status = conn.getResponseCode();
+        String reason = conn.getResponseMessage();
+        if (reason == null || reason.isEmpty()) {
+            reason = status == 200 ? "OK" : "Error";
+        }
+        String contentType = conn.getContentType();
+        String mime = mimeOf(contentType);
+        String encoding = charsetOf(contentType);
+        Map<String, String> headers = new HashMap<>();
+        for (String name : KEPT_HEADERS) {
+            String value = conn.getHeaderField(name);
+            if (value != null) {
+                headers.put(name, value);
+            }
+        }
+
+        InputStream in = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+        if (in == null) {
+            in = new java.io.ByteArrayInputStream(new byte[0]);
+        }
+        String cacheControl = conn.getHeaderField("Cache-Control");
+        List<String> vary = varyHeaders(conn.getHeaderField("Vary"));
+        if (status != 200 || !isStorable(cacheControl) || vary == null) {
+            return new Response(status, reason, mime, encoding, headers, in, false);
+        }
+        Map<String, String> variant = new HashMap<>();
+        for (String name : vary) {
+            variant.put(name, headerValue(requestHeaders, name));
+        }
+        long maxAge = maxAgeMs(cacheControl);
+        long expiresAt = maxAge < 0 ? 0L : System.currentTimeMillis() + maxAge;
+        File tmp = new File(dir, key + TMP + Thread.currentThread().getId());
+        OutputStream out = new FileOutputStream(tmp);
+        long limit = Math.max(1L, maxBytes / 8); // a single asset may not take over the cache
+        InputStream tee = new TeeInputStream(in, out, tmp, key,
+            new Meta(expiresAt, status, reason, mime, encoding, headers, variant), conn.getContentLengthLong(), limit);
+        return new Response(status, reason, mime, encoding, headers, tee, false);
+    }
+
+    private synchronized void commit(String key, File tmp, long size, Meta m) {
+        File body = new File(dir, key + BODY);
+        File meta = new File(dir, key + META);
+        File metaTmp = new File(dir, key + META + TMP);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new FileOutputStream(metaTmp));
+            out.writeInt(META_VERSION);
+            out.writeLong(m.expiresAt);
+            out.writeInt(m.status);
+            out.writeUTF(m.reason);
+            out.writeUTF(m.mime);
+            out.writeUTF(m.encoding != null ? m.encoding : "");
+            out.writeInt(m.headers.size());
+            for (Map.Entry<String, String> h : m.headers.entrySet()) {
+                out.writeUTF(h.getKey());
+                out.writeUTF(h.getValue());
+            }
+            out.writeInt(m.variant.size());
+            for (Map.Entry<String, String> h : m.variant.entrySet()) {
+                out.writeUTF(h.getKey());
+                out.writeUTF(h.getValue() != null ? h.getValue() : "");
+            }
+            out.close();
+            out = null;
+        } catch (IOException e) {
+            LOG.e(TAG, "Failed to write cache meta: " + e.getMessage());
+            tmp.delete();
+            metaTmp.delete();
+            return;
+        } finally {
+            closeQuietly(out);
+        }
+        Long previous = index.remove(key);
+        if (previous != null) {
+            totalBytes -= previous;
+        }
+        // Old meta first: a body without its meta is dropped on the next load, never misread.
+        meta.delete();
+        if (!tmp.renameTo(body) || !metaTmp.renameTo(meta)) {
+            tmp.delete();
+            metaTmp.delete();
+            body.delete();
+            return;
+        }
+        index.put(key, size);
+        totalBytes += size;
+        evictToBudget();
+    }
+
+    private void evictToBudget() {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> e = it.next();
+            it.remove();
+            totalBytes -= e.getValue();
+            new File(dir, e.getKey() + BODY).delete();
+            new File(dir, e.getKey() + META).delete();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void remove(String key) {
+        Long size = index.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        new File(dir, key + BODY).delete();
+        new File(dir, key + META).delete();
+    }
+
+    /** Rebuilds the index from disk, oldest write first, and drops orphans and temp files. */
+    private synchronized void loadIndex() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<File> bodies = new ArrayList<>();
+        for (File f : files) {
+            String name = f.getName();
+            if (name.endsWith(BODY) && new File(dir, name.substring(0, name.length() - BODY.length()) + META).isFile()) {
+                bodies.add(f);
+            } else if (!name.endsWith(META) || !new File(dir, name.substring(0, name.length() - META.length()) + BODY).isFile()) {
+                f.delete();
+            }
+        }
+        Collections.sort(bodies, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File f : bodies) {
+            String name = f.getName();
+            long size = f.length();
+            index.put(name.substring(0, name.length() - BODY.length()), size);
+            totalBytes += size;
+        }
+        evictToBudget();
+    }
+
+    static boolean isStorable(String cacheControl) {
+        if (cacheControl == null) {
+            return true;
+        }
+        String cc = cacheControl.toLowerCase(Locale.US);
+        return !cc.contains("no-store") && !cc.contains("private") && !cc.contains("no-cache")
+            && maxAgeMs(cacheControl) != 0;
+    }
+
+    /** The response's max-age in ms, or -1 when it gives none (or an unreadable one). */
+    static long maxAgeMs(String cacheControl) {
+        if (cacheControl == null) {
+            return -1;
+        }
+        for (String directive : cacheControl.split(",")) {
+            String d = directive.trim();
+            if (d.regionMatches(true, 0, "max-age=", 0, 8)) {
+                try {
+                    return Math.max(0L, Long.parseLong(d.substring(8).replace("\"", "").trim())) * 1000L;
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The lower-case request headers a response varies on, Accept-Encoding left out,
+     * or null when it can't be cached: {@code Vary: *}, or a header never forwarded.
+     */
+    static List<String> varyHeaders(String vary) {
+        List<String> names = new ArrayList<>();
+        if (vary == null) {
+            return names;
+        }
+        for (String field : vary.split(",")) {
+            String name = field.trim().toLowerCase(Locale.US);
+            if (name.equals("*") || name.equals("cookie") || name.equals("authorization")) {
+                return null;
+            }
+            if (!name.isEmpty() && !name.equals("accept-encoding") && !names.contains(name)) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    private static String headerValue(Map<String, String> headers, String lowerName) {
+        if (headers != null) {
+            for (Map.Entry<String, String> h : headers.entrySet()) {
+                if (h.getKey() != null && h.getKey().equalsIgnoreCase(lowerName)) {
+                    return h.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    static String mimeOf(String contentType) {
+        if (contentType == null || contentType.isEmpty()) {
+            return "application/octet-stream";
+        }
+        int semi = contentType.indexOf(';');
+        return (semi < 0 ? contentType : contentType.substring(0, semi)).trim();
+    }
+
+    static String charsetOf(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int i = contentType.toLowerCase(Locale.US).indexOf("charset=");
+        if (i < 0) {
+            return null;
+        }
+        String cs = contentType.substring(i + 8).trim();
+        int semi = cs.indexOf(';');
+        if (semi >= 0) {
+            cs = cs.substring(0, semi).trim();
+        }
+        return cs.replace("\"", "");
+    }
+
+    static String keyFor(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException | java.io.UnsupportedEncodingException e) {
+            return Integer.toHexString(url.hashCode()) + "-" + url.length();
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /** What an entry's .meta file holds besides its body. */
+    private static final class Meta {
+        final long expiresAt; // wall clock ms; 0 = until evicted
+        final int status;
+        final String reason;
+        final String mime;
+        final String encoding;
+        final Map<String, String> headers;
+        final Map<String, String> variant; // request headers named by Vary -> values fetched with
+
+        Meta(long expiresAt, int status, String reason, String mime, String encoding, Map<String, String> headers,
+             Map<String, String> variant) {
+            this.expiresAt = expiresAt;
+            this.status = status;
+            this.reason = reason;
+            this.mime = mime;
+            this.encoding = encoding;
+            this.headers = headers;
+            this.variant = variant;
+        }
+    }
+
+    /**
+     * Copies everything the WebView reads into a temp file and commits it as a cache
+     * entry once the body has been read to EOF. An early close, a read error, a size
+     * over the per-entry limit or a short body all discard the temp file.
+     */
+    private final class TeeInputStream extends FilterInputStream {
+        private final File tmp;
+        private final String key;
+        private final Meta meta;
+        private final long expectedLength;
+        private final long limit;
+        private OutputStream out;
+        private long written;
+        private boolean done;
+
+        TeeInputStream(InputStream in, OutputStream out, File tmp, String key, Meta meta, long expectedLength,
+                       long limit) {
+            super(in);
+            this.out = out;
+            this.tmp = tmp;
+            this.key = key;
+            this.meta = meta;
+            this.expectedLength = expectedLength;
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n;
+            try {
+                n = super.read(b, off, len);
+            } catch (IOException e) {
+                abandon();
+                throw e;
+            }
+            if (n < 0) {
+                finish();
+            } else if (out != null) {
+                written += n;
+                if (written > limit) {
+                    abandon();
+                } else {
+                    try {
+                        out.write(b, off, n);
+                    } catch (IOException e) {
+                        abandon();
+                    }
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            abandon(); // skipped bytes would leave a hole in the copy
+            return super.skip(n);
+        }
+
+        @Override
+        public void close() throws IOException {
+            abandon();
+            super.close();
+        }
+
+        private void finish() {
+            if (done || out == null) {
+                return;
+            }
+            done = true;
+            closeQuietly(out);
+            out = null;
+            // Android's HttpURLConnection reports -1 when it transparently decoded gzip.
+            if (expectedLength < 0 || written == expectedLength) {
+                commit(key, tmp, written, meta);
+            } else {
+                tmp.delete();
+            }
+        }
+
+        private void abandon() {
+            if (out != null) {
+                closeQuietly(out);
+                out = null;
+                if (!done) {
+                    tmp.delete();
+                }
+            }
+            done = true;
+        }
+    }
+}
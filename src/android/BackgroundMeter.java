@@ -0,0 +1,79 @@
+package com.curbngo.browser;
+
+import android.os.SystemClock;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures what a browser instance does while it is paused in the background.
+ *
+ * Time is split into visible (running) and paused spans, and every request the
+ * page makes is counted against the span it happened in. The visible request
+ * rate, applied to the paused time, estimates how many beacons, polls and
+ * asset loads pausing avoided.
+ *
+ * Requests are counted from WebView IO threads; pause/resume come from the UI thread.
+ */
+final class BackgroundMeter {
+
+    private final AtomicLong requestsVisible = new AtomicLong();
+    private final AtomicLong requestsPaused = new AtomicLong();
+
+    private volatile boolean paused;
+    private long spanStartedAt = SystemClock.elapsedRealtime();
+    private long visibleMs;
+    private long pausedMs;
+    private int pauseCount;
+
+    /** Counts one request made by the page. */
+    void requestSeen() {
+        (paused ? requestsPaused : requestsVisible).incrementAndGet();
+    }
+
+    synchronized void paused() {
+        if (paused) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        visibleMs += now - spanStartedAt;
+        spanStartedAt = now;
+        pauseCount++;
+        paused = true;
+    }
+
+    synchronized void resumed() {
+        if (!paused) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        pausedMs += now - spanStartedAt;
+        spanStartedAt = now;
+        paused = false;
+    }
+
+    boolean isPaused() {
+        return paused;
+    }
+
+    synchronized JSONObject toJSON() throws JSONException {
+        long now = SystemClock.elapsedRealtime();
+        long visible = visibleMs + (paused ? 0 : now - spanStartedAt);
+        long hidden = pausedMs + (paused ? now - spanStartedAt : 0);
+        long seenVisible = requestsVisible.get();
+        long seenPaused = requestsPaused.get();
+        long expected = visible > 0 ? seenVisible * hidden / visible : 0;
+
+        JSONObject o = new JSONObject();
+        o.put("paused", paused);
+        o.put("pauseCount", pauseCount);
+        o.put("visibleMs", visible);
+        o.put("pausedMs", hidden);
+        o.put("requestsVisible", seenVisible);
+        o.put("requestsPaused", seenPaused);
+        o.put("estimatedRequestsAvoided", Math.max(0L, expected - seenPaused));
+        return o;
+    }
+}
@@ -0,0 +1,369 @@
+package com.curbngo.browser;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Immutable subresource blocking rules compiled once from open()'s blockRules.
+ *
+ * Three rule forms, matched case-insensitively:
+ * <ul>
+ *   <li>{@code "doubleclick.net"}: any request to that host or a subdomain of it;</li>
+ *   <li>{@code "example.com/collect"}: that host (or a subdomain) and a path/query
+ *       containing {@code "/collect"};</li>
+ *   <li>{@code "/fbevents.js"} or {@code "*pixel"}: a path/query containing the text,
+ *       on any host (a leading '*' is dropped, a leading '/' is kept).</li>
+ * </ul>
+ * A leading {@code "*."} on a host rule is accepted and means the same as without it.
+ *
+ * Hosts go in a trie keyed by reversed labels, like {@link DomainMatcher}. All host-less
+ * patterns are compiled into one Aho-Corasick automaton, so a URL is scanned once
+ * however many there are. Matching walks the URL string by index and allocates nothing;
+ * it is safe from any thread (shouldInterceptRequest runs on several). Each rule counts
+ * its own hits.
+ */
+final class BlockRules {
+
+    private static final int[] NO_RULES = new int[0];
+
+    private final String[] rules;      // as given, for stats
+    private final String[] paths;      // per rule: path substring a host rule also needs, or null
+    private final HostNode hosts;
+
+    // Aho-Corasick automaton over the host-less patterns. Node n's transitions are
+    // keys/targets[first[n] .. first[n + 1]), keys sorted.
+    private final int[] first;
+    private final char[] keys;
+    private final int[] targets;
+    private final int[] fail;
+    private final int[] output;        // lowest rule index ending at (or suffix of) the node, or -1
+
+    private final AtomicLongArray hits;
+    private final AtomicLong checked = new AtomicLong();
+
+    private BlockRules(String[] rules, String[] paths, HostNode hosts, int[] first, char[] keys, int[] targets,
+                       int[] fail, int[] output) {
+        this.rules = rules;
+        this.paths = paths;
+        this.hosts = hosts;
+        this.first = first;
+        this.keys = keys;
+        this.targets = targets;
+        this.fail = fail;
+        this.output = output;
+        this.hits = new AtomicLongArray(rules.length);
+    }
+
+    /** Compiles the given rules. Blank and null entries are skipped. */
+    static BlockRules compile(Collection<String> entries) {
+        List<String> rules = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
+        HostBuilder hostRoot = new HostBuilder();
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<Integer> ends = new ArrayList<>();
+        trie.add(new TreeMap<Character, Integer>());
+        ends.add(-1);
+
+        for (String entry : entries) {
+            if (entry == null) {
+                continue;
+            }
+            String rule = entry.trim().toLowerCase(Locale.US);
+            boolean anyHost = rule.startsWith("*") && !rule.startsWith("*.");
+            if (rule.startsWith("*")) {
+                rule = rule.substring(1);
+            }
+            if (rule.isEmpty()) {
+                continue;
+            }
+            int index = rules.size();
+            rules.add(entry.trim());
+            int slash = rule.indexOf('/');
+            if (anyHost || slash == 0) {
+                // Host-less pattern: add it to the automaton's trie.
+                paths.add(null);
+                int node = 0;
+                for (int i = 0; i < rule.length(); i++) {
+                    Integer next = trie.get(node).get(rule.charAt(i));
+                    if (next == null) {
+                        next = trie.size();
+                        trie.add(new TreeMap<Character, Integer>());
+                        ends.add(-1);
+                        trie.get(node).put(rule.charAt(i), next);
+                    }
+                    node = next;
+                }
+                if (ends.get(node) < 0) {
+                    ends.set(node, index);
+                }
+            } else {
+                String host = slash < 0 ? rule : rule.substring(0, slash);
+                if (host.startsWith(".")) {
+                    host = host.substring(1);
+                }
+                paths.add(slash < 0 ? null : rule.substring(slash));
+                hostRoot.add(host, index);
+            }
+        }
+
+        // Freeze the pattern trie into flat arrays, then link failures breadth-first.
+        int n = trie.size();
+        int[] first = new int[n + 1];
+        int edges = 0;
+        for (int i = 0; i < n; i++) {
+            first[i] = edges;
+            edges += trie.get(i).size();
+        }
+        first[n] = edges;
+        char[] keys = new char[edges];
+        int[] targets = new int[edges];
+        for (int i = 0; i < n; i++) {
+            int e = first[i];
+            for (java.util.Map.Entry<Character, Integer> t : trie.get(i).entrySet()) {
+                keys[e] = t.getKey();
+                targets[e] = t.getValue();
+                e++;
+            }
+        }
+        int[] fail = new int[n];
+        int[] output = new int[n];
+        output[0] = -1;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int e = first[0]; e < first[1]; e++) {
+            fail[targets[e]] = 0;
+            output[targets[e]] = ends.get(targets[e]);
+            queue.add(targets[e]);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int e = first[node]; e < first[node + 1]; e++) {
+                int child = targets[e];
+                char c = keys[e];
+                int f = fail[node];
+                int next = step(first, keys, targets, f, c);
+                while (next < 0 && f != 0) {
+                    f = fail[f];
+                    next = step(first, keys, targets, f, c);
+                }
+                fail[child] = next < 0 ? 0 : next;
+                int own = ends.get(child);
+                int inherited = output[fail[child]];
+                output[child] = own < 0 ? inherited : inherited < 0 ? own : Math.min(own, inherited);
+                queue.add(child);
+            }
+        }
+
+        return new BlockRules(rules.toArray(new String[0]), paths.toArray(new String[0]), hostRoot.freeze(),
+            first, keys, targets, fail, output);
+    }
+
+    /** Number of compiled rules. */
+    int size() {
+        return rules.length;
+    }
+
+    /**
+     * Returns the index of the rule blocking {@code url}, counting the hit, or -1 when
+     * no rule applies.
+     */
+    int match(String url) {
+        checked.incrementAndGet();
+        long range = DomainMatcher.hostRange(url);
+        if (range < 0) {
+            return -1;
+        }
+        int hostStart = (int) (range >>> 32);
+        int hostEnd = (int) range;
+        int pathStart = hostEnd;
+        int len = url.length();
+        while (pathStart < len && "/?#".indexOf(url.charAt(pathStart)) < 0) {
+            pathStart++; // skip the port
+        }
+        int end = url.indexOf('#', pathStart);
+        if (end < 0) {
+            end = len;
+        }
+
+        int rule = matchHost(url, hostStart, hostEnd, pathStart, end);
+        if (rule < 0) {
+            rule = matchPath(url, pathStart, end);
+        }
+        if (rule >= 0) {
+            hits.incrementAndGet(rule);
+        }
+        return rule;
+    }
+
+    /** {checked, blocked, rules: [{rule, hits}]} */
+    JSONObject toJSON() throws JSONException {
+        JSONArray list = new JSONArray();
+        long blocked = 0;
+        for (int i = 0; i < rules.length; i++) {
+            long h = hits.get(i);
+            blocked += h;
+            JSONObject o = new JSONObject();
+            o.put("rule", rules[i]);
+            o.put("hits", h);
+            list.put(o);
+        }
+        JSONObject stats = new JSONObject();
+        stats.put("checked", checked.get());
+        stats.put("blocked", blocked);
+        stats.put("rules", list);
+        return stats;
+    }
+
+    private int matchHost(String url, int start, int end, int pathStart, int pathEnd) {
+        if (start >= end) {
+            return -1;
+        }
+        if (url.charAt(end - 1) == '.') {
+            end--;
+        }
+        HostNode node = hosts;
+        int labelEnd = end;
+        while (labelEnd > start) {
+            int labelStart = labelEnd;
+            while (labelStart > start && url.charAt(labelStart - 1) != '.') {
+                labelStart--;
+            }
+            node = node.find(url, labelStart, labelEnd - labelStart);
+            if (node == null) {
+                return -1;
+            }
+            for (int rule : node.rules) {
+                String path = paths[rule];
+                if (path == null || contains(url, pathStart, pathEnd, path)) {
+                    return rule;
+                }
+            }
+            labelEnd = labelStart - 1;
+        }
+        return -1;
+    }
+
+    private int matchPath(String url, int start, int end) {
+        if (first[1] == 0) {
+            return -1; // no host-less patterns
+        }
+        int state = 0;
+        for (int i = start; i < end; i++) {
+            char c = lower(url.charAt(i));
+            int next = step(first, keys, targets, state, c);
+            while (next < 0 && state != 0) {
+                state = fail[state];
+                next = step(first, keys, targets, state, c);
+            }
+            state = next < 0 ? 0 : next;
+            if (output[state] >= 0) {
+                return output[state];
+            }
+        }
+        return -1;
+    }
+
+    private static int step(int[] first, char[] keys, int[] targets, int node, char c) {
+        int i = Arrays.binarySearch(keys, first[node], first[node + 1], c);
+        return i < 0 ? -1 : targets[i];
+    }
+
+    private static boolean contains(String url, int start, int end, String needle) {
+        int last = end - needle.length();
+        for (int i = start; i <= last; i++) {
+            if (url.regionMatches(true, i, needle, 0, needle.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static char lower(char c) {
+        if (c < 0x80) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+        }
+        return Character.toLowerCase(c);
+    }
+
+    /** Frozen host trie node; {@code rules} are the rules anchored at this domain. */
+    private static final class HostNode {
+        final String[] labels;
+        final HostNode[] children;
+        final int[] rules;
+
+        HostNode(String[] labels, HostNode[] children, int[] rules) {
+            this.labels = labels;
+            this.children = children;
+            this.rules = rules;
+        }
+
+        HostNode find(String host, int offset, int length) {
+            for (int i = 0; i < labels.length; i++) {
+                String label = labels[i];
+                if (label.length() == length && host.regionMatches(true, offset, label, 0, length)) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    /** Mutable host node used only while compiling. */
+    private static final class HostBuilder {
+        final List<String> labels = new ArrayList<>();
+        final List<HostBuilder> children = new ArrayList<>();
+        final List<Integer> rules = new ArrayList<>();
+
+        void add(String host, int rule) {
+            HostBuilder node = this;
+            int end = host.length();
+            while (end > 0) {
+                int dot = host.lastIndexOf('.', end - 1);
+                String label = host.substring(dot + 1, end);
+                if (!label.isEmpty()) {
+                    node = node.child(label);
+                }
+                end = dot < 0 ? 0 : dot;
+            }
+            if (node != this) {
+                node.rules.add(rule);
+            }
+        }
+
+        HostBuilder child(String label) {
+            int i = labels.indexOf(label);
+            if (i >= 0) {
+                return children.get(i);
+            }
+            HostBuilder b = new HostBuilder();
+            labels.add(label);
+            children.add(b);
+            return b;
+        }
+
+        HostNode freeze() {
+            int[] ids = NO_RULES;
+            if (!rules.isEmpty()) {
+                ids = new int[rules.size()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = rules.get(i);
+                }
+            }
+            HostNode[] nodes = new HostNode[children.size()];
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = children.get(i).freeze();
+            }
+            return new HostNode(labels.toArray(new String[0]), nodes, ids);
+        }
+    }
+}
@@ -2,852 +2,690 @@ package com.curbngo.browser;
 
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaPlugin;
-import org.apache.cordova.LOG;
-import org.apache.cordova.PluginResult;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import android.os.Handler;
-import android.os.Looper;
-import android.view.Gravity;
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
 import android.view.View;
-import android.view.ViewGroup;
 import android.webkit.CookieManager;
-import android.webkit.WebChromeClient;
 import android.webkit.WebView;
-import android.webkit.WebViewClient;
-import android.widget.FrameLayout;
-import android.widget.LinearLayout;
-import android.widget.ProgressBar;
-import android.widget.TextView;
-import android.webkit.WebResourceRequest;
 
-import java.util.HashSet;
-import java.util.Set;
-import com.curbngo.browser.WebAppInterface;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public class Browser extends CordovaPlugin {
 
     private static final String TAG = "BrowserPlugin";
 
-    private WebView webView;
-    private FrameLayout layout;
-    private CallbackContext eventCallbackContext;
-    private String barcodeScanURL; // Track the barcode scan URL
-    private Set<String> whitelistDomains; // Use HashSet for faster lookup
-    private boolean shopifyHelpersEnabled = false; // Inject the Shopify product-page variant-race fix
-
-    // Native loading overlay shown over the WebView during navigation, so the
-    // kiosk shows progress instead of a blank page before content paints.
-    private static final String DEFAULT_LOADER_TEXT = "Loading\u2026";
-    private static final long LOADER_MAX_MS = 12000L; // failsafe: never trap the user behind it
-    private FrameLayout loaderView;
-    private TextView loaderLabel;
-    private boolean loaderEnabled = true;
-    private String loaderText = DEFAULT_LOADER_TEXT;
-    private final Handler loaderHandler = new Handler(Looper.getMainLooper());
-    private Runnable loaderTimeoutRunnable;
+    // Browser instances keyed by the optional id each action takes; callers that never
+    // pass one all share DEFAULT_INSTANCE, which behaves exactly like the single browser.
+    // Ordered least recently used first. Live background instances are evicted beyond
+    // BrowserMaxInstances, or while less than BrowserInstanceMemoryMB is free above the
+    // system low-memory threshold.
+    static final String DEFAULT_INSTANCE = "default";
+    private static final String PREF_MAX_INSTANCES = "BrowserMaxInstances";
+    private static final String PREF_INSTANCE_MEMORY_MB = "BrowserInstanceMemoryMB";
+    private final LinkedHashMap<String, BrowserInstance> instances = new LinkedHashMap<>();
+    private BrowserInstance foreground; // UI thread only
+    private int maxInstances;
+    private long instanceMemoryBytes;
+    private ComponentCallbacks2 memoryCallbacks;
+
+    // Opt-in persistent cache for static storefront assets, shared across sessions.
+    private static final String ASSET_CACHE_DIR = "browser-asset-cache";
+    private static final long DEFAULT_ASSET_CACHE_MB = 64L;
+    private static final String[] DEFAULT_ASSET_CACHE_RULES = {
+        "^https://cdn\\.shopify\\.com/",
+        "^https://[^/]+/cdn/shop/",
+        "^https://fonts\\.gstatic\\.com/"
+    };
+    private volatile AssetCache assetCache;
+
+    // Background prefetcher behind Browser.prefetch(); pool size and TTL come from config.xml.
+    private static final String PREF_PREFETCH_CONCURRENCY = "BrowserPrefetchConcurrency";
+    private static final String PREF_PREFETCH_TTL_MS = "BrowserPrefetchTtlMs";
+    private static final long DEFAULT_PREFETCH_MAX_BYTES = 4L * 1024 * 1024;
+    private volatile Prefetcher prefetcher;
+
+    // Opt-in warm WebView pool (config.xml preference BrowserWebViewPoolSize, default 0 = off).
+    private static final String PREF_POOL_SIZE = "BrowserWebViewPoolSize";
+    private WebViewPool webViewPool;
+
+    // Named open() configurations compiled by registerProfile(), shared by every instance.
+    private final Map<String, BrowserProfile> profiles = new ConcurrentHashMap<>();
+
+    // android.os.Trace sections and counters (config.xml preference BrowserTracing, or setTracing()).
+    private static final String PREF_TRACING = "BrowserTracing";
+
+    @Override
+    protected void pluginInitialize() {
+        Tracing.setEnabled(preferences.getBoolean(PREF_TRACING, false));
+        maxInstances = Math.max(1, preferences.getInteger(PREF_MAX_INSTANCES, 3));
+        instanceMemoryBytes = Math.max(0, preferences.getInteger(PREF_INSTANCE_MEMORY_MB, 128)) * 1024L * 1024L;
+
+        // Background instances are the first thing to give up under memory pressure.
+        memoryCallbacks = new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                if (level >= TRIM_MEMORY_RUNNING_LOW) {
+                    runOnUiThread("Browser.trimMemory", new Runnable() {
+                        @Override
+                        public void run() {
+                            for (BrowserInstance i : snapshotInstances()) {
+                                i.trimMemory(level);
+                            }
+                            Prefetcher pf = prefetcher;
+                            if (pf != null) {
+                                pf.clear(); // prefetched bodies are only a head start
+                            }
+                            evictBackgroundInstances("memory", 0);
+                        }
+                    });
+                }
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                onTrimMemory(TRIM_MEMORY_COMPLETE);
+            }
+        };
+        cordova.getContext().registerComponentCallbacks(memoryCallbacks);
+
+        final int poolSize = preferences.getInteger(PREF_POOL_SIZE, 0);
+        if (poolSize <= 0) {
+            return;
+        }
+        runOnUiThread("Browser.prewarmPool", new Runnable() {
+            @Override
+            public void run() {
+                webViewPool = new WebViewPool(cordova.getActivity(), poolSize, new WebViewPool.Factory() {
+                    @Override
+                    public WebView create() {
+                        return createWebView();
+                    }
+                });
+                webViewPool.prewarm();
+            }
+        });
+    }
+
+    /** Pauses every live instance while the activity is in the background. */
+    @Override
+    public void onPause(boolean multitasking) {
+        for (BrowserInstance i : snapshotInstances()) {
+            i.pauseRendering();
+        }
+    }
+
+    /** Resumes the instances that are on screen; hidden ones stay paused. */
+    @Override
+    public void onResume(boolean multitasking) {
+        for (BrowserInstance i : snapshotInstances()) {
+            if (i.isVisible()) {
+                i.resumeRendering();
+            }
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        if (memoryCallbacks != null) {
+            cordova.getContext().unregisterComponentCallbacks(memoryCallbacks);
+            memoryCallbacks = null;
+        }
+        if (prefetcher != null) {
+            prefetcher.shutdown();
+            prefetcher = null;
+        }
+        if (webViewPool != null) {
+            webViewPool.dispose();
+            webViewPool = null;
+        }
+        super.onDestroy();
+    }
 
     @Override
     public boolean execute(String action, JSONArray args, CallbackContext callbackContext) {
         try {
             switch (action) {
                 case "open":
-                    eventCallbackContext = callbackContext;
                     String url = args.optString(0, null);
-                    open(url, args, callbackContext);
+                    JSONObject openOptions = args.optJSONObject(1);
+                    String rejected = openRejection(url, openOptions);
+                    if (rejected != null) {
+                        callbackContext.error(rejected); // before creating the instance, so it can't take an LRU slot
+                        return true;
+                    }
+                    instance(idOf(openOptions), true).open(url, args, callbackContext);
                     return true;
 
                 case "close":
-                    close(callbackContext);
+                    BrowserInstance closing = instance(idOf(args, 0), false);
+                    if (closing != null) {
+                        closing.close(callbackContext);
+                    } else {
+                        callbackContext.success("WebView closed and data cleared");
+                    }
                     return true;
 
                 case "back":
-                    back(callbackContext);
+                    BrowserInstance previous = require(idOf(args, 0), callbackContext);
+                    if (previous != null) {
+                        previous.back(callbackContext);
+                    }
                     return true;
 
                 case "hide":
-                    hide(callbackContext);
+                    BrowserInstance hiding = require(idOf(args, 0), callbackContext);
+                    if (hiding != null) {
+                        hiding.hide(callbackContext);
+                    }
                     return true;
 
                 case "show":
-                    show(callbackContext);
+                    BrowserInstance showing = require(idOf(args, 0), callbackContext);
+                    if (showing != null) {
+                        showing.show(callbackContext);
+                    }
                     return true;
 
                 case "executeScript":
-                    executeScript(args, callbackContext);
+                    BrowserInstance target = require(idOf(args.optJSONObject(0)), callbackContext);
+                    if (target != null) {
+                        target.executeScript(args, callbackContext);
+                    }
                     return true;
 
-                case "navigate":
-                    navigate(args, callbackContext);
+                case "executeScripts":
+                    BrowserInstance probed = require(idOf(args.optJSONObject(1)), callbackContext);
+                    if (probed != null) {
+                        probed.executeScripts(args, callbackContext);
+                    }
                     return true;
-            }
-        } catch (Exception e) {
-            callbackContext.error("Error processing action: " + e.getMessage());
-            return false;
-        }
-        return false;
-    }
-
-    private void open(final String url, final JSONArray args, final CallbackContext callbackContext) {
-        if (url == null || url.isEmpty()) {
-            callbackContext.error("URL is required.");
-            return;
-        }
 
-        // Extract optional barcodeScanURL from args
-        try {
-            JSONObject options = args.optJSONObject(1);
-            if (options != null && options.has("barcodeScanURL")) {
-                barcodeScanURL = options.getString("barcodeScanURL");
-            } else {
-                barcodeScanURL = null;
-            }
-
-            shopifyHelpersEnabled = options != null && options.optBoolean("shopifyHelpers", false);
-
-            // Native loading overlay: on by default; pass loader:false to disable, loaderLabel to customise.
-            loaderEnabled = options == null || options.optBoolean("loader", true);
-            loaderText = DEFAULT_LOADER_TEXT;
-            if (options != null) {
-                String lt = options.optString("loaderLabel", null);
-                if (lt != null && !lt.isEmpty()) {
-                    loaderText = lt;
-                }
-            }
+                case "executeScriptStream":
+                    BrowserInstance streaming = require(idOf(args.optJSONObject(0)), callbackContext);
+                    if (streaming != null) {
+                        streaming.executeScriptStream(args, callbackContext);
+                    }
+                    return true;
 
-            // Extract optional whitelist from args and ensure it includes the initial domain
-            if (options != null && options.has("whitelist")) {
-                JSONArray whitelistArray = options.getJSONArray("whitelist");
-                whitelistDomains = new HashSet<>();
-                
-                // Add the initial domain first
-                try {
-                    java.net.URL urlObj = new java.net.URL(url);
-                    String initialDomain = urlObj.getHost();
-                    if (initialDomain != null) {
-                        whitelistDomains.add(initialDomain);
+                case "streamAck":
+                    BrowserInstance acked = require(idOf(args, 1), callbackContext);
+                    if (acked != null) {
+                        acked.ackScriptStream(args, callbackContext);
                     }
-                    
-                    // Add the provided whitelist domains
-                    for (int i = 0; i < whitelistArray.length(); i++) {
-                        String domain = whitelistArray.getString(i);
-                        whitelistDomains.add(domain);
+                    return true;
+
+                case "navigate":
+                    BrowserInstance navigating = require(idOf(args, 1), callbackContext);
+                    if (navigating != null) {
+                        navigating.navigate(args, callbackContext);
                     }
-                } catch (Exception e) {
-                    LOG.e(TAG, "Error parsing initial URL domain: " + e.getMessage());
-                    // Fallback: just use the provided whitelist
-                    whitelistDomains = new HashSet<>();
-                    for (int i = 0; i < whitelistArray.length(); i++) {
-                        whitelistDomains.add(whitelistArray.getString(i));
+                    return true;
+
+                case "updateWhitelist":
+                    BrowserInstance restricted = require(idOf(args.optJSONObject(1)), callbackContext);
+                    if (restricted != null) {
+                        restricted.updateWhitelist(args, callbackContext);
                     }
-                }
-            } else {
-                // No whitelist provided, create one with just the initial domain
-                try {
-                    java.net.URL urlObj = new java.net.URL(url);
-                    String initialDomain = urlObj.getHost();
-                    if (initialDomain != null) {
-                        whitelistDomains = new HashSet<>();
-                        whitelistDomains.add(initialDomain);
-                    } else {
-                        whitelistDomains = null;
+                    return true;
+
+                case "postMessage":
+                    BrowserInstance recipient = require(idOf(args.optJSONObject(2)), callbackContext);
+                    if (recipient != null) {
+                        recipient.postMessage(args, callbackContext);
                     }
-                } catch (Exception e) {
-                    LOG.e(TAG, "Error parsing initial URL domain: " + e.getMessage());
-                    whitelistDomains = null;
-                }
-            }
-        } catch (JSONException e) {
-            LOG.e(TAG, "Error parsing options: " + e.getMessage());
-            barcodeScanURL = null;
-            whitelistDomains = null;
-        }
+                    return true;
 
-        cordova.getActivity().runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
+                case "registerProfile":
+                    registerProfile(args, callbackContext);
+                    return true;
 
-                // Clear session data before every open so each session starts clean
-                CookieManager.getInstance().removeAllCookies(null);
-                if (webView != null) {
-                    webView.evaluateJavascript(
-                        "localStorage.clear(); sessionStorage.clear();" +
-                        "if('caches' in window) caches.keys().then(k=>k.forEach(n=>caches.delete(n)));" +
-                        "if('indexedDB' in window) { try { indexedDB.databases().then(dbs=>dbs.forEach(db=>indexedDB.deleteDatabase(db.name))); } catch(e) {} }",
-                        null
-                    );
-                }
+                case "prefetch":
+                    prefetch(args, callbackContext);
+                    return true;
 
-                // Check if we can reuse the existing WebView
-                if (webView != null && layout != null && layout.getParent() != null) {
-                    // Navigate to the new URL
-                    webView.setVisibility(View.VISIBLE);
-                    webView.bringToFront();
-                    showLoader();
-                    if (loaderView != null) {
-                        loaderView.bringToFront();
+                case "preload":
+                    BrowserInstance preloading = require(idOf(args.optJSONObject(1)), callbackContext);
+                    if (preloading != null) {
+                        preloading.preload(args, callbackContext);
                     }
-                    webView.loadUrl(url);
+                    return true;
 
-                    PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, "WebView navigated");
-                    pluginResult.setKeepCallback(true);
-                    callbackContext.sendPluginResult(pluginResult);
-                    return;
-                }
+                case "getMetrics":
+                    BrowserInstance measured = require(idOf(args, 0), callbackContext);
+                    if (measured != null) {
+                        measured.getMetrics(callbackContext);
+                    }
+                    return true;
 
-                // Create new WebView only if one doesn't exist or is not properly set up
-                if (layout == null) {
-                    layout = new FrameLayout(cordova.getContext());
-                } else {
-                    // Remove any views from layout
-                    layout.removeAllViews();
-                }
-                
-                // Destroy the existing WebView if it exists
-                if (webView != null) {
-                    webView.destroy();
-                    webView = null;
-                }
+                case "getPowerStats":
+                    BrowserInstance metered = require(idOf(args, 0), callbackContext);
+                    if (metered != null) {
+                        metered.getPowerStats(callbackContext);
+                    }
+                    return true;
 
-                // Create a new WebView
-                webView = new WebView(cordova.getContext());
-                setupWebViewClient();
-                webView.setWebChromeClient(new WebChromeClient() {
-                    @Override
-                    public void onProgressChanged(WebView view, int newProgress) {
-                        // Hide the loader as soon as the page is mostly there; onPageFinished
-                        // (in the WebViewClient) is the slower fallback, and LOADER_MAX_MS the failsafe.
-                        if (newProgress >= 85) {
-                            hideLoader();
-                        }
+                case "getImageStats":
+                    BrowserInstance imaged = require(idOf(args, 0), callbackContext);
+                    if (imaged != null) {
+                        imaged.getImageStats(callbackContext);
                     }
-                });
+                    return true;
 
-                // Configure WebView settings to mimic real browser
-                android.webkit.WebSettings settings = webView.getSettings();
-                settings.setJavaScriptEnabled(true);
-                
-                // Enable DOM storage
-                settings.setDomStorageEnabled(true);
-                settings.setDatabaseEnabled(true);
-                
-                // Enable file access and content URLs
-                settings.setAllowFileAccess(true);
-                settings.setAllowContentAccess(true);
-                settings.setAllowFileAccessFromFileURLs(true);
-                settings.setAllowUniversalAccessFromFileURLs(true);
-                
-                // Cache and loading settings
-                settings.setCacheMode(android.webkit.WebSettings.LOAD_DEFAULT);
-                settings.setSafeBrowsingEnabled(false);
-                
-                // Media and content settings
-                settings.setMediaPlaybackRequiresUserGesture(false);
-                settings.setMixedContentMode(android.webkit.WebSettings.MIXED_CONTENT_ALWAYS_ALLOW);
-                
-                // Display and interaction settings
-                settings.setSupportZoom(true);
-                settings.setBuiltInZoomControls(true);
-                settings.setDisplayZoomControls(false);
-                settings.setLoadWithOverviewMode(true);
-                settings.setUseWideViewPort(true);
-                
-                // Additional browser-like settings
-                settings.setGeolocationEnabled(true);
-                settings.setJavaScriptCanOpenWindowsAutomatically(true);
-                settings.setSupportMultipleWindows(true);
-                
-                // Use system default User-Agent (more authentic than hardcoded)
-                // settings.setUserAgentString() - commented out to use system default
-
-                // Enable cookies
-                CookieManager cookieManager = CookieManager.getInstance();
-                cookieManager.setAcceptCookie(true);
-                cookieManager.setAcceptThirdPartyCookies(webView, true);
-
-                // Add JavaScript interface
-                webView.addJavascriptInterface(new WebAppInterface(eventCallbackContext), "Android");
-
-                // Hardware acceleration and renderer priority
-                webView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
-                if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
-                    webView.setRendererPriorityPolicy(WebView.RENDERER_PRIORITY_IMPORTANT, true);
-                }
+                case "getBlockStats":
+                    BrowserInstance filtered = require(idOf(args, 0), callbackContext);
+                    if (filtered != null) {
+                        filtered.getBlockStats(callbackContext);
+                    }
+                    return true;
 
-                // Enable vertical scrolling
-                webView.setVerticalScrollBarEnabled(true);
-                webView.setScrollBarStyle(View.SCROLLBARS_INSIDE_OVERLAY);
-                webView.setOverScrollMode(WebView.OVER_SCROLL_ALWAYS); // Allow over-scrolling
-
-                // Create a layout to hold the WebView
-                layout = new FrameLayout(cordova.getContext());
-                layout.addView(webView);
-
-                // Add the native loading overlay on top of the WebView (same bounds as `layout`,
-                // so it inherits the offsetTop margin). Starts hidden.
-                buildLoaderView();
-                layout.addView(loaderView, new FrameLayout.LayoutParams(
-                    FrameLayout.LayoutParams.MATCH_PARENT,
-                    FrameLayout.LayoutParams.MATCH_PARENT
-                ));
-
-                // Add the layout to the Cordova activity's view with adjusted height
-                FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(
-                    FrameLayout.LayoutParams.MATCH_PARENT,
-                    FrameLayout.LayoutParams.MATCH_PARENT // Use full height
-                );
-                int offsetTop = args.optJSONObject(1) != null ? args.optJSONObject(1).optInt("offsetTop", 0) : 0; // Default to 0 if not provided
-                params.topMargin = offsetTop; // Set the top margin
-                if (layout.getParent() == null) {
-                    cordova.getActivity().addContentView(layout, params);
-                }
+                case "getPreloadStats":
+                    BrowserInstance predicted = require(idOf(args, 0), callbackContext);
+                    if (predicted != null) {
+                        predicted.getPreloadStats(callbackContext);
+                    }
+                    return true;
 
-                webView.setVisibility(View.VISIBLE);
-                webView.bringToFront();
-                showLoader();
-                loaderView.bringToFront(); // keep the overlay above the WebView after bringToFront()
-                webView.loadUrl(url);
+                case "setTracing":
+                    Tracing.setEnabled(args.optBoolean(0, false));
+                    callbackContext.success(Tracing.isEnabled() ? 1 : 0);
+                    return true;
 
-                PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, "WebView opened");
-                pluginResult.setKeepCallback(true);
-                callbackContext.sendPluginResult(pluginResult);
+                case "getCacheStats":
+                    getCacheStats(instance(idOf(args, 0), false), callbackContext);
+                    return true;
             }
-        });
+        } catch (Exception e) {
+            callbackContext.error("Error processing action: " + e.getMessage());
+            return false;
+        }
+        return false;
     }
 
-    private void close(final CallbackContext callbackContext) {
-        cordova.getActivity().runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                if (webView != null) {
-                    // Clear cookies, localStorage, etc.
-                    CookieManager.getInstance().removeAllCookies(null);
-                    
-                    // Clear storage and unregister service workers
-                    String cleanupScript = 
-                        "try {" +
-                        "localStorage.clear();" +
-                        "sessionStorage.clear();" +
-                        "if ('serviceWorker' in navigator) {" +
-                        "navigator.serviceWorker.getRegistrations().then(function(registrations) {" +
-                        "for(let registration of registrations) {" +
-                        "registration.unregister();" +
-                        "}" +
-                        "});" +
-                        "}" +
-                        "if ('caches' in window) {" +
-                        "caches.keys().then(function(cacheNames) {" +
-                        "return Promise.all(" +
-                        "cacheNames.map(function(cacheName) {" +
-                        "return caches.delete(cacheName);" +
-                        "})" +
-                        ");" +
-                        "});" +
-                        "}" +
-                        "if ('indexedDB' in window) {" +
-                        "try {" +
-                        "indexedDB.databases().then(function(databases) {" +
-                        "databases.forEach(function(db) {" +
-                        "indexedDB.deleteDatabase(db.name);" +
-                        "});" +
-                        "});" +
-                        "} catch(e) {}" +
-                        "}" +
-                        "} catch(e) { console.log('Cleanup error:', e); }";
-                    
-                    webView.evaluateJavascript(cleanupScript, null);
-
-                    webView.setVisibility(View.GONE);
-                    webView.loadUrl("about:blank");
-                    webView.destroy();
-                    webView = null;
-                }
-                
-                // Tear down the loader overlay and cancel its failsafe
-                if (loaderTimeoutRunnable != null) {
-                    loaderHandler.removeCallbacks(loaderTimeoutRunnable);
-                    loaderTimeoutRunnable = null;
-                }
-                loaderView = null;
-                loaderLabel = null;
-                loaderEnabled = true;
-                loaderText = DEFAULT_LOADER_TEXT;
-
-                // Also remove the layout from the parent
-                if (layout != null) {
-                    ViewGroup parentView = (ViewGroup) layout.getParent();
-                    if (parentView != null) {
-                        parentView.removeView(layout);
-                    }
-                    layout.removeAllViews();
-                    layout = null;
-                }
-
-                // Reset barcode scan URL
-                barcodeScanURL = null;
+    // --- Instances ----------------------------------------------------------
 
-                // Reset whitelist
-                whitelistDomains = null;
+    private static String idOf(JSONArray args, int index) {
+        Object value = args.opt(index);
+        return value instanceof String && !((String) value).isEmpty() ? (String) value : DEFAULT_INSTANCE;
+    }
 
-                // Reset Shopify helpers flag
-                shopifyHelpersEnabled = false;
+    private static String idOf(JSONObject options) {
+        Object value = options != null ? options.opt("id") : null;
+        return value instanceof String && !((String) value).isEmpty() ? (String) value : DEFAULT_INSTANCE;
+    }
 
-                callbackContext.success("WebView closed and data cleared");
+    /**
+     * Looks up an instance, creating it when {@code create} is set. The default instance
+     * always exists so single-browser callers see the same errors as before.
+     */
+    private BrowserInstance instance(String id, boolean create) {
+        synchronized (instances) {
+            BrowserInstance i = instances.get(id);
+            if (i == null && (create || DEFAULT_INSTANCE.equals(id))) {
+                i = new BrowserInstance(id, this, cordova);
+                instances.put(id, i);
             }
-        });
+            return i;
+        }
     }
 
-    private void back(final CallbackContext callbackContext) {
-        cordova.getActivity().runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                if (webView != null) {
-                    if (webView.canGoBack()) {
-                        webView.goBack();
-                        callbackContext.success("Navigated back");
-                    } else {
-                        callbackContext.error("Cannot go back. WebView exists but no back history.");
-                    }
-                } else {
-                    callbackContext.error("Cannot go back. No WebView available.");
-                }
-            }
-        });
+    /**
+     * Why open() can't go ahead with {@code url} and {@code options}, or null when it can.
+     * Checked before the instance is looked up so a rejected call never creates one.
+     */
+    private String openRejection(String url, JSONObject options) {
+        if (url == null || url.isEmpty()) {
+            return "URL is required.";
+        }
+        String profileName = options != null ? options.optString("profile", null) : null;
+        if (profileName != null && !profileName.isEmpty() && profile(profileName) == null) {
+            return "No profile named '" + profileName + "'.";
+        }
+        return null;
     }
 
-    private void hide(final CallbackContext callbackContext) {
-        cordova.getActivity().runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                if (webView != null) {
-                    webView.setVisibility(View.GONE);
-                    hideLoader(); // don't leave the spinner up when the shell is hidden
-                    callbackContext.success("WebView hidden");
-                } else {
-                    callbackContext.error("No WebView to hide.");
-                }
-            }
-        });
+    private BrowserInstance require(String id, CallbackContext callbackContext) {
+        BrowserInstance i = instance(id, false);
+        if (i == null) {
+            callbackContext.error("No browser instance with id '" + id + "'.");
+        }
+        return i;
     }
 
-    private void show(final CallbackContext callbackContext) {
-        cordova.getActivity().runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                if (webView != null) {
-                    webView.setVisibility(View.VISIBLE);
-                    callbackContext.success("WebView shown");
-                } else {
-                    callbackContext.error("No WebView to show.");
-                }
+    /**
+     * Called when an instance is opened or shown: hides the other live instances (their
+     * pages stay loaded, so switching back is a plain show), marks it most recently used
+     * and trims the background set to budget. UI-thread only.
+     */
+    void onForeground(BrowserInstance instance) {
+        foreground = instance;
+        for (BrowserInstance other : snapshotInstances()) {
+            if (other != instance && other.isVisible()) {
+                other.conceal();
             }
-        });
+        }
+        synchronized (instances) {
+            instances.remove(instance.id);
+            instances.put(instance.id, instance);
+        }
+        evictBackgroundInstances("count", maxInstances - 1);
+        if (isMemoryLow()) {
+            evictBackgroundInstances("memory", 0);
+        }
     }
 
-    private void executeScript(final JSONArray args, final CallbackContext callbackContext) {
-        cordova.getActivity().runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                if (webView != null) {
-                    try {
-                        JSONObject config = args.optJSONObject(0);
-                        if (config != null && config.has("code")) {
-                            String scriptCode = config.getString("code");
-                            
-                            webView.evaluateJavascript(scriptCode, new android.webkit.ValueCallback<String>() {
-                                @Override
-                                public void onReceiveValue(String value) {
-                                    callbackContext.success(value);
-                                }
-                            });
-                        } else {
-                            callbackContext.error("Invalid config object or missing 'code' property");
-                        }
-                    } catch (JSONException e) {
-                        callbackContext.error("Error parsing config: " + e.getMessage());
-                    }
-                } else {
-                    callbackContext.error("No WebView available to execute script");
-                }
+    /** Forgets an instance after close() or eviction, with its prefetched responses. UI-thread only. */
+    void onClosed(BrowserInstance instance) {
+        if (foreground == instance) {
+            foreground = null;
+        }
+        Prefetcher pf = prefetcher;
+        if (pf != null) {
+            pf.clear(instance.id);
+        }
+        synchronized (instances) {
+            if (instances.get(instance.id) == instance) {
+                instances.remove(instance.id);
             }
-        });
+        }
     }
 
-    private void navigate(final JSONArray args, final CallbackContext callbackContext) {
-        cordova.getActivity().runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                if (webView != null) {
-                    try {
-                        String url = args.optString(0, null);
-                        if (url != null && !url.isEmpty()) {
-                            webView.loadUrl(url);
-                            callbackContext.success("Navigation started");
-                        } else {
-                            callbackContext.error("Invalid URL provided for navigation");
-                        }
-                    } catch (Exception e) {
-                        callbackContext.error("Error during navigation: " + e.getMessage());
-                    }
-                } else {
-                    callbackContext.error("No WebView available for navigation");
-                }
+    /** Evicts least recently used live instances, other than the foreground one, down to {@code keep}. */
+    private void evictBackgroundInstances(String reason, int keep) {
+        List<BrowserInstance> background = new ArrayList<>();
+        for (BrowserInstance i : snapshotInstances()) {
+            if (i != foreground && i.isLive()) {
+                background.add(i);
             }
-        });
+        }
+        for (int n = 0; n < background.size() - keep; n++) {
+            BrowserInstance victim = background.get(n);
+            victim.evict(reason);
+            onClosed(victim);
+        }
     }
 
-    // --- Native loading overlay ---------------------------------------------
+    private List<BrowserInstance> snapshotInstances() {
+        synchronized (instances) {
+            return new ArrayList<>(instances.values());
+        }
+    }
 
-    private int dp(int value) {
-        float density = cordova.getContext().getResources().getDisplayMetrics().density;
-        return Math.round(value * density);
+    /** True when the system reports low memory or another instance's budget would not fit. */
+    boolean isMemoryLow() {
+        ActivityManager am = (ActivityManager) cordova.getContext().getSystemService(Context.ACTIVITY_SERVICE);
+        if (am == null) {
+            return false;
+        }
+        ActivityManager.MemoryInfo info = new ActivityManager.MemoryInfo();
+        am.getMemoryInfo(info);
+        return info.lowMemory || info.availMem - info.threshold < instanceMemoryBytes;
     }
 
-    /** Builds the loader overlay (spinner + label) into {@link #loaderView}. Starts hidden. */
-    private void buildLoaderView() {
-        android.content.Context ctx = cordova.getContext();
-
-        loaderView = new FrameLayout(ctx);
-        loaderView.setBackgroundColor(0xF2FFFFFF); // ~95% white so the page faintly shows through
-        loaderView.setClickable(true);             // swallow taps while visible
-        loaderView.setFocusable(true);
-        loaderView.setVisibility(View.GONE);
-
-        LinearLayout box = new LinearLayout(ctx);
-        box.setOrientation(LinearLayout.VERTICAL);
-        box.setGravity(Gravity.CENTER);
-        loaderView.addView(box, new FrameLayout.LayoutParams(
-            FrameLayout.LayoutParams.WRAP_CONTENT,
-            FrameLayout.LayoutParams.WRAP_CONTENT,
-            Gravity.CENTER));
-
-        ProgressBar spinner = new ProgressBar(ctx, null, android.R.attr.progressBarStyleLarge);
-        spinner.setIndeterminate(true);
-        int sz = dp(64);
-        box.addView(spinner, new LinearLayout.LayoutParams(sz, sz));
-
-        loaderLabel = new TextView(ctx);
-        loaderLabel.setText(loaderText);
-        loaderLabel.setTextColor(0xFF555555);
-        loaderLabel.setTextSize(android.util.TypedValue.COMPLEX_UNIT_SP, 15);
-        loaderLabel.setGravity(Gravity.CENTER);
-        LinearLayout.LayoutParams labelLp = new LinearLayout.LayoutParams(
-            LinearLayout.LayoutParams.WRAP_CONTENT,
-            LinearLayout.LayoutParams.WRAP_CONTENT);
-        labelLp.topMargin = dp(16);
-        box.addView(loaderLabel, labelLp);
+    /** Runs {@code task} on the UI thread, traced as {@code section} while tracing is on. */
+    void runOnUiThread(String section, Runnable task) {
+        cordova.getActivity().runOnUiThread(Tracing.wrap(section, task));
     }
 
-    /** Shows the loader overlay and arms the failsafe auto-hide. UI-thread only. */
-    private void showLoader() {
-        if (!loaderEnabled || loaderView == null) {
-            return;
+    // --- Shared resources ---------------------------------------------------
+
+    /** Takes a warm WebView from the pool, or builds one. UI-thread only. */
+    WebView obtainWebView() {
+        WebView view = webViewPool != null ? webViewPool.acquire() : null;
+        if (view == null) {
+            view = createWebView();
         }
-        if (loaderLabel != null) {
-            loaderLabel.setText(loaderText);
+        if (webViewPool != null) {
+            webViewPool.prewarm(); // refill at the next idle moment
         }
-        loaderView.setVisibility(View.VISIBLE);
-        loaderView.bringToFront();
-        if (loaderTimeoutRunnable != null) {
-            loaderHandler.removeCallbacks(loaderTimeoutRunnable);
+        return view;
+    }
+
+    /** Returns a WebView to the pool when pooling is on, otherwise destroys it. UI-thread only. */
+    void recycleWebView(WebView view) {
+        if (webViewPool != null) {
+            webViewPool.release(view);
+        } else {
+            view.destroy();
         }
-        loaderTimeoutRunnable = new Runnable() {
-            @Override
-            public void run() {
-                hideLoader();
-            }
-        };
-        loaderHandler.postDelayed(loaderTimeoutRunnable, LOADER_MAX_MS);
     }
 
-    /** Hides the loader overlay and cancels the failsafe. UI-thread only. */
-    private void hideLoader() {
-        if (loaderTimeoutRunnable != null) {
-            loaderHandler.removeCallbacks(loaderTimeoutRunnable);
-            loaderTimeoutRunnable = null;
+    AssetCache assetCache() {
+        return assetCache;
+    }
+
+    Prefetcher prefetcher() {
+        return prefetcher;
+    }
+
+    /**
+     * Creates or reconfigures the shared asset cache. {@code maxMB} <= 0 and null
+     * {@code rules} select the defaults.
+     */
+    synchronized void configureAssetCache(long maxMB, List<Pattern> rules) {
+        if (rules == null) {
+            rules = new ArrayList<>();
+            for (String rule : DEFAULT_ASSET_CACHE_RULES) {
+                rules.add(Pattern.compile(rule));
+            }
         }
-        if (loaderView != null) {
-            loaderView.setVisibility(View.GONE);
+        long maxBytes = (maxMB > 0 ? maxMB : DEFAULT_ASSET_CACHE_MB) * 1024L * 1024L;
+        if (assetCache == null) {
+            assetCache = new AssetCache(new File(cordova.getContext().getCacheDir(), ASSET_CACHE_DIR), maxBytes, rules);
+        } else {
+            assetCache.configure(maxBytes, rules);
         }
     }
 
-    private boolean isDomainWhitelisted(String url) {
-        if (whitelistDomains == null || whitelistDomains.isEmpty()) {
-            return true; // No whitelist means all domains are allowed
-        }
-        
+    /**
+     * Builds a configured WebView (settings only; the instance that takes it binds its
+     * own clients and JS bridge). Used for fresh opens and to prewarm the pool. UI-thread only.
+     */
+    private WebView createWebView() {
+        boolean traced = Tracing.begin("Browser.createWebView");
         try {
-            java.net.URL urlObj = new java.net.URL(url);
-            String domain = urlObj.getHost();
-            
-            // Direct lookup - O(1) performance
-            if (whitelistDomains.contains(domain)) {
-                return true;
+            WebView view;
+            boolean constructing = Tracing.begin("Browser.createWebView.construct");
+            try {
+                view = new BrowserWebView(cordova.getContext());
+            } finally {
+                Tracing.end(constructing);
             }
-            
-            // Check for wildcard domain matches
-            for (String whitelistedDomain : whitelistDomains) {
-                if (whitelistedDomain.startsWith("*.")) {
-                    String baseDomain = whitelistedDomain.substring(2); // Remove "*."
-                    if (domain.equals(baseDomain) || domain.endsWith("." + baseDomain)) {
-                        return true;
-                    }
-                }
-                // Check for subdomain matching
-                else if (domain.endsWith("." + whitelistedDomain)) {
-                    return true;
-                }
+            boolean configuring = Tracing.begin("Browser.createWebView.settings");
+            try {
+                configureWebView(view);
+            } finally {
+                Tracing.end(configuring);
             }
-            return false;
-        } catch (Exception e) {
-            LOG.e(TAG, "Error parsing URL for whitelist check: " + e.getMessage());
-            return false;
+            return view;
+        } finally {
+            Tracing.end(traced);
         }
     }
 
-    private void injectBarcodeScanningScript(WebView view) {
-        if (barcodeScanURL == null || barcodeScanURL.isEmpty()) {
-            return; // Skip injection if not needed
-        }
-        
-        String barcodeScript = 
-            "var cngPageInitialized = false;" +
-            "function cngPageInit(){" +
-            "if(cngPageInitialized)" +
-            "return;" +
-            "cngPageInitialized = true;" +
-            "initBarcodeListener = function () {" +
-            "barcodeScannerInitialized = Boolean(true);" +
-            "barcode_timeoutHandler = 0;" +
-            "barcode_inputString = '';" +
-            "barcode_onKeypress = function (ev) {" +
-            "if (ev.target.tagName === 'INPUT' || ev.target.tagName === 'TEXTAREA') return;" +
-            "if (barcode_timeoutHandler) clearTimeout(barcode_timeoutHandler);" +
-            "if (ev.key == 'Enter') {" +
-            "window.location = window.location.origin + '" + barcodeScanURL + "' + barcode_inputString;" +
-            "barcode_inputString = '';" +
-            "return;" +
-            "}" +
-            "barcode_inputString += ev.key;" +
-            "barcode_timeoutHandler = setTimeout(function () {" +
-            "if (barcode_inputString.length <= 3) {" +
-            "barcode_inputString = '';" +
-            "return;" +
-            "}" +
-            "barcode_inputString = '';" +
-            "}, 200);" +
-            "};" +
-            "document.addEventListener('keypress', barcode_onKeypress, { passive: true });" +
-            "};" +
-            "initBarcodeListener();" +
-            "var vp = document.querySelector('meta[name=viewport]');" +
-            "if (typeof vp !== 'undefined' && vp) vp.setAttribute('content', 'width=device-width');" +
-            "else {" +
-            "var meta = document.createElement('meta');" +
-            "meta.name = 'viewport';" +
-            "meta.content = 'width=device-width';" +
-            "document.getElementsByTagName('head')[0].appendChild(meta);" +
-            "}" +
-            "var cEventList = ['keyup', 'touchstart'];" +
-            "cEventList.forEach(function (eventName) {" +
-            "window.addEventListener(eventName, function (e) {" +
-            "Android.postMessage(JSON.stringify({" +
-            "active: true," +
-            "type: e.type" +
-            "}));" +
-            "}, { passive: true });" +
-            "});" +
-            "if(typeof ShopifyAnalytics !== 'undefined' && typeof ShopifyAnalytics.meta !== 'undefined' && typeof ShopifyAnalytics.meta.page !== 'undefined' && typeof ShopifyAnalytics.meta.page.customerId !== 'undefined')" +
-            "Android.postMessage(JSON.stringify({" +
-            "logged_in: true" +
-            "}));" +
-            "}" +
-            "cngPageInit();";
-        
-        view.evaluateJavascript(barcodeScript, null);
+    private void configureWebView(WebView view) {
+        // Configure WebView settings to mimic real browser
+        android.webkit.WebSettings settings = view.getSettings();
+        settings.setJavaScriptEnabled(true);
+
+        // Enable DOM storage
+        settings.setDomStorageEnabled(true);
+        settings.setDatabaseEnabled(true);
+
+        // Enable file access and content URLs
+        settings.setAllowFileAccess(true);
+        settings.setAllowContentAccess(true);
+        settings.setAllowFileAccessFromFileURLs(true);
+        settings.setAllowUniversalAccessFromFileURLs(true);
+
+        // Cache and loading settings
+        settings.setCacheMode(android.webkit.WebSettings.LOAD_DEFAULT);
+        settings.setSafeBrowsingEnabled(false);
+
+        // Media and content settings
+        settings.setMediaPlaybackRequiresUserGesture(false);
+        settings.setMixedContentMode(android.webkit.WebSettings.MIXED_CONTENT_ALWAYS_ALLOW);
+
+        // Display and interaction settings
+        settings.setSupportZoom(true);
+        settings.setBuiltInZoomControls(true);
+        settings.setDisplayZoomControls(false);
+        settings.setLoadWithOverviewMode(true);
+        settings.setUseWideViewPort(true);
+
+        // Additional browser-like settings
+        settings.setGeolocationEnabled(true);
+        settings.setJavaScriptCanOpenWindowsAutomatically(true);
+        settings.setSupportMultipleWindows(true);
+
+        // Use system default User-Agent (more authentic than hardcoded)
+        // settings.setUserAgentString() - commented out to use system default
+
+        // Enable cookies
+        CookieManager cookieManager = CookieManager.getInstance();
+        cookieManager.setAcceptCookie(true);
+        cookieManager.setAcceptThirdPartyCookies(view, true);
+
+        // Hardware acceleration and renderer priority
+        view.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
+            view.setRendererPriorityPolicy(WebView.RENDERER_PRIORITY_IMPORTANT, true);
+        }
+
+        // Enable vertical scrolling
+        view.setVerticalScrollBarEnabled(true);
+        view.setScrollBarStyle(View.SCROLLBARS_INSIDE_OVERLAY);
+        view.setOverScrollMode(WebView.OVER_SCROLL_ALWAYS); // Allow over-scrolling
     }
 
-    /**
-     * Injected on Shopify web shells. Fixes the variant-race on slow kiosks:
-     *  - shows a brief touch-blocking spinner overlay on /products/ pages until
-     *    the theme's <variant-radios>/<variant-selects>/<product-form> custom
-     *    elements are defined (i.e. the theme JS is hydrated), so fast taps can't
-     *    land before the page is wired up; and
-     *  - keeps the product form's hidden `id` input in sync with the currently
-     *    selected option values by reading the variant JSON embedded in the
-     *    picker element, so add-to-cart always submits the right variant even if
-     *    the theme JS hasn't run yet (Dawn-lineage themes).
-     * Idempotent per document via the window.__cngShopifyHelpers guard.
-     */
-    private void injectShopifyHelpers(WebView view) {
-        if (view == null) {
+    // --- Plugin-wide actions ------------------------------------------------
+
+    /** Validates and compiles a named open() configuration; registering a name again replaces it. */
+    private void registerProfile(JSONArray args, CallbackContext callbackContext) {
+        String name = args.optString(0, "");
+        if (name.isEmpty()) {
+            callbackContext.error("Profile name is required.");
             return;
         }
-        String js =
-            "(function(){" +
-            "if(window.__cngShopifyHelpers)return;" +
-            "window.__cngShopifyHelpers=true;" +
-            "var OV='__cngShopifyOverlay',MAXMS=8000,dismissed=false;" +
-            "function isProductPage(){return /\\/products\\//.test(location.pathname);}" +
-            "function pickers(){return document.querySelectorAll('variant-radios,variant-selects');}" +
-            "function showOverlay(){try{if(document.getElementById(OV))return;" +
-            "var d=document.createElement('div');d.id=OV;" +
-            "d.style.cssText='position:fixed;top:0;left:0;right:0;bottom:0;z-index:2147483647;background:rgba(255,255,255,0.92);display:flex;align-items:center;justify-content:center;';" +
-            "var s=document.createElement('div');" +
-            "s.style.cssText='width:46px;height:46px;border:5px solid rgba(0,0,0,0.15);border-top-color:rgba(0,0,0,0.55);border-radius:50%;animation:__cngspin 0.8s linear infinite;';" +
-            "var st=document.createElement('style');st.textContent='@keyframes __cngspin{to{transform:rotate(360deg)}}';" +
-            "d.appendChild(st);d.appendChild(s);(document.body||document.documentElement).appendChild(d);}catch(e){}}" +
-            "function hideOverlay(){try{var d=document.getElementById(OV);if(d&&d.parentNode)d.parentNode.removeChild(d);}catch(e){}}" +
-            // Prefer the real add-to-cart form: the one carrying the [name=add] submit button,
-            // then one with a variant-id input. Avoids latching onto the Shop Pay installment
-            // form, which is also action=/cart/add and often appears first in the DOM.
-            "function bestCartForm(){var fs=document.querySelectorAll('form[action*=\"/cart/add\"]'),i;" +
-            "for(i=0;i<fs.length;i++){if(fs[i].querySelector('[name=\"add\"]'))return fs[i];}" +
-            "for(i=0;i<fs.length;i++){if(fs[i].querySelector('input[name=\"id\"],input.product-variant-id'))return fs[i];}" +
-            "return fs[0]||null;}" +
-            "function pickerForm(p){" +
-            "try{var i=p.querySelector('[form]');if(i){var f=document.getElementById(i.getAttribute('form'));if(f)return f;}}catch(e){}" +
-            "try{if(p.closest){var f2=p.closest('form');if(f2)return f2;var pf=p.closest('product-form');if(pf){var f3=pf.querySelector('form');if(f3)return f3;}}}catch(e){}" +
-            "return bestCartForm();}" +
-            "function optsOf(v){return v.options||[v.option1,v.option2,v.option3].filter(function(x){return x!=null;});}" +
-            "function matchVariant(vs,picked){var i,k,o;" +
-            "for(i=0;i<vs.length;i++){o=optsOf(vs[i]);if(o.length!==picked.length)continue;var ok=true;for(k=0;k<o.length;k++){if(String(o[k])!==String(picked[k])){ok=false;break;}}if(ok)return vs[i];}" +
-            "for(i=0;i<vs.length;i++){o=optsOf(vs[i]);if(o.length!==picked.length)continue;var all=true;for(k=0;k<o.length;k++){if(picked.indexOf(String(o[k]))===-1){all=false;break;}}if(all)return vs[i];}" +
-            "return null;}" +
-            "function syncPicker(p){try{" +
-            "var j=p.querySelector('script[type=\"application/json\"]');if(!j)return;" +
-            "var vs=JSON.parse(j.textContent);if(!Array.isArray(vs)||!vs.length)return;" +
-            "var picked=[],i;var rs=p.querySelectorAll('input[type=\"radio\"]:checked');" +
-            "if(rs.length){for(i=0;i<rs.length;i++)picked.push(rs[i].value);}else{var ss=p.querySelectorAll('select');for(i=0;i<ss.length;i++)picked.push(ss[i].value);}" +
-            "if(!picked.length)return;var v=matchVariant(vs,picked);if(!v)return;" +
-            "var f=pickerForm(p);if(!f)return;" +
-            "var inp=f.querySelector('input[name=\"id\"]')||f.querySelector('input[name$=\"[id]\"]')||f.querySelector('input.product-variant-id');" +
-            "if(!inp){inp=document.createElement('input');inp.type='hidden';inp.name='id';f.appendChild(inp);}" +
-            // Dawn-lineage themes render the variant-id input with the `disabled` attribute and
-            // only un-disable it once the theme JS picks a variant. A disabled input is not
-            // submitted, so a fast tap on Add-to-cart posts /cart/add without `id` and Shopify
-            // rejects it with "Required parameter missing or invalid: items". Force-enable it.
-            "if(inp.disabled){inp.disabled=false;}inp.removeAttribute('disabled');" +
-            "if(String(inp.value)!==String(v.id))inp.value=String(v.id);}catch(e){}}" +
-            "function syncAll(){try{var ps=pickers();for(var i=0;i<ps.length;i++)syncPicker(ps[i]);}catch(e){}" +
-            // Backstop for the "theme JS hasn't run at all" case: un-disable any pre-populated
-            // variant-id input so a native /cart/add submit still carries the (first-available) id.
-            "try{var ds=document.querySelectorAll('form[action*=\"/cart/add\"] input[name=\"id\"][disabled],form[action*=\"/cart/add\"] input.product-variant-id[disabled]');for(var k=0;k<ds.length;k++){if(ds[k].value){ds[k].disabled=false;ds[k].removeAttribute(\"disabled\");}}}catch(e){}}" +
-            "function isVariantControl(t){try{return !!(t&&t.closest&&t.closest('variant-radios,variant-selects'));}catch(e){return false;}}" +
-            "document.addEventListener('change',function(e){if(isVariantControl(e.target))syncAll();},true);" +
-            "document.addEventListener('submit',function(e){var f=e.target;if(f&&f.tagName==='FORM'&&/\\/cart\\/add/.test(f.getAttribute('action')||''))syncAll();},true);" +
-            "document.addEventListener('click',function(e){try{var b=e.target&&e.target.closest?e.target.closest('[name=\"add\"]'):null;if(b)syncAll();}catch(err){}},true);" +
-            "function dismiss(){if(dismissed)return;dismissed=true;syncAll();hideOverlay();}" +
-            "function onReady(){var waits=[];try{if(window.customElements){['variant-radios','variant-selects','product-form','product-info'].forEach(function(t){if(document.querySelector(t))waits.push(customElements.whenDefined(t).catch(function(){}));});}}catch(e){}" +
-            "if(waits.length){Promise.all(waits).then(function(){setTimeout(dismiss,50);});}else{dismiss();}}" +
-            "if(isProductPage())showOverlay();" +
-            "setTimeout(dismiss,MAXMS);" +
-            "if(document.readyState==='complete'){setTimeout(dismiss,0);}else{window.addEventListener('load',function(){setTimeout(dismiss,0);},{once:true});}" +
-            "if(document.readyState==='loading'){document.addEventListener('DOMContentLoaded',onReady,{once:true});}else{onReady();}" +
-            "})();";
-        view.evaluateJavascript(js, null);
+        JSONObject config = args.optJSONObject(1);
+        if (config != null && config.has("profile")) {
+            callbackContext.error("A profile cannot refer to another profile.");
+            return;
+        }
+        OpenOptions options;
+        try {
+            options = OpenOptions.parse(config);
+        } catch (JSONException | PatternSyntaxException e) {
+            callbackContext.error("Invalid profile '" + name + "': " + e.getMessage());
+            return;
+        }
+        profiles.put(name, BrowserProfile.compile(name, options));
+        callbackContext.success(name);
     }
 
-    private void setupWebViewClient() {
-        webView.setWebViewClient(new WebViewClient() {
-            @Override
-            public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
-                String url = request.getUrl().toString();
-                if (!isDomainWhitelisted(url)) {
-                    return true; // Block the navigation
-                }
-                return false; // Allow the navigation
-            }
+    /** The profile registered as {@code name}, or null. Any thread. */
+    BrowserProfile profile(String name) {
+        return profiles.get(name);
+    }
 
-            @Override
-            public void onPageStarted(WebView view, String url, android.graphics.Bitmap favicon) {
-                super.onPageStarted(view, url, favicon);
-                // Show the native loader for the whole navigation lifecycle (covers the blank
-                // pre-paint window that the JS overlay can't reach).
-                showLoader();
-                if (loaderView != null) {
-                    loaderView.bringToFront();
-                }
-                // Inject as early as possible so the variant-id backstop and loading
-                // overlay are in place before the user can interact with a slow page.
-                if (shopifyHelpersEnabled) {
-                    injectShopifyHelpers(view);
-                }
+    private void prefetch(final JSONArray args, final CallbackContext callbackContext) {
+        JSONObject options = args.optJSONObject(1);
+        final BrowserInstance owner = require(idOf(options), callbackContext);
+        if (owner == null) {
+            return;
+        }
+        if (!owner.isLive()) {
+            callbackContext.error("No WebView available to prefetch into");
+            return;
+        }
+        JSONArray urlArray = args.optJSONArray(0);
+        if (urlArray == null) {
+            callbackContext.error("An array of URLs is required");
+            return;
+        }
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < urlArray.length(); i++) {
+            String u = urlArray.optString(i, null);
+            if (u != null && !u.isEmpty()) {
+                urls.add(u);
             }
+        }
+        long maxBytes = options != null ? options.optLong("maxBytes", DEFAULT_PREFETCH_MAX_BYTES) : DEFAULT_PREFETCH_MAX_BYTES;
+        boolean subresources = options == null || options.optBoolean("subresources", true);
+
+        synchronized (this) {
+            if (prefetcher == null) {
+                prefetcher = new Prefetcher(
+                    preferences.getInteger(PREF_PREFETCH_CONCURRENCY, 2),
+                    preferences.getInteger(PREF_PREFETCH_TTL_MS, 60000),
+                    new Prefetcher.CookieStore() {
+                        @Override
+                        public String get(String url) {
+                            return CookieManager.getInstance().getCookie(url);
+                        }
 
+                        @Override
+                        public void set(String url, String setCookieHeader) {
+                            CookieManager.getInstance().setCookie(url, setCookieHeader);
+                        }
+                    });
+            }
+        }
+        prefetcher.prefetch(owner.id, urls, new Prefetcher.UrlFilter() {
             @Override
-            public void onReceivedError(WebView view, WebResourceRequest request, android.webkit.WebResourceError error) {
-                super.onReceivedError(view, request, error);
-                if (request != null && request.isForMainFrame()) {
-                    hideLoader();
-                }
+            public boolean allows(String url) {
+                return owner.isDomainWhitelisted(url); // same check as shouldOverrideUrlLoading
             }
-
+        }, maxBytes, subresources, new Prefetcher.Listener() {
             @Override
-            public void onPageFinished(WebView view, String url) {
-                super.onPageFinished(view, url);
-
-                hideLoader();
-
-                // Inject browser APIs and characteristics that Cloudflare checks
-                String browserEnhancementScript = 
-                    "try {" +
-                    // Add missing navigator properties
-                    "if (!navigator.webdriver) Object.defineProperty(navigator, 'webdriver', {get: () => undefined});" +
-                    "if (!navigator.plugins) Object.defineProperty(navigator, 'plugins', {get: () => [1,2,3,4,5]});" +
-                    "if (!navigator.languages) Object.defineProperty(navigator, 'languages', {get: () => ['en-US', 'en']});" +
-                    "if (!navigator.hardwareConcurrency) Object.defineProperty(navigator, 'hardwareConcurrency', {get: () => 4});" +
-                    "if (!navigator.deviceMemory) Object.defineProperty(navigator, 'deviceMemory', {get: () => 8});" +
-                    "if (!navigator.maxTouchPoints) Object.defineProperty(navigator, 'maxTouchPoints', {get: () => 5});" +
-                    // Add chrome object
-                    "if (!window.chrome) window.chrome = {runtime: {}};" +
-                    // Add performance object
-                    "if (!window.performance.memory) {" +
-                    "Object.defineProperty(window.performance, 'memory', {" +
-                    "get: () => ({usedJSHeapSize: 10000000, totalJSHeapSize: 20000000, jsHeapSizeLimit: 40000000})" +
-                    "});" +
-                    "}" +
-                    // Add screen properties
-                    "Object.defineProperty(screen, 'availTop', {get: () => 0});" +
-                    "Object.defineProperty(screen, 'availLeft', {get: () => 0});" +
-                    // Add missing Permission API
-                    "if (!navigator.permissions) {" +
-                    "navigator.permissions = {" +
-                    "query: function() { return Promise.resolve({state: 'granted'}); }" +
-                    "};" +
-                    "}" +
-                    "} catch(e) { console.log('Browser enhancement error:', e); }";
-                
-                view.evaluateJavascript(browserEnhancementScript, null);
-                
-                // Only inject barcode scanning script if configured
-                if (barcodeScanURL != null && !barcodeScanURL.isEmpty()) {
-                    injectBarcodeScanningScript(view);
-                }
-
-                // Re-run the Shopify helpers as a fallback (idempotent via a window guard)
-                if (shopifyHelpersEnabled) {
-                    injectShopifyHelpers(view);
-                }
-                
-                // Only add event listeners if we have a callback context
-                if (eventCallbackContext != null) {
-                    view.evaluateJavascript(
-                        "try {" +
-                        "document.addEventListener('touchstart', function(event) { " +
-                        "Android.eventTriggered('touchstart');" +
-                        "});" +
-                        "document.addEventListener('keyup', function(event) { " +
-                        "Android.eventTriggered('keyup');" +
-                        "});" +
-                        "} catch (e) { console.error('Error adding event listeners:', e); }", 
-                        null
-                    );
+            public void onComplete(Prefetcher.Result result) {
+                try {
+                    JSONObject summary = new JSONObject();
+                    summary.put("requested", result.requested);
+                    summary.put("fetched", result.fetched.get());
+                    summary.put("skipped", result.skipped.get());
+                    summary.put("failed", result.failed.get());
+                    summary.put("cancelled", result.cancelled.get());
+                    summary.put("bytes", result.bytes.get());
+                    callbackContext.success(summary);
+                } catch (JSONException e) {
+                    callbackContext.error("Error building prefetch result: " + e.getMessage());
                 }
             }
         });
     }
+
+    private void getCacheStats(BrowserInstance instance, final CallbackContext callbackContext) {
+        try {
+            AssetCache cache = assetCache;
+            JSONObject stats = new JSONObject();
+            stats.put("enabled", instance != null && instance.isAssetCacheEnabled());
+            stats.put("hits", cache != null ? cache.hitCount() : 0L);
+            stats.put("misses", cache != null ? cache.missCount() : 0L);
+            stats.put("evictions", cache != null ? cache.evictionCount() : 0L);
+            stats.put("entries", cache != null ? cache.entryCount() : 0);
+            stats.put("sizeBytes", cache != null ? cache.sizeBytes() : 0L);
+            stats.put("maxBytes", cache != null ? cache.maxBytes() : 0L);
+            callbackContext.success(stats);
+        } catch (JSONException e) {
+            callbackContext.error("Error building cache stats: " + e.getMessage());
+        }
+    }
 }
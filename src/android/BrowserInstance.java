@@ -0,0 +1,1888 @@
+package com.curbngo.browser;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaInterface;
+import org.apache.cordova.LOG;
+import org.apache.cordova.PluginResult;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.KeyEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.webkit.WebChromeClient;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+import android.widget.FrameLayout;
+
+import androidx.webkit.ScriptHandler;
+import androidx.webkit.WebViewCompat;
+import androidx.webkit.WebViewFeature;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * One browser surface: a WebView with its own layout, loader overlay, whitelist,
+ * page scripts, navigation timeline and open() event channel.
+ *
+ * {@link Browser} keeps these keyed by the id passed to each action and decides
+ * which ones stay alive; the WebView pool, asset cache and prefetcher are shared
+ * through it. Options are parsed on the Cordova exec thread, everything touching
+ * views runs on the UI thread.
+ */
+final class BrowserInstance {
+
+    private static final String TAG = "BrowserPlugin";
+
+    private static final int DEFAULT_METRICS_BUFFER = 20;
+    private static final Set<String> ALL_ORIGINS = Collections.singleton("*");
+    private static final byte[] NO_BYTES = new byte[0];
+
+    // Native loading overlay shown over the WebView during navigation, so the
+    // kiosk shows progress instead of a blank page before content paints.
+    private static final String DEFAULT_LOADER_TEXT = "Loading\u2026";
+    private static final long LOADER_MAX_MS = 12000L; // failsafe: never trap the user behind it
+
+    final String id;
+    private final Browser owner;
+    private final CordovaInterface cordova;
+
+    private volatile WebView webView; // written on the UI thread
+    private FrameLayout layout;
+    private volatile CallbackContext eventCallbackContext;
+    private String barcodeScanURL; // Track the barcode scan URL
+    // Compiled in open() and swapped whole by updateWhitelist(); null allows every domain.
+    // Readers take one get() per check and never lock.
+    private final AtomicReference<DomainMatcher> whitelist = new AtomicReference<>();
+    private volatile String initialDomain; // host of the URL passed to open(); always allowed
+    private boolean shopifyHelpersEnabled = false; // Inject the Shopify product-page variant-race fix
+    private EventCoalescer eventCoalescer; // Activity event throttling/batching; null = raw delivery
+    private volatile boolean assetCacheEnabled = false;
+
+    // Subresources matching open()'s blockRules are answered locally with an empty 204.
+    private volatile BlockRules blockRules;
+
+    // Opt-in (shopifyImages, with shopifyHelpers) capping of Shopify CDN image widths.
+    private volatile ImageRewriter imageRewriter;
+
+    // Session reset between customers; resetScope comes from open() ("identity", "all" or "none").
+    private volatile ResetScope resetScope = ResetScope.ALL;
+    private int sessionGeneration = 0; // bumped on the UI thread by every open/close
+
+    // Per-navigation timings, kept across sessions for getMetrics.
+    private volatile NavigationTimeline timeline = new NavigationTimeline(DEFAULT_METRICS_BUFFER);
+    private volatile boolean metricsEnabled = false;
+    private volatile boolean metricsEvents = false;
+
+    // Page scripts, built once per open() and registered at document start where supported.
+    private PageScripts pageScripts;
+    private final List<ScriptHandler> scriptHandlers = new ArrayList<>();
+    private boolean documentStartScripts = false;
+
+    private final LoaderOverlay loader;
+    private boolean loaderEnabled = true;
+    private String loaderText = DEFAULT_LOADER_TEXT;
+    private long loaderDelayMs = OpenOptions.DEFAULT_LOADER_DELAY_MS;
+    private long loaderMinMs = OpenOptions.DEFAULT_LOADER_MIN_DISPLAY_MS;
+
+    // Async trace slice spanning the current main-frame navigation (0 = none or tracing off).
+    private static final String NAVIGATION_SECTION = "Browser.navigation";
+    private int navigationTrace; // UI thread only
+
+    // Hidden-state power mode: a hidden instance's WebView is paused and its renderer
+    // priority waived until it is shown again (or the activity resumes).
+    private final BackgroundMeter backgroundMeter = new BackgroundMeter();
+
+    // Optional MessagePort transport (transport: "port"), reconnected for every document.
+    private PortChannel portChannel; // UI thread only
+    private List<String> portSubscriptions; // parsed in open(); null = every type
+    private boolean portEnabled = false;
+
+    // executeScripts() batches waiting for their results, by batch id. Timeouts run on the UI thread.
+    private static final long DEFAULT_SCRIPT_TIMEOUT_MS = 5000L;
+    private static final long DEFAULT_SCRIPT_BATCH_TIMEOUT_MS = 15000L;
+    private final Map<String, ScriptBatch> scriptBatches = new ConcurrentHashMap<>();
+    private final Handler scriptHandler = new Handler(Looper.getMainLooper());
+
+    private static final class ScriptBatch {
+        final CallbackContext callback;
+        Runnable timeout;
+
+        ScriptBatch(CallbackContext callback) {
+            this.callback = callback;
+        }
+    }
+
+    // executeScriptStream() results being pulled out of the page, by stream id.
+    private final Map<String, ScriptStream> scriptStreams = new HashMap<>(); // UI thread only
+
+    // Native barcode capture: key events are seen at dispatch, before the page, whatever
+    // is loading or focused. UI thread only.
+    private ScanDetector scanDetector; // null = capture off
+    private boolean barcodeNavigate = true;
+    private boolean barcodeTabTerminator = false;
+    private boolean swallowTerminatorUp = false;
+    private final BrowserWebView.KeyInterceptor keyInterceptor = new BrowserWebView.KeyInterceptor() {
+        @Override
+        public boolean onKeyEvent(KeyEvent event) {
+            return interceptKey(event);
+        }
+    };
+
+    // Speculative next page (preload()), rendered behind the live WebView until navigate() swaps it in.
+    private final Preloader preloader = new Preloader();
+    private final Handler preloadHandler = new Handler(Looper.getMainLooper());
+
+    // Opt-in (snapshot: true) copy of the navigation state on disk, restored by open() with
+    // restore: true after the process was killed. Cleared by close().
+    private final SessionSnapshot snapshots;
+    private volatile boolean snapshotEnabled = false;
+    private volatile int snapshotMaxBytes = OpenOptions.DEFAULT_SNAPSHOT_MAX_BYTES;
+    private volatile long snapshotTtlMs = OpenOptions.DEFAULT_SNAPSHOT_TTL_MS;
+
+    // Renderer crash/kill recovery: the broken WebView is replaced and its page reloaded, and
+    // the host told how long that took. The breaker stops crash loops. UI thread only.
+    private volatile boolean rendererRecovery = true;
+    private volatile CrashLoopBreaker crashBreaker =
+        new CrashLoopBreaker(CrashLoopBreaker.DEFAULT_MAX_CRASHES, CrashLoopBreaker.DEFAULT_WINDOW_MS);
+    private boolean closing = false; // close() is wiping storage behind the hidden WebView
+    private JSONObject pendingRecovery; // renderProcessGone event, sent when the reload ends
+    private long recoveryStartedAt;
+
+    // This instance's JS bridge; bound to whichever WebView the instance currently owns.
+    // Replaced (UI thread) when a preloaded page is swapped in, since that page has its own.
+    private volatile WebAppInterface webAppInterface;
+
+    BrowserInstance(String id, Browser owner, CordovaInterface cordova) {
+        this.id = id;
+        this.owner = owner;
+        this.cordova = cordova;
+        this.loader = new LoaderOverlay(cordova.getContext(), DEFAULT_LOADER_TEXT, LOADER_MAX_MS);
+        this.snapshots = new SessionSnapshot(cordova.getContext(), id);
+        this.webAppInterface = new WebAppInterface(null);
+        wireBridge(this.webAppInterface);
+    }
+
+    /** Routes a bridge's metrics and script results into this instance. */
+    private void wireBridge(WebAppInterface bridge) {
+        bridge.setPageMetricsListener(new WebAppInterface.PageMetricsListener() {
+            @Override
+            public void onPageMetrics(JSONObject metrics) {
+                try {
+                    emitNavigationTiming(timeline.pageReported(metrics));
+                } catch (JSONException e) {
+                    LOG.e(TAG, "Error recording page metrics: " + e.getMessage());
+                }
+            }
+        });
+        bridge.setScriptResultsListener(new WebAppInterface.ScriptResultsListener() {
+            @Override
+            public void onScriptResults(String batchId, String resultsJson) {
+                ScriptBatch batch = scriptBatches.remove(batchId);
+                if (batch == null) {
+                    return; // timed out, failed, or not ours
+                }
+                scriptHandler.removeCallbacks(batch.timeout);
+                try {
+                    batch.callback.success(new JSONArray(resultsJson));
+                } catch (JSONException e) {
+                    batch.callback.error("Error parsing script results: " + e.getMessage());
+                }
+            }
+        });
+        bridge.setScriptStreamListener(new WebAppInterface.ScriptStreamListener() {
+            @Override
+            public void onScriptStreamReady(final String streamId, final long length, final String kind,
+                                            final String error) {
+                owner.runOnUiThread("Browser.scriptStreamReady", new Runnable() {
+                    @Override
+                    public void run() {
+                        ScriptStream stream = scriptStreams.get(streamId);
+                        if (stream != null) {
+                            stream.onReady(length, kind, error);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /** True while the instance owns a WebView. */
+    boolean isLive() {
+        return webView != null;
+    }
+
+    /** True while the instance's WebView is on screen. UI-thread only. */
+    boolean isVisible() {
+        return webView != null && webView.getVisibility() == View.VISIBLE;
+    }
+
+    boolean isAssetCacheEnabled() {
+        return assetCacheEnabled;
+    }
+
+    void open(final String url, final JSONArray args, final CallbackContext callbackContext) {
+        if (url == null || url.isEmpty()) {
+            callbackContext.error("URL is required.");
+            return;
+        }
+        eventCallbackContext = callbackContext;
+
+        // A registered profile comes precompiled; otherwise compile this call's options.
+        JSONObject options = args.optJSONObject(1);
+        String profileName = options != null ? options.optString("profile", null) : null;
+        BrowserProfile profile;
+        if (profileName != null && !profileName.isEmpty()) {
+            profile = owner.profile(profileName);
+            if (profile == null) {
+                callbackContext.error("No profile named '" + profileName + "'.");
+                return;
+            }
+        } else {
+            OpenOptions parsed;
+            try {
+                parsed = OpenOptions.parse(options);
+            } catch (JSONException | PatternSyntaxException e) {
+                LOG.e(TAG, "Error parsing options: " + e.getMessage());
+                parsed = OpenOptions.fallback();
+            }
+            profile = BrowserProfile.compile(null, parsed);
+        }
+        applyProfile(url, profile);
+
+        // restore: true picks up the session a killed process (or an eviction) left behind, if
+        // its snapshot is fresh and still allowed; any other snapshot belongs to an abandoned
+        // session. A live WebView already holds its session, so there is nothing to restore.
+        SessionSnapshot.Saved saved = null;
+        if (options != null && options.optBoolean("restore", false) && webView == null) {
+            saved = snapshots.read(snapshotTtlMs);
+            if (saved != null && !isDomainWhitelisted(saved.url)) {
+                LOG.d(TAG, "Snapshot URL is not whitelisted; not restored");
+                saved = null;
+            }
+        }
+        if (saved == null || !snapshotEnabled) {
+            snapshots.clear();
+        }
+        final SessionSnapshot.Saved restored = saved;
+
+        final EventCoalescer coalescer = eventCoalescer;
+        final String portToken = portEnabled ? java.util.UUID.randomUUID().toString() : null;
+        final PortChannel port = portToken != null ? new PortChannel(portToken, portSubscriptions, new PortChannel.Listener() {
+            @Override
+            public void onMessage(String type, Object payload) {
+                emitPortMessage(type, payload);
+            }
+        }) : null;
+        pageScripts = profile.pageScripts(portToken);
+
+        // A restored session keeps its cookies and storage: it is the same customer's.
+        final ResetScope scope = restored != null ? ResetScope.NONE : resetScope;
+        final int offsetTop = profile.options.offsetTop;
+
+        owner.runOnUiThread("Browser.open", new Runnable() {
+            @Override
+            public void run() {
+                Prefetcher prefetcher = owner.prefetcher();
+                if (prefetcher != null && scope != ResetScope.NONE) {
+                    prefetcher.clear(id); // prefetched pages carry the previous customer's cookies
+                }
+                // A preloaded page belongs to the old session (its identity and page scripts).
+                discardPreload("New session opened before the preloaded page was used");
+
+                // Clear session data before every open so each session starts clean. Loading
+                // starts as soon as the identity data is gone; cache clearing may still be running.
+                final int session = ++sessionGeneration;
+                final long[] identityMs = new long[1];
+                SessionReset.run(webView, scope, new SessionReset.Listener() {
+                    @Override
+                    public void onIdentityCleared(long elapsedMs) {
+                        identityMs[0] = elapsedMs;
+                        if (session == sessionGeneration) {
+                            attachAndLoad(url, offsetTop, coalescer, port, restored, callbackContext);
+                        } else {
+                            callbackContext.error("Open superseded by a later open or close.");
+                        }
+                    }
+
+                    @Override
+                    public void onComplete(long elapsedMs, SessionReset.Outcome outcome) {
+                        emitSessionReset("open", scope, identityMs[0], elapsedMs, outcome);
+                    }
+                });
+            }
+        });
+    }
+
+    /** Takes on an open() call's profile; the UI-thread parts are handed over with a hop. */
+    private void applyProfile(String url, BrowserProfile profile) {
+        final OpenOptions o = profile.options;
+        barcodeScanURL = o.barcodeScanURL;
+
+        // Scanner keys are captured natively whenever a barcodeScanURL is given (or on request);
+        // barcodeNavigate:false only reports the scan instead of loading barcodeScanURL + code.
+        final ScanDetector detector = o.barcodeCapture
+            ? new ScanDetector(o.barcodeMaxInterKeyMs, o.barcodeMinLength, o.barcodeMaxLength)
+            : null;
+        owner.runOnUiThread("Browser.open.barcode", new Runnable() {
+            @Override
+            public void run() {
+                scanDetector = detector;
+                barcodeNavigate = o.barcodeNavigate;
+                barcodeTabTerminator = o.barcodeTabTerminator;
+                swallowTerminatorUp = false;
+            }
+        });
+
+        shopifyHelpersEnabled = o.shopifyHelpers;
+
+        // Shopify CDN images are fetched no wider than the screen (or shopifyImageMaxWidth px).
+        if (o.shopifyImages) {
+            int maxWidth = o.shopifyImageMaxWidth;
+            if (maxWidth <= 0) {
+                android.util.DisplayMetrics dm = cordova.getContext().getResources().getDisplayMetrics();
+                maxWidth = Math.max(dm.widthPixels, dm.heightPixels); // either orientation
+            }
+            imageRewriter = new ImageRewriter(maxWidth);
+        } else {
+            imageRewriter = null;
+        }
+
+        // Native loading overlay: on by default; pass loader:false to disable, loaderLabel to customise.
+        // It appears only when a navigation hasn't painted after loaderDelayMs, then stays up
+        // for at least loaderMinDisplayMs.
+        loaderEnabled = o.loader;
+        loaderText = o.loaderLabel != null ? o.loaderLabel : DEFAULT_LOADER_TEXT;
+        loaderDelayMs = o.loaderDelayMs;
+        loaderMinMs = o.loaderMinDisplayMs;
+
+        // Activity event delivery: "raw" (default, one result per event) or "batched"
+        // (one aggregate per eventFlushMs window). eventRateLimits maps an event type to
+        // the minimum ms between delivered events of that type, in either mode.
+        eventCoalescer = o.eventCoalescer();
+
+        // Opt-in disk cache for immutable static assets (assetCache: true). Survives the
+        // per-session wipe; assetCacheRules are regexes matched against subresource URLs.
+        assetCacheEnabled = o.assetCache;
+        if (assetCacheEnabled) {
+            owner.configureAssetCache(o.assetCacheMaxMB, o.assetCacheRules);
+        }
+
+        // Trackers, pixels and widgets to keep off the page: host, host/path and *substring rules,
+        // checked for every subresource (navigations are the whitelist's job).
+        blockRules = profile.blockRules;
+
+        // How much the session reset at open/close wipes: "all" (default), "identity"
+        // (cookies and web storage only, keeping the HTTP cache warm) or "none".
+        resetScope = o.resetScope;
+
+        // Navigation timing: native milestones are always recorded; metrics:true adds the
+        // in-page collector, metricsEvents:true streams each completed navigation.
+        metricsEnabled = o.metrics;
+        metricsEvents = o.metricsEvents;
+        if (o.metricsBufferSize > 0 && o.metricsBufferSize != timeline.capacity()) {
+            timeline = new NavigationTimeline(o.metricsBufferSize);
+        }
+
+        // MessagePort transport for window.BrowserPort; portSubscribe limits which message
+        // types are parsed and forwarded (default: all of them).
+        portEnabled = o.portTransport;
+        portSubscriptions = o.portSubscribe;
+        if (portEnabled && !PortChannel.isSupported()) {
+            LOG.e(TAG, "MessagePort transport not supported by this WebView; using the JS bridge only");
+            portEnabled = false;
+        }
+
+        snapshotEnabled = o.snapshot;
+        snapshotMaxBytes = o.snapshotMaxBytes;
+        snapshotTtlMs = o.snapshotTtlMs;
+
+        // Every session starts with a closed breaker.
+        rendererRecovery = o.rendererRecovery;
+        crashBreaker = new CrashLoopBreaker(o.rendererMaxCrashes, o.rendererCrashWindowMs);
+
+        // The whitelist always includes the initial domain, and is compiled up front so
+        // shouldOverrideUrlLoading does no parsing or allocation.
+        initialDomain = OpenOptions.hostOf(url);
+        if (initialDomain == null) {
+            LOG.e(TAG, "Could not determine the domain of the opened URL");
+        }
+        whitelist.set(profile.whitelistFor(initialDomain));
+    }
+
+    /**
+     * Shows the browser and loads {@code url}, reusing the attached WebView when there is
+     * one and building the layout otherwise. Runs once the session reset has cleared
+     * identity data. UI-thread only.
+     */
+    private void attachAndLoad(final String url, final int offsetTop, final EventCoalescer coalescer,
+                               final PortChannel port, final SessionSnapshot.Saved restored,
+                               final CallbackContext callbackContext) {
+        boolean traced = Tracing.begin("Browser.attachAndLoad");
+        try {
+            attachAndLoadTraced(url, offsetTop, coalescer, port, restored, callbackContext);
+        } finally {
+            Tracing.end(traced);
+        }
+    }
+
+    private void attachAndLoadTraced(String url, int offsetTop, EventCoalescer coalescer, PortChannel port,
+                                     SessionSnapshot.Saved restored, CallbackContext callbackContext) {
+        closing = false;
+        if (portChannel != null) {
+            portChannel.close();
+        }
+        portChannel = port;
+        loader.configure(loaderEnabled, loaderText, loaderDelayMs, loaderMinMs);
+
+        // Check if we can reuse the existing WebView
+        if (webView != null && layout != null && layout.getParent() != null) {
+            // Point the JS bridge at this open() call's callback and delivery mode
+            retargetBridge(coalescer);
+            documentStartScripts = installDocumentStartScripts(webView);
+
+            // Navigate to the new URL
+            resumeRendering();
+            webView.setVisibility(View.VISIBLE);
+            layout.bringToFront();
+            focusWebView();
+            armLoader();
+            webView.loadUrl(url);
+            owner.onForeground(this);
+
+            PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, "WebView navigated");
+            pluginResult.setKeepCallback(true);
+            callbackContext.sendPluginResult(pluginResult);
+            return;
+        }
+
+        // Create new WebView only if one doesn't exist or is not properly set up
+        if (layout != null) {
+            // Remove any views from layout
+            layout.removeAllViews();
+        }
+
+        // Hand back the existing WebView (pooled or destroyed) and take a warm one if we can
+        if (webView != null) {
+            releaseWebView(webView);
+            webView = null;
+        }
+        webView = owner.obtainWebView();
+        bind(webView);
+        retargetBridge(coalescer);
+        documentStartScripts = installDocumentStartScripts(webView);
+
+        // Create a layout to hold the WebView
+        layout = new FrameLayout(cordova.getContext());
+        layout.addView(webView);
+
+        // Put the native loading overlay on top of the WebView (same bounds as `layout`,
+        // so it inherits the offsetTop margin). Starts hidden.
+        loader.attachTo(layout);
+
+        // Add the layout to the Cordova activity's view with adjusted height
+        FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(
+            FrameLayout.LayoutParams.MATCH_PARENT,
+            FrameLayout.LayoutParams.MATCH_PARENT // Use full height
+        );
+        params.topMargin = offsetTop; // Set the top margin
+        if (layout.getParent() == null) {
+            cordova.getActivity().addContentView(layout, params);
+        }
+
+        webView.setVisibility(View.VISIBLE);
+        layout.bringToFront();
+        focusWebView();
+        armLoader(); // arm before loadUrl: onPageStarted only comes at commit
+        boolean wasRestored = restored != null && restoreSnapshot(restored);
+        if (!wasRestored) {
+            webView.loadUrl(url);
+        }
+        owner.onForeground(this);
+
+        PluginResult pluginResult = new PluginResult(PluginResult.Status.OK,
+            wasRestored ? "WebView restored" : "WebView opened");
+        pluginResult.setKeepCallback(true);
+        callbackContext.sendPluginResult(pluginResult);
+    }
+
+    /**
+     * Hands the JS bridge to this open() call. The previous session's batched activity is
+     * flushed to the previous callback before the new one is set, never to the new customer's.
+     */
+    private void retargetBridge(EventCoalescer coalescer) {
+        webAppInterface.setCoalescer(null);
+        webAppInterface.setCallbackContext(eventCallbackContext);
+        webAppInterface.setCoalescer(coalescer);
+    }
+
+    /** Points a WebView's clients and JS bridge at this instance. UI-thread only. */
+    private void bind(WebView view) {
+        bind(view, webAppInterface);
+    }
+
+    private void bind(WebView view, WebAppInterface bridge) {
+        setupWebViewClient(view);
+        view.setWebChromeClient(new WebChromeClient() {
+            @Override
+            public void onProgressChanged(WebView view, int newProgress) {
+                if (view != webView) {
+                    return; // an offscreen preload
+                }
+                timeline.progressChanged(newProgress);
+            }
+        });
+        view.addJavascriptInterface(bridge, "Android");
+        if (view instanceof BrowserWebView) {
+            ((BrowserWebView) view).setKeyInterceptor(keyInterceptor);
+        }
+    }
+
+    /**
+     * Detaches this instance's clients and bridge, then returns the WebView to the pool
+     * (or destroys it), so a later owner never reports into this instance. UI-thread only.
+     */
+    private void releaseWebView(WebView view) {
+        if (view == webView) {
+            resumeRendering(); // pooled WebViews must come back running
+            removeDocumentStartScripts();
+        }
+        view.setWebViewClient(new WebViewClient());
+        view.setWebChromeClient(new WebChromeClient());
+        view.removeJavascriptInterface("Android");
+        if (view instanceof BrowserWebView) {
+            ((BrowserWebView) view).setKeyInterceptor(null);
+        }
+        owner.recycleWebView(view);
+    }
+
+    void close(final CallbackContext callbackContext) {
+        final ResetScope scope = resetScope;
+        owner.runOnUiThread("Browser.close", new Runnable() {
+            @Override
+            public void run() {
+                final int session = ++sessionGeneration;
+                // On the UI thread, after which no snapshot can be queued for this session.
+                snapshotEnabled = false;
+                snapshots.clear();
+                if (webView == null) {
+                    teardownSession();
+                    owner.onClosed(BrowserInstance.this);
+                    callbackContext.success("WebView closed and data cleared");
+                    return;
+                }
+
+                // Hide right away, but keep the WebView alive until its storage has really been
+                // wiped (cookies, web storage, service workers, caches, IndexedDB).
+                closing = true;
+                webView.setVisibility(View.GONE);
+                loader.hideNow();
+                final long[] identityMs = new long[1];
+                SessionReset.run(webView, scope, new SessionReset.Listener() {
+                    @Override
+                    public void onIdentityCleared(long elapsedMs) {
+                        identityMs[0] = elapsedMs;
+                    }
+
+                    @Override
+                    public void onComplete(long elapsedMs, SessionReset.Outcome outcome) {
+                        emitSessionReset("close", scope, identityMs[0], elapsedMs, outcome);
+                        if (session == sessionGeneration) { // a later open() owns the WebView otherwise
+                            if (webView != null) {
+                                webView.loadUrl("about:blank");
+                                releaseWebView(webView);
+                                webView = null;
+                            }
+                            teardownSession();
+                            owner.onClosed(BrowserInstance.this);
+                        }
+                        callbackContext.success("WebView closed and data cleared");
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Drops the instance's WebView without a session reset to free memory, and ends its
+     * event channel with an {@code instanceEvicted} event. UI-thread only.
+     */
+    void evict(String reason) {
+        ++sessionGeneration; // any reset still running must not touch this instance again
+        saveSnapshot(); // a later open() with restore: true can bring it back
+        if (webView != null) {
+            webView.loadUrl("about:blank");
+            releaseWebView(webView);
+            webView = null;
+        }
+        teardownSession();
+
+        CallbackContext cb = eventCallbackContext;
+        eventCallbackContext = null;
+        webAppInterface.setCallbackContext(null);
+        if (cb == null) {
+            return;
+        }
+        try {
+            JSONObject event = new JSONObject();
+            event.put("type", "instanceEvicted");
+            event.put("id", id);
+            event.put("reason", reason);
+            cb.sendPluginResult(new PluginResult(PluginResult.Status.OK, event));
+        } catch (JSONException e) {
+            LOG.e(TAG, "Error reporting eviction: " + e.getMessage());
+        }
+    }
+
+    /** Drops the layout, loader and per-session configuration after close(). UI-thread only. */
+    private void teardownSession() {
+        discardPreload("Browser closed before the preloaded page was used");
+
+        // Hide the loader overlay and cancel its timers; the view itself is kept for the next open()
+        loader.hideNow();
+        loaderEnabled = true;
+        loaderText = DEFAULT_LOADER_TEXT;
+        loaderDelayMs = OpenOptions.DEFAULT_LOADER_DELAY_MS;
+        loaderMinMs = OpenOptions.DEFAULT_LOADER_MIN_DISPLAY_MS;
+        endNavigationTrace();
+        snapshotEnabled = false;
+        closing = false;
+        pendingRecovery = null;
+
+        // Also remove the layout from the parent
+        if (layout != null) {
+            ViewGroup parentView = (ViewGroup) layout.getParent();
+            if (parentView != null) {
+                parentView.removeView(layout);
+            }
+            layout.removeAllViews();
+            layout = null;
+        }
+
+        // Reset barcode scan URL and native capture
+        barcodeScanURL = null;
+        scanDetector = null;
+        barcodeNavigate = true;
+        swallowTerminatorUp = false;
+
+        // Reset whitelist and blocking rules
+        whitelist.set(null);
+        initialDomain = null;
+        blockRules = null;
+
+        // Reset Shopify helpers flag, image capping and the session's page scripts
+        shopifyHelpersEnabled = false;
+        imageRewriter = null;
+        pageScripts = null;
+
+        failScriptBatches("WebView closed before the script batch finished");
+        failScriptStreams("WebView closed before the script stream finished");
+
+        // Close the page's MessagePort
+        if (portChannel != null) {
+            portChannel.close();
+            portChannel = null;
+        }
+
+        // Deliver any batched activity still in the window, then go back to raw delivery
+        webAppInterface.setCoalescer(null);
+        eventCoalescer = null;
+    }
+
+    void back(final CallbackContext callbackContext) {
+        owner.runOnUiThread("Browser.back", new Runnable() {
+            @Override
+            public void run() {
+                if (webView != null) {
+                    if (webView.canGoBack()) {
+                        webView.goBack();
+                        callbackContext.success("Navigated back");
+                    } else {
+                        callbackContext.error("Cannot go back. WebView exists but no back history.");
+                    }
+                } else {
+                    callbackContext.error("Cannot go back. No WebView available.");
+                }
+            }
+        });
+    }
+
+    void hide(final CallbackContext callbackContext) {
+        owner.runOnUiThread("Browser.hide", new Runnable() {
+            @Override
+            public void run() {
+                if (webView != null) {
+                    conceal();
+                    callbackContext.success("WebView hidden");
+                } else {
+                    callbackContext.error("No WebView to hide.");
+                }
+            }
+        });
+    }
+
+    void show(final CallbackContext callbackContext) {
+        owner.runOnUiThread("Browser.show", new Runnable() {
+            @Override
+            public void run() {
+                if (webView != null) {
+                    resumeRendering();
+                    webView.setVisibility(View.VISIBLE);
+                    layout.bringToFront();
+                    focusWebView();
+                    owner.onForeground(BrowserInstance.this);
+                    callbackContext.success("WebView shown");
+                } else {
+                    callbackContext.error("No WebView to show.");
+                }
+            }
+        });
+    }
+
+    /**
+     * Arms the loader for a navigation of the live WebView. Not while it is hidden: a GONE
+     * view never draws, so its first-paint callback never comes and the overlay would sit
+     * over the host app until the failsafe. UI-thread only.
+     */
+    private void armLoader() {
+        if (webView != null && webView.getVisibility() == View.VISIBLE) {
+            loader.navigationStarted();
+        }
+    }
+
+    /**
+     * Gives the live WebView input focus, so hardware keys (a barcode scanner's included)
+     * are dispatched to it rather than to whatever the host app had focused. UI-thread only.
+     */
+    private void focusWebView() {
+        if (webView != null) {
+            webView.requestFocus();
+        }
+    }
+
+    /** Takes the instance off screen, keeping its page loaded but paused. UI-thread only. */
+    void conceal() {
+        if (webView != null) {
+            webView.setVisibility(View.GONE);
+            loader.hideNow(); // don't leave the spinner up when the shell is hidden
+            discardPreload("Browser hidden before the preloaded page was used");
+            pauseRendering();
+        }
+    }
+
+    /**
+     * Pauses the page: WebView.onPause() stops animations, media and geolocation, and the
+     * waived renderer priority lets the system deprioritise (or reclaim) the renderer.
+     * WebView.pauseTimers() is deliberately not used: it is process-wide and would also
+     * freeze the Cordova app's own page. UI-thread only.
+     */
+    void pauseRendering() {
+        if (webView == null || backgroundMeter.isPaused()) {
+            return;
+        }
+        saveSnapshot(); // backgrounded apps are the ones that get killed
+        webView.onPause();
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
+            webView.setRendererPriorityPolicy(WebView.RENDERER_PRIORITY_WAIVED, true);
+        }
+        Preloader.Page page = preloader.page();
+        if (page != null) {
+            page.view.onPause();
+        }
+        backgroundMeter.paused();
+    }
+
+    /** Reverses {@link #pauseRendering()}. UI-thread only. */
+    void resumeRendering() {
+        if (webView == null || !backgroundMeter.isPaused()) {
+            return;
+        }
+        webView.onResume();
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
+            webView.setRendererPriorityPolicy(WebView.RENDERER_PRIORITY_IMPORTANT, true);
+        }
+        Preloader.Page page = preloader.page();
+        if (page != null) {
+            page.view.onResume();
+        }
+        backgroundMeter.resumed();
+    }
+
+    void getPowerStats(final CallbackContext callbackContext) {
+        try {
+            callbackContext.success(backgroundMeter.toJSON());
+        } catch (JSONException e) {
+            callbackContext.error("Error building power stats: " + e.getMessage());
+        }
+    }
+
+    void executeScript(final JSONArray args, final CallbackContext callbackContext) {
+        owner.runOnUiThread("Browser.executeScript", new Runnable() {
+            @Override
+            public void run() {
+                if (webView != null) {
+                    try {
+                        JSONObject config = args.optJSONObject(0);
+                        if (config != null && config.has("code")) {
+                            String scriptCode = config.getString("code");
+
+                            webView.evaluateJavascript(scriptCode, new android.webkit.ValueCallback<String>() {
+                                @Override
+                                public void onReceiveValue(String value) {
+                                    callbackContext.success(value);
+                                }
+                            });
+                        } else {
+                            callbackContext.error("Invalid config object or missing 'code' property");
+                        }
+                    } catch (JSONException e) {
+                        callbackContext.error("Error parsing config: " + e.getMessage());
+                    }
+                } else {
+                    callbackContext.error("No WebView available to execute script");
+                }
+            }
+        });
+    }
+
+    /**
+     * Evaluates several snippets in one round trip and returns their results in order.
+     * {@code timeoutMs} bounds how long each snippet's promise is awaited;
+     * {@code totalTimeoutMs} bounds the whole batch, after which the remaining snippets
+     * are cancelled in the page and the call fails. A snippet stuck in a synchronous
+     * loop cannot be interrupted, but the total timeout still answers the caller.
+     */
+    void executeScripts(final JSONArray args, final CallbackContext callbackContext) {
+        JSONArray snippets = args.optJSONArray(0);
+        if (snippets == null || snippets.length() == 0) {
+            callbackContext.error("An array of script snippets is required");
+            return;
+        }
+        for (int i = 0; i < snippets.length(); i++) {
+            if (!(snippets.opt(i) instanceof String)) {
+                callbackContext.error("Snippet " + i + " is not a string");
+                return;
+            }
+        }
+        JSONObject options = args.optJSONObject(1);
+        long perSnippetMs = Math.max(1L, options != null ? options.optLong("timeoutMs", DEFAULT_SCRIPT_TIMEOUT_MS) : DEFAULT_SCRIPT_TIMEOUT_MS);
+        final long totalMs = Math.max(1L, options != null ? options.optLong("totalTimeoutMs", DEFAULT_SCRIPT_BATCH_TIMEOUT_MS) : DEFAULT_SCRIPT_BATCH_TIMEOUT_MS);
+        final String batchId = java.util.UUID.randomUUID().toString();
+        final String script = PageScripts.scriptBatch(batchId, snippets.toString(), perSnippetMs);
+
+        owner.runOnUiThread("Browser.executeScripts", new Runnable() {
+            @Override
+            public void run() {
+                final WebView view = webView;
+                if (view == null) {
+                    callbackContext.error("No WebView available to execute script");
+                    return;
+                }
+                ScriptBatch batch = new ScriptBatch(callbackContext);
+                batch.timeout = new Runnable() {
+                    @Override
+                    public void run() {
+                        if (scriptBatches.remove(batchId) != null) {
+                            view.evaluateJavascript(PageScripts.cancelScriptBatch(batchId), null);
+                            callbackContext.error("Script batch timed out after " + totalMs + " ms");
+                        }
+                    }
+                };
+                scriptBatches.put(batchId, batch);
+                scriptHandler.postDelayed(batch.timeout, totalMs);
+                view.evaluateJavascript(script, new android.webkit.ValueCallback<String>() {
+                    @Override
+                    public void onReceiveValue(String value) {
+                        if (!"true".equals(value)) {
+                            failScriptBatch(batchId, "Script batch could not start in this page");
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void failScriptBatch(String batchId, String reason) {
+        ScriptBatch batch = scriptBatches.remove(batchId);
+        if (batch != null) {
+            scriptHandler.removeCallbacks(batch.timeout);
+            batch.callback.error(reason);
+        }
+    }
+
+    /** Fails every pending batch, e.g. because the document that ran them is gone. */
+    private void failScriptBatches(String reason) {
+        for (String batchId : new ArrayList<>(scriptBatches.keySet())) {
+            failScriptBatch(batchId, reason);
+        }
+    }
+
+    /**
+     * Like executeScript, but streams the result back in chunks of at most
+     * {@code chunkSize} characters instead of one string; see {@link ScriptStream}.
+     */
+    void executeScriptStream(final JSONArray args, final CallbackContext callbackContext) {
+        final JSONObject config = args.optJSONObject(0);
+        if (config == null || !(config.opt("code") instanceof String)) {
+            callbackContext.error("Invalid config object or missing 'code' property");
+            return;
+        }
+        final String code = config.optString("code");
+        final int chunkLength = Math.min(ScriptStream.MAX_CHUNK_LENGTH,
+            Math.max(ScriptStream.MIN_CHUNK_LENGTH, config.optInt("chunkSize", ScriptStream.DEFAULT_CHUNK_LENGTH)));
+        final int maxLength = Math.max(1, config.optInt("maxLength", ScriptStream.DEFAULT_MAX_LENGTH));
+        final int window = config.optInt("window", ScriptStream.DEFAULT_WINDOW);
+        final long readyTimeoutMs = Math.max(1L, config.optLong("timeoutMs", ScriptStream.DEFAULT_READY_TIMEOUT_MS));
+        final String streamId = java.util.UUID.randomUUID().toString();
+
+        owner.runOnUiThread("Browser.executeScriptStream", new Runnable() {
+            @Override
+            public void run() {
+                if (webView == null) {
+                    callbackContext.error("No WebView available to execute script");
+                    return;
+                }
+                ScriptStream stream = new ScriptStream(streamId, webView, callbackContext, window, new Runnable() {
+                    @Override
+                    public void run() {
+                        scriptStreams.remove(streamId);
+                    }
+                });
+                scriptStreams.put(streamId, stream);
+                stream.start(code, chunkLength, maxLength, readyTimeoutMs);
+            }
+        });
+    }
+
+    /** The host has handled a streamed chunk; lets the stream pull further ahead. */
+    void ackScriptStream(final JSONArray args, final CallbackContext callbackContext) {
+        final String streamId = args.optString(0, null);
+        owner.runOnUiThread("Browser.streamAck", new Runnable() {
+            @Override
+            public void run() {
+                ScriptStream stream = streamId != null ? scriptStreams.get(streamId) : null;
+                if (stream != null) {
+                    stream.onAck();
+                }
+                callbackContext.success();
+            }
+        });
+    }
+
+    /** Fails every open stream; UI-thread only. */
+    private void failScriptStreams(String reason) {
+        for (ScriptStream stream : new ArrayList<>(scriptStreams.values())) {
+            stream.fail(reason);
+        }
+    }
+
+    void navigate(final JSONArray args, final CallbackContext callbackContext) {
+        owner.runOnUiThread("Browser.navigate", new Runnable() {
+            @Override
+            public void run() {
+                if (webView != null) {
+                    try {
+                        String url = args.optString(0, null);
+                        if (url != null && !url.isEmpty()) {
+                            Preloader.Page hit = preloader.take(url, webView.canGoBack());
+                            if (hit != null) {
+                                swapInPreload(hit);
+                                callbackContext.success("Navigation served from preload");
+                                return;
+                            }
+                            discardPreload("Preloaded page not used for this navigation");
+                            webView.loadUrl(url);
+                            callbackContext.success("Navigation started");
+                        } else {
+                            callbackContext.error("Invalid URL provided for navigation");
+                        }
+                    } catch (Exception e) {
+                        callbackContext.error("Error during navigation: " + e.getMessage());
+                    }
+                } else {
+                    callbackContext.error("No WebView available for navigation");
+                }
+            }
+        });
+    }
+
+    /**
+     * Renders {@code url} in a second WebView behind the live one, with the same settings,
+     * whitelist and page scripts, so a later navigate() to it only has to swap views.
+     * Resolves once the page has loaded. Refused when memory is low.
+     */
+    void preload(final JSONArray args, final CallbackContext callbackContext) {
+        final String url = args.optString(0, null);
+        if (url == null || url.isEmpty()) {
+            callbackContext.error("URL is required.");
+            return;
+        }
+        if (!isDomainWhitelisted(url)) {
+            callbackContext.error("URL is not whitelisted: " + url);
+            return;
+        }
+        JSONObject options = args.optJSONObject(1);
+        final long ttlMs = Math.max(1L, options != null ? options.optLong("ttlMs", Preloader.DEFAULT_TTL_MS) : Preloader.DEFAULT_TTL_MS);
+        final boolean replaceHistory = options != null && options.optBoolean("replaceHistory", false);
+        owner.runOnUiThread("Browser.preload", new Runnable() {
+            @Override
+            public void run() {
+                if (webView == null || layout == null) {
+                    callbackContext.error("No WebView available to preload next to");
+                    return;
+                }
+                if (owner.isMemoryLow()) {
+                    preloader.refusedForMemory();
+                    callbackContext.error("Not enough memory to preload");
+                    return;
+                }
+                WebView view = owner.obtainWebView();
+                WebAppInterface bridge = new WebAppInterface(null); // muted until swapped in
+                final Preloader.Page page = new Preloader.Page(view, url, bridge, ttlMs, replaceHistory, callbackContext);
+                disposePreload(preloader.hold(page), "Replaced by a newer preload");
+
+                bind(view, bridge);
+                if (pageScripts != null && WebViewFeature.isFeatureSupported(WebViewFeature.DOCUMENT_START_SCRIPT)) {
+                    for (String script : pageScripts.documentScripts()) {
+                        page.scriptHandlers.add(WebViewCompat.addDocumentStartJavaScript(view, script, ALL_ORIGINS));
+                    }
+                    page.documentStart = true;
+                }
+                // Behind the live WebView (which is opaque) and under the loader, same bounds.
+                layout.addView(view, 0, new FrameLayout.LayoutParams(
+                    FrameLayout.LayoutParams.MATCH_PARENT,
+                    FrameLayout.LayoutParams.MATCH_PARENT));
+                view.setVisibility(View.VISIBLE);
+                view.loadUrl(url);
+
+                preloadHandler.removeCallbacksAndMessages(null);
+                preloadHandler.postDelayed(new Runnable() {
+                    @Override
+                    public void run() {
+                        Preloader.Page stale = preloader.drop(page);
+                        if (stale != null) {
+                            preloader.expiredUnused();
+                            disposePreload(stale, "Preloaded page expired unused");
+                        }
+                    }
+                }, ttlMs);
+            }
+        });
+    }
+
+    /**
+     * Makes a preloaded page the live one and releases the old WebView. The old view's
+     * back/forward list goes with it, which is why {@link Preloader#take} only hands out a
+     * page over a view with history when it was preloaded with replaceHistory. UI-thread only.
+     */
+    private void swapInPreload(Preloader.Page page) {
+        preloadHandler.removeCallbacksAndMessages(null);
+        failScriptBatches("Page navigated before the script batch finished");
+        failScriptStreams("Page navigated before the script stream finished");
+        resolvePreload(page, null);
+
+        // The page's own bridge and document-start scripts take over from the old view's.
+        removeDocumentStartScripts();
+        scriptHandlers.addAll(page.scriptHandlers);
+        documentStartScripts = page.documentStart;
+        WebAppInterface previousBridge = webAppInterface;
+        previousBridge.setCoalescer(null); // delivers any batched activity first
+        previousBridge.setCallbackContext(null);
+        wireBridge(page.bridge);
+        page.bridge.setCallbackContext(eventCallbackContext);
+        page.bridge.setCoalescer(eventCoalescer);
+        webAppInterface = page.bridge;
+
+        WebView previous = webView;
+        webView = page.view;
+        if (backgroundMeter.isPaused()) {
+            page.view.onPause(); // keep the meter's view of the live WebView consistent
+        }
+        layout.removeView(previous);
+        releaseWebView(previous);
+        if (page.view.getVisibility() == View.VISIBLE) {
+            focusWebView(); // the focused view was the one just released
+        }
+
+        if (page.finished) {
+            loader.hideNow();
+            saveSnapshot();
+        } else {
+            armLoader(); // the rest of the load is reported as usual from here
+        }
+        if (portChannel != null && (page.finished || (page.documentStart && page.committed))) {
+            portChannel.connect(page.view);
+        }
+    }
+
+    /** Stops holding the current preload, if any. UI-thread only. */
+    private void discardPreload(String reason) {
+        disposePreload(preloader.drop(preloader.page()), reason);
+    }
+
+    /** Drops the preload to give memory back (onTrimMemory). UI-thread only. */
+    void discardPreloadForMemory() {
+        Preloader.Page page = preloader.drop(preloader.page());
+        if (page != null) {
+            preloader.droppedForMemory();
+            disposePreload(page, "Preloaded page dropped for memory");
+        }
+    }
+
+    /** Takes an unused preload out of the layout and hands its WebView back. UI-thread only. */
+    private void disposePreload(Preloader.Page page, String reason) {
+        if (page == null) {
+            return;
+        }
+        if (preloader.page() == null) {
+            preloadHandler.removeCallbacksAndMessages(null);
+        }
+        resolvePreload(page, reason);
+        for (ScriptHandler handler : page.scriptHandlers) {
+            handler.remove();
+        }
+        page.scriptHandlers.clear();
+        ViewGroup parent = (ViewGroup) page.view.getParent();
+        if (parent != null) {
+            parent.removeView(page.view);
+        }
+        page.view.stopLoading();
+        page.view.loadUrl("about:blank");
+        releaseWebView(page.view);
+    }
+
+    /** Answers the preload() caller once: success when loaded, {@code error} otherwise. */
+    private void resolvePreload(Preloader.Page page, String error) {
+        CallbackContext cb = page.callback;
+        if (cb == null) {
+            return;
+        }
+        page.callback = null;
+        if (error != null) {
+            cb.error(error);
+            return;
+        }
+        try {
+            JSONObject result = new JSONObject();
+            result.put("url", page.finalUrl != null ? page.finalUrl : page.url);
+            result.put("loadMs", SystemClock.uptimeMillis() - page.requestedAt);
+            result.put("loaded", page.finished);
+            cb.success(result);
+        } catch (JSONException e) {
+            cb.error("Error building preload result: " + e.getMessage());
+        }
+    }
+
+    void getImageStats(final CallbackContext callbackContext) {
+        ImageRewriter images = imageRewriter;
+        if (images == null) {
+            callbackContext.error("Image capping is off; open() with shopifyHelpers and shopifyImages");
+            return;
+        }
+        try {
+            callbackContext.success(images.toJSON());
+        } catch (JSONException e) {
+            callbackContext.error("Error building image stats: " + e.getMessage());
+        }
+    }
+
+    void getBlockStats(final CallbackContext callbackContext) {
+        BlockRules rules = blockRules;
+        if (rules == null) {
+            callbackContext.error("No blockRules were given to open()");
+            return;
+        }
+        try {
+            callbackContext.success(rules.toJSON());
+        } catch (JSONException e) {
+            callbackContext.error("Error building block stats: " + e.getMessage());
+        }
+    }
+
+    void getPreloadStats(final CallbackContext callbackContext) {
+        try {
+            callbackContext.success(preloader.toJSON());
+        } catch (JSONException e) {
+            callbackContext.error("Error building preload stats: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replaces, extends or trims the whitelist without touching the page. The new
+     * matcher is compiled off the UI thread and published with a compare-and-set, so
+     * concurrent updates never lose each other and navigation checks never wait. The
+     * host of the opened URL is always kept.
+     */
+    void updateWhitelist(final JSONArray args, final CallbackContext callbackContext) {
+        JSONArray entries = args.optJSONArray(0);
+        if (entries == null) {
+            callbackContext.error("An array of domains is required");
+            return;
+        }
+        JSONObject options = args.optJSONObject(1);
+        String mode = options != null ? options.optString("mode", "replace") : "replace";
+        if (!"replace".equals(mode) && !"add".equals(mode) && !"remove".equals(mode)) {
+            callbackContext.error("Unknown whitelist mode: " + mode);
+            return;
+        }
+        List<String> changes = new ArrayList<>();
+        for (int i = 0; i < entries.length(); i++) {
+            String d = entries.optString(i, null);
+            if (d != null) {
+                changes.add(d);
+            }
+        }
+        // Normalise through the matcher so "*.Shop.com" removes "shop.com".
+        Set<String> normalized = DomainMatcher.compile(changes).domains();
+
+        DomainMatcher current;
+        DomainMatcher next;
+        do {
+            current = whitelist.get();
+            Set<String> domains = new HashSet<>();
+            if (!"replace".equals(mode) && current != null) {
+                domains.addAll(current.domains());
+            }
+            if ("remove".equals(mode)) {
+                domains.removeAll(normalized);
+            } else {
+                domains.addAll(normalized);
+            }
+            String initial = initialDomain;
+            if (initial != null) {
+                domains.add(initial);
+            }
+            next = domains.isEmpty() ? null : DomainMatcher.compile(domains);
+        } while (!whitelist.compareAndSet(current, next));
+
+        try {
+            JSONObject result = new JSONObject();
+            result.put("domains", new JSONArray(next != null ? next.domains() : Collections.<String>emptySet()));
+            callbackContext.success(result);
+        } catch (JSONException e) {
+            callbackContext.error("Error building whitelist result: " + e.getMessage());
+        }
+    }
+
+    void getMetrics(final CallbackContext callbackContext) {
+        try {
+            callbackContext.success(timeline.snapshot());
+        } catch (JSONException e) {
+            callbackContext.error("Error building metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Pushes {@code data} to window.BrowserPort handlers for {@code type} in the current
+     * document. Requires open() with transport: "port".
+     */
+    void postMessage(final JSONArray args, final CallbackContext callbackContext) {
+        final String type = args.optString(0, null);
+        if (type == null || type.isEmpty() || type.indexOf('\n') >= 0) {
+            callbackContext.error("A message type without line breaks is required");
+            return;
+        }
+        Object data = args.opt(1);
+        final String json = data == null || data == JSONObject.NULL ? null
+            : data instanceof String ? JSONObject.quote((String) data) : data.toString();
+        owner.runOnUiThread("Browser.postMessage", new Runnable() {
+            @Override
+            public void run() {
+                if (portChannel != null && portChannel.post(type, json)) {
+                    callbackContext.success("Message posted");
+                } else {
+                    callbackContext.error("No page connected on the MessagePort transport");
+                }
+            }
+        });
+    }
+
+    /**
+     * Feeds hardware keys to the scan detector. Keys always reach the page as well;
+     * only the terminator that completes a recognised scan (down and up) is consumed, so
+     * a focused form is not submitted, nor focus moved, by the scanner. The terminator is
+     * Enter, and Tab too with barcodeTabTerminator. UI-thread only.
+     */
+    private boolean interceptKey(KeyEvent event) {
+        ScanDetector detector = scanDetector;
+        if (detector == null) {
+            return false;
+        }
+        int keyCode = event.getKeyCode();
+        boolean terminator = keyCode == KeyEvent.KEYCODE_ENTER || keyCode == KeyEvent.KEYCODE_NUMPAD_ENTER
+            || (barcodeTabTerminator && keyCode == KeyEvent.KEYCODE_TAB);
+        if (event.getAction() == KeyEvent.ACTION_UP) {
+            if (terminator && swallowTerminatorUp) {
+                swallowTerminatorUp = false;
+                return true;
+            }
+            return false;
+        }
+        if (event.getAction() != KeyEvent.ACTION_DOWN || event.getRepeatCount() > 0) {
+            return false;
+        }
+        if (terminator) {
+            if (detector.onTerminator(event.getEventTime())) {
+                onScan(detector.code(), detector.scanDurationMs(), event.getEventTime());
+                swallowTerminatorUp = true;
+                return true;
+            }
+            return false;
+        }
+        int c = event.getUnicodeChar();
+        if (c > 0 && !Character.isISOControl(c)) {
+            detector.onChar((char) c, event.getEventTime());
+        } else if (!KeyEvent.isModifierKey(keyCode)) {
+            detector.reset(); // arrows, backspace, etc. are never part of a scan
+        }
+        return false;
+    }
+
+    /** Reports a recognised scan, then loads origin + barcodeScanURL + code when asked to. UI-thread only. */
+    private void onScan(String code, long scanMs, long terminatorAt) {
+        boolean navigate = barcodeNavigate && barcodeScanURL != null && !barcodeScanURL.isEmpty() && webView != null;
+        String target = null;
+        if (navigate) {
+            try {
+                java.net.URL current = new java.net.URL(webView.getUrl());
+                target = current.getProtocol() + "://" + current.getAuthority() + barcodeScanURL + code;
+            } catch (java.net.MalformedURLException e) {
+                LOG.e(TAG, "Error building barcode scan URL: " + e.getMessage());
+            }
+        }
+        CallbackContext cb = eventCallbackContext;
+        if (cb != null) {
+            try {
+                JSONObject event = new JSONObject();
+                event.put("type", "barcodeScan");
+                event.put("code", code);
+                event.put("scanMs", scanMs);
+                event.put("latencyMs", SystemClock.uptimeMillis() - terminatorAt);
+                event.put("navigated", target != null);
+                PluginResult r = new PluginResult(PluginResult.Status.OK, event);
+                r.setKeepCallback(true);
+                cb.sendPluginResult(r);
+            } catch (JSONException e) {
+                LOG.e(TAG, "Error reporting barcode scan: " + e.getMessage());
+            }
+        }
+        if (target != null) {
+            webView.loadUrl(target);
+        }
+    }
+
+    /** Forwards a subscribed window.BrowserPort message on the open() event channel. */
+    private void emitPortMessage(String type, Object payload) {
+        CallbackContext cb = eventCallbackContext;
+        if (cb == null) {
+            return;
+        }
+        try {
+            JSONObject event = new JSONObject();
+            event.put("type", "portMessage");
+            event.put("messageType", type);
+            if (payload != null) {
+                event.put("data", payload);
+            }
+            PluginResult r = new PluginResult(PluginResult.Status.OK, event);
+            r.setKeepCallback(true);
+            cb.sendPluginResult(r);
+        } catch (JSONException e) {
+            LOG.e(TAG, "Error forwarding port message: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Puts a snapshot's back/forward list into the fresh WebView, which reloads its current
+     * page. Returns false (and the caller loads the URL instead) when WebView rejects it.
+     * UI-thread only.
+     */
+    private boolean restoreSnapshot(SessionSnapshot.Saved saved) {
+        android.webkit.WebBackForwardList list = webView.restoreState(saved.state);
+        if (list == null || list.getSize() == 0) {
+            LOG.d(TAG, "WebView rejected the snapshot; loading the URL instead");
+            return false;
+        }
+        CallbackContext cb = eventCallbackContext;
+        if (cb != null) {
+            try {
+                JSONObject event = new JSONObject();
+                event.put("type", "sessionRestored");
+                event.put("url", saved.url);
+                event.put("ageMs", saved.ageMs);
+                event.put("bytes", saved.bytes);
+                event.put("entries", list.getSize());
+                PluginResult r = new PluginResult(PluginResult.Status.OK, event);
+                r.setKeepCallback(true);
+                cb.sendPluginResult(r);
+            } catch (JSONException e) {
+                LOG.e(TAG, "Error reporting restore: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /** Queues a snapshot of the live WebView when snapshots are on. UI-thread only. */
+    private void saveSnapshot() {
+        if (snapshotEnabled && webView != null) {
+            snapshots.save(webView, snapshotMaxBytes);
+        }
+    }
+
+    /**
+     * The renderer behind {@code view} crashed or was killed, and the view can't be used
+     * again. It is destroyed. If it was the live WebView, a new one takes its place and
+     * reloads its URL, unless recovery is off, the instance is closing or the crash-loop
+     * breaker has tripped. UI-thread only.
+     */
+    private void onRendererGone(WebView view, boolean crashed, int priority) {
+        if (view != webView) {
+            Preloader.Page page = preloader.page();
+            if (page != null && page.view == view) {
+                preloader.drop(page);
+                if (preloader.page() == null) {
+                    preloadHandler.removeCallbacksAndMessages(null);
+                }
+                resolvePreload(page, "Renderer process gone");
+                page.scriptHandlers.clear();
+                destroyBrokenWebView(view);
+            }
+            return;
+        }
+        long goneAt = SystemClock.uptimeMillis();
+        String url = view.getUrl();
+        int visibility = view.getVisibility();
+        LOG.e(TAG, "Renderer " + (crashed ? "crashed" : "killed at priority " + priority) + " showing " + url);
+
+        failScriptBatches("Renderer process gone");
+        failScriptStreams("Renderer process gone");
+        endNavigationTrace();
+        loader.hideNow();
+        scriptHandlers.clear(); // went with the old view
+        documentStartScripts = false;
+        boolean paused = backgroundMeter.isPaused();
+        if (paused) {
+            backgroundMeter.resumed(); // the meter follows the live WebView, which is gone
+        }
+        webView = null;
+        destroyBrokenWebView(view);
+
+        CrashLoopBreaker breaker = crashBreaker;
+        boolean recover = rendererRecovery && !closing && layout != null && breaker.allow(goneAt);
+        JSONObject event = new JSONObject();
+        try {
+            event.put("type", "renderProcessGone");
+            event.put("reason", crashed ? "crash" : "killed");
+            event.put("rendererPriority", priorityName(priority));
+            event.put("url", url != null ? url : JSONObject.NULL);
+            event.put("crashes", breaker.recent());
+            event.put("circuitOpen", breaker.isOpen());
+            event.put("recovered", recover);
+        } catch (JSONException e) {
+            LOG.e(TAG, "Error building renderer event: " + e.getMessage());
+        }
+        if (!recover) {
+            emitRecoveryEvent(event);
+            return;
+        }
+
+        webView = owner.obtainWebView();
+        bind(webView);
+        webAppInterface.setCallbackContext(eventCallbackContext);
+        webAppInterface.setCoalescer(eventCoalescer);
+        documentStartScripts = installDocumentStartScripts(webView);
+        layout.addView(webView, 0); // under the loader overlay
+        webView.setVisibility(visibility);
+        if (visibility == View.VISIBLE) {
+            focusWebView();
+        }
+
+        pendingRecovery = event;
+        recoveryStartedAt = goneAt;
+        if (url != null && !url.equals("about:blank")) {
+            armLoader();
+            webView.loadUrl(url);
+        } else {
+            reportRecovery(false);
+        }
+        if (paused) {
+            pauseRendering();
+        }
+    }
+
+    /** Sends the pending renderProcessGone event once the reload has finished or failed. UI-thread only. */
+    private void reportRecovery(boolean reloaded) {
+        JSONObject event = pendingRecovery;
+        if (event == null) {
+            return;
+        }
+        pendingRecovery = null;
+        try {
+            event.put("reloaded", reloaded);
+            event.put("recoveryMs", SystemClock.uptimeMillis() - recoveryStartedAt);
+        } catch (JSONException e) {
+            LOG.e(TAG, "Error building renderer event: " + e.getMessage());
+        }
+        emitRecoveryEvent(event);
+    }
+
+    private void emitRecoveryEvent(JSONObject event) {
+        CallbackContext cb = eventCallbackContext;
+        if (cb == null) {
+            return;
+        }
+        PluginResult r = new PluginResult(PluginResult.Status.OK, event);
+        r.setKeepCallback(true);
+        cb.sendPluginResult(r);
+    }
+
+    private static String priorityName(int priority) {
+        switch (priority) {
+            case WebView.RENDERER_PRIORITY_WAIVED:
+                return "waived";
+            case WebView.RENDERER_PRIORITY_BOUND:
+                return "bound";
+            case WebView.RENDERER_PRIORITY_IMPORTANT:
+                return "important";
+            default:
+                return String.valueOf(priority);
+        }
+    }
+
+    /** Drops a WebView whose renderer is gone; it can't be reset for the pool. UI-thread only. */
+    private void destroyBrokenWebView(WebView view) {
+        ViewGroup parent = (ViewGroup) view.getParent();
+        if (parent != null) {
+            parent.removeView(view);
+        }
+        if (view instanceof BrowserWebView) {
+            ((BrowserWebView) view).setKeyInterceptor(null);
+        }
+        view.destroy();
+    }
+
+    /**
+     * Frees what this instance can rebuild on demand when the app is asked to trim memory:
+     * the preloaded page, and from RUNNING_CRITICAL on, WebView's in-memory resource cache
+     * (the disk cache is kept). UI-thread only.
+     */
+    void trimMemory(int level) {
+        discardPreloadForMemory();
+        if (level >= android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL && webView != null) {
+            webView.clearCache(false);
+        }
+    }
+
+    /**
+     * Reports how long a session reset took, and whether every step really cleared
+     * ("ok", "failed" or "timedOut" with the steps concerned), on the open() event channel.
+     */
+    private void emitSessionReset(String trigger, ResetScope scope, long identityMs, long totalMs,
+                                  SessionReset.Outcome outcome) {
+        CallbackContext cb = eventCallbackContext;
+        if (cb == null || scope == ResetScope.NONE) {
+            return;
+        }
+        try {
+            JSONObject event = new JSONObject();
+            event.put("type", "sessionReset");
+            event.put("trigger", trigger);
+            event.put("scope", scope == ResetScope.ALL ? "all" : "identity");
+            event.put("identityMs", identityMs);
+            event.put("totalMs", totalMs);
+            event.put("outcome", outcome.status());
+            if (!outcome.timedOut.isEmpty()) {
+                event.put("timedOut", new JSONArray(outcome.timedOut));
+            }
+            if (!outcome.failed.isEmpty()) {
+                event.put("failed", new JSONArray(outcome.failed));
+            }
+            PluginResult r = new PluginResult(PluginResult.Status.OK, event);
+            r.setKeepCallback(true);
+            cb.sendPluginResult(r);
+        } catch (JSONException e) {
+            LOG.e(TAG, "Error reporting session reset: " + e.getMessage());
+        }
+    }
+
+    /** Streams a completed navigation record on the open() event channel when asked to. */
+    private void emitNavigationTiming(JSONObject record) {
+        CallbackContext cb = eventCallbackContext;
+        if (record == null || !metricsEvents || cb == null) {
+            return;
+        }
+        try {
+            record.put("type", "navigationTiming");
+        } catch (JSONException e) {
+            return;
+        }
+        PluginResult r = new PluginResult(PluginResult.Status.OK, record);
+        r.setKeepCallback(true);
+        cb.sendPluginResult(r);
+    }
+
+    /** Whitelist check shared by navigation, prefetch and the WebViewClient. Any thread. */
+    boolean isDomainWhitelisted(String url) {
+        DomainMatcher matcher = whitelist.get();
+        if (matcher == null || matcher.isEmpty()) {
+            return true; // No whitelist means all domains are allowed
+        }
+        return matcher.matchesUrl(url);
+    }
+
+    /**
+     * Registers the session's page scripts to run at document start, before the page's
+     * own scripts. Returns false when the WebView lacks support, in which case the
+     * WebViewClient falls back to evaluateJavascript. UI-thread only.
+     */
+    private boolean installDocumentStartScripts(WebView view) {
+        removeDocumentStartScripts();
+        if (pageScripts == null || !WebViewFeature.isFeatureSupported(WebViewFeature.DOCUMENT_START_SCRIPT)) {
+            return false;
+        }
+        boolean traced = Tracing.begin("Browser.installDocumentStartScripts");
+        try {
+            for (String script : pageScripts.documentScripts()) {
+                scriptHandlers.add(WebViewCompat.addDocumentStartJavaScript(view, script, ALL_ORIGINS));
+            }
+        } finally {
+            Tracing.end(traced);
+        }
+        return true;
+    }
+
+    /** Unregisters previously installed document-start scripts. UI-thread only. */
+    private void removeDocumentStartScripts() {
+        for (ScriptHandler handler : scriptHandlers) {
+            handler.remove();
+        }
+        scriptHandlers.clear();
+        documentStartScripts = false;
+    }
+
+    /** Closes the current navigation's async trace slice, if one is open. UI-thread only. */
+    private void endNavigationTrace() {
+        Tracing.endAsync(NAVIGATION_SECTION, navigationTrace);
+        navigationTrace = 0;
+    }
+
+    /** Fallback injection for WebViews without document-start support. */
+    private void evaluatePageScripts(WebView view) {
+        if (pageScripts == null) {
+            return;
+        }
+        boolean traced = Tracing.begin("Browser.evaluatePageScripts");
+        try {
+            for (String script : pageScripts.documentScripts()) {
+                view.evaluateJavascript(script, null);
+            }
+        } finally {
+            Tracing.end(traced);
+        }
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /** A preloaded page has loaded offscreen: run the fallback scripts and tell the caller. */
+    private void preloadFinished(WebView view, String url) {
+        Preloader.Page page = preloader.page();
+        if (page == null || page.view != view || "about:blank".equals(url)) {
+            return;
+        }
+        page.finished = true;
+        page.finalUrl = url;
+        if (!page.documentStart) {
+            evaluatePageScripts(view);
+        }
+        resolvePreload(page, null);
+    }
+
+    private void setupWebViewClient(WebView target) {
+        target.setWebViewClient(new WebViewClient() {
+            @Override
+            public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
+                String url = request.getUrl().toString();
+                if (!isDomainWhitelisted(url)) {
+                    return true; // Block the navigation
+                }
+                return false; // Allow the navigation
+            }
+
+            @Override
+            public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                // Called off the UI thread. This instance's prefetched responses first (pages
+                // included, with their own headers), then GET subresources matching the asset rules.
+                if (view == webView) {
+                    backgroundMeter.requestSeen();
+                }
+                BlockRules rules = blockRules;
+                if (rules != null && !request.isForMainFrame() && rules.match(request.getUrl().toString()) >= 0) {
+                    return new WebResourceResponse("text/plain", "utf-8", 204, "No Content",
+                        Collections.<String, String>emptyMap(), new ByteArrayInputStream(NO_BYTES));
+                }
+                Prefetcher pf = owner.prefetcher();
+                if (pf != null && "GET".equalsIgnoreCase(request.getMethod())) {
+                    Prefetcher.Entry hit = pf.take(id, request.getUrl().toString());
+                    if (hit != null) {
+                        return new WebResourceResponse(hit.mimeType, hit.encoding, hit.status, hit.reason, hit.headers, hit.open());
+                    }
+                }
+                if (request.isForMainFrame() || !"GET".equalsIgnoreCase(request.getMethod())) {
+                    return null;
+                }
+                Map<String, String> headers = request.getRequestHeaders();
+                if (headers != null && (headers.containsKey("Range") || headers.containsKey("range"))) {
+                    return null;
+                }
+                // Oversized Shopify CDN images are asked for at screen width instead; the
+                // capped URL is what gets cached.
+                String url = request.getUrl().toString();
+                ImageRewriter images = imageRewriter;
+                ImageRewriter.Rewrite rewrite = images != null ? images.rewrite(url) : null;
+                String target = rewrite != null ? rewrite.url : url;
+                AssetCache cache = owner.assetCache();
+                AssetCache.Response r = null;
+                if (assetCacheEnabled && cache != null && cache.matches(target)) {
+                    r = cache.get(target, headers);
+                } else if (rewrite != null) {
+                    r = images.fetch(rewrite, headers);
+                }
+                if (r == null) {
+                    return null;
+                }
+                InputStream body = r.body;
+                if (rewrite != null) {
+                    if (r.status != 200) {
+                        closeQuietly(body);
+                        return null; // let the WebView load the original
+                    }
+                    body = images.track(rewrite, body);
+                }
+                return new WebResourceResponse(r.mimeType, r.encoding, r.status, r.reason, r.headers, body);
+            }
+
+            @Override
+            public void onPageStarted(WebView view, String url, android.graphics.Bitmap favicon) {
+                super.onPageStarted(view, url, favicon);
+                if (view != webView) {
+                    return; // an offscreen preload
+                }
+                timeline.navigationStarted(url);
+                Tracing.endAsync(NAVIGATION_SECTION, navigationTrace); // redirected before finishing
+                navigationTrace = Tracing.beginAsync(NAVIGATION_SECTION);
+                failScriptBatches("Page navigated before the script batch finished");
+                failScriptStreams("Page navigated before the script stream finished");
+                // A real navigation has the network now; stop this instance's speculative fetches.
+                Prefetcher pf = owner.prefetcher();
+                if (pf != null) {
+                    pf.cancelInFlight(id);
+                }
+                // Arm the native loader for the blank pre-paint window that the JS overlay
+                // can't reach; it only shows if the page hasn't painted after the delay.
+                armLoader();
+                // Without document-start support, inject the Shopify helpers as early as we
+                // can so the variant-id backstop and loading overlay are in place before the
+                // user can interact with a slow page.
+                if (!documentStartScripts && pageScripts != null && pageScripts.hasShopifyHelpers()) {
+                    boolean traced = Tracing.begin("Browser.evaluateShopifyHelpers");
+                    view.evaluateJavascript(PageScripts.SHOPIFY_HELPERS, null);
+                    Tracing.end(traced);
+                }
+            }
+
+            @Override
+            public void onReceivedError(WebView view, WebResourceRequest request, android.webkit.WebResourceError error) {
+                super.onReceivedError(view, request, error);
+                if (view != webView) {
+                    Preloader.Page page = preloader.page();
+                    if (page != null && page.view == view && request != null && request.isForMainFrame()) {
+                        disposePreload(preloader.drop(page), "Preload failed: " + error.getDescription());
+                    }
+                    return;
+                }
+                if (request != null && request.isForMainFrame()) {
+                    timeline.navigationFailed(error.getErrorCode(), String.valueOf(error.getDescription()));
+                    loader.navigationEnded();
+                    endNavigationTrace();
+                    reportRecovery(false);
+                }
+            }
+
+            @Override
+            public void onPageCommitVisible(WebView view, String url) {
+                super.onPageCommitVisible(view, url);
+                if (view != webView) {
+                    Preloader.Page page = preloader.page();
+                    if (page != null && page.view == view) {
+                        page.committed = true;
+                    }
+                    return;
+                }
+                loader.documentCommitted(view); // hides the loader on the first real paint
+                // The document-start shim is listening by now; hand it this document's port.
+                if (documentStartScripts && portChannel != null) {
+                    portChannel.connect(view);
+                }
+            }
+
+            @Override
+            public void onPageFinished(WebView view, String url) {
+                super.onPageFinished(view, url);
+                if (view != webView) {
+                    preloadFinished(view, url);
+                    return;
+                }
+
+                loader.pageFinished(view.getVisibility() == View.VISIBLE);
+                endNavigationTrace();
+                saveSnapshot();
+                reportRecovery(true);
+                try {
+                    emitNavigationTiming(timeline.navigationFinished(metricsEnabled));
+                } catch (JSONException e) {
+                    LOG.e(TAG, "Error recording navigation: " + e.getMessage());
+                }
+
+                // Document-start scripts have already run; otherwise inject them now.
+                // Each script is guarded, so the Shopify re-run above is a no-op.
+                if (!documentStartScripts) {
+                    evaluatePageScripts(view);
+                    if (portChannel != null) {
+                        portChannel.connect(view); // the shim only exists from now on
+                    }
+                }
+            }
+
+            @Override
+            public boolean onRenderProcessGone(WebView view, android.webkit.RenderProcessGoneDetail detail) {
+                // Handled for every view of ours the renderer took down, so the app survives.
+                onRendererGone(view, detail.didCrash(), detail.rendererPriorityAtExit());
+                return true;
+            }
+        });
+    }
+}
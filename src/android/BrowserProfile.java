@@ -0,0 +1,75 @@
+package com.curbngo.browser;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An open() configuration compiled once: the parsed options plus what is built from them
+ * (whitelist matcher, blocking rules, page scripts).
+ *
+ * Profiles registered with registerProfile() are kept by the plugin and reused by every
+ * open(url, {profile: name}), which then does no parsing or compiling of its own beyond
+ * adding the opened URL's host to the whitelist when the profile doesn't already allow
+ * it. A plain open() compiles an unnamed profile from its options each time.
+ *
+ * Immutable once compiled, so one profile can back several instances at once. Its block
+ * rules are shared too, so getBlockStats() counts hits across every session opened with it.
+ */
+final class BrowserProfile {
+
+    final String name; // null for an unnamed, per-call profile
+    final OpenOptions options;
+    final BlockRules blockRules; // null when nothing is blocked
+
+    private final DomainMatcher whitelist; // the configured domains alone; null when none
+    private final PageScripts pageScripts; // null when they depend on the session (port transport)
+
+    private BrowserProfile(String name, OpenOptions options, BlockRules blockRules, DomainMatcher whitelist,
+                           PageScripts pageScripts) {
+        this.name = name;
+        this.options = options;
+        this.blockRules = blockRules;
+        this.whitelist = whitelist;
+        this.pageScripts = pageScripts;
+    }
+
+    static BrowserProfile compile(String name, OpenOptions o) {
+        BlockRules rules = o.blockRules != null ? BlockRules.compile(o.blockRules) : null;
+        if (rules != null && rules.size() == 0) {
+            rules = null;
+        }
+        DomainMatcher matcher = o.whitelist != null && !o.whitelist.isEmpty() ? DomainMatcher.compile(o.whitelist) : null;
+        if (matcher != null && matcher.isEmpty()) {
+            matcher = null;
+        }
+        PageScripts scripts = o.portTransport ? null : scripts(o, null);
+        return new BrowserProfile(name, o, rules, matcher, scripts);
+    }
+
+    /**
+     * The whitelist for a session opened at a URL whose host is {@code initialDomain}
+     * (null when it has none): the configured domains plus that host. Returns null to
+     * allow every domain.
+     */
+    DomainMatcher whitelistFor(String initialDomain) {
+        if (options.whitelist == null) {
+            return null;
+        }
+        if (initialDomain == null
+                || (whitelist != null && whitelist.matchesHost(initialDomain, 0, initialDomain.length()))) {
+            return whitelist;
+        }
+        Set<String> domains = new HashSet<>(options.whitelist);
+        domains.add(initialDomain);
+        return DomainMatcher.compile(domains);
+    }
+
+    /** The page scripts for a session; {@code portToken} is the session's port handshake token, or null. */
+    PageScripts pageScripts(String portToken) {
+        return pageScripts != null && portToken == null ? pageScripts : scripts(options, portToken);
+    }
+
+    private static PageScripts scripts(OpenOptions o, String portToken) {
+        return new PageScripts(o.barcodeScanURL, o.shopifyHelpers, true, o.metrics, portToken);
+    }
+}
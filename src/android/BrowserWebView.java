@@ -0,0 +1,37 @@
+package com.curbngo.browser;
+
+import android.content.Context;
+import android.view.KeyEvent;
+import android.webkit.WebView;
+
+/**
+ * WebView that lets the browser instance owning it see hardware key events before
+ * the page does, so scanner input is caught whatever has focus in the document and
+ * even while a page is still loading.
+ */
+final class BrowserWebView extends WebView {
+
+    /** Returns true to consume the event. Called on the UI thread. */
+    interface KeyInterceptor {
+        boolean onKeyEvent(KeyEvent event);
+    }
+
+    private KeyInterceptor keyInterceptor;
+
+    BrowserWebView(Context context) {
+        super(context);
+    }
+
+    void setKeyInterceptor(KeyInterceptor interceptor) {
+        this.keyInterceptor = interceptor;
+    }
+
+    @Override
+    public boolean dispatchKeyEvent(KeyEvent event) {
+        KeyInterceptor interceptor = keyInterceptor;
+        if (interceptor != null && interceptor.onKeyEvent(event)) {
+            return true;
+        }
+        return super.dispatchKeyEvent(event);
+    }
+}
@@ -0,0 +1,61 @@
+package com.curbngo.browser;
+
+/**
+ * Guards renderer recovery against crash loops: allows at most {@code maxCrashes}
+ * recoveries within any {@code windowMs}. The next crash inside the window trips it, and
+ * it then refuses every recovery until the session ends (the next open() starts a new
+ * breaker), so a page that reliably kills the renderer can't spin the device.
+ *
+ * Pure Java. UI-thread only, like the WebViewClient callbacks that drive it.
+ */
+final class CrashLoopBreaker {
+
+    static final int DEFAULT_MAX_CRASHES = 3;
+    static final long DEFAULT_WINDOW_MS = 60000L;
+
+    private final long windowMs;
+    private final long[] times; // recent crash times, oldest at head
+    private int head;
+    private int size;
+    private boolean open;
+    private int total;
+
+    CrashLoopBreaker(int maxCrashes, long windowMs) {
+        this.times = new long[Math.max(1, maxCrashes)];
+        this.windowMs = Math.max(0L, windowMs);
+    }
+
+    /** Records a crash at {@code now} (ms); returns true when it may be recovered from. */
+    boolean allow(long now) {
+        total++;
+        if (open) {
+            return false;
+        }
+        while (size > 0 && now - times[head] > windowMs) {
+            head = (head + 1) % times.length;
+            size--;
+        }
+        if (size == times.length) {
+            open = true;
+            return false;
+        }
+        times[(head + size) % times.length] = now;
+        size++;
+        return true;
+    }
+
+    /** True once tripped. */
+    boolean isOpen() {
+        return open;
+    }
+
+    /** Crashes within the current window (including a refused one that tripped it). */
+    int recent() {
+        return open ? size + 1 : size;
+    }
+
+    /** Every crash recorded, recovered or not. */
+    int total() {
+        return total;
+    }
+}
@@ -0,0 +1,246 @@
+package com.curbngo.browser;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Locale;
+
+/**
+ * Immutable host matcher compiled once from the whitelist passed to open().
+ *
+ * Entries are stored in a trie keyed by reversed host labels ("shop.example.com"
+ * becomes com -> example -> shop). An entry matches its own host and every
+ * subdomain of it; a leading "*." is accepted and means the same thing, which
+ * mirrors the rules isDomainWhitelisted used to apply with string concatenation.
+ *
+ * Lookups walk the host straight out of the URL string by index, so the
+ * shouldOverrideUrlLoading path allocates nothing.
+ */
+final class DomainMatcher {
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private final Node root;
+    private final int size;
+    private final Set<String> domains;
+
+    private DomainMatcher(Node root, int size, Set<String> domains) {
+        this.root = root;
+        this.size = size;
+        this.domains = Collections.unmodifiableSet(domains);
+    }
+
+    /** Compiles the given domains. Blank entries are skipped; null entries are ignored. */
+    static DomainMatcher compile(Collection<String> domains) {
+        Builder root = new Builder(null);
+        Set<String> normalized = new LinkedHashSet<>();
+        int count = 0;
+        for (String domain : domains) {
+            if (domain == null) {
+                continue;
+            }
+            String d = domain.trim().toLowerCase(Locale.US);
+            if (d.startsWith("*.")) {
+                d = d.substring(2);
+            }
+            if (d.isEmpty()) {
+                continue;
+            }
+            normalized.add(d);
+            Builder node = root;
+            int end = d.length();
+            while (end > 0) {
+                int dot = d.lastIndexOf('.', end - 1);
+                String label = d.substring(dot + 1, end);
+                if (!label.isEmpty()) {
+                    node = node.child(label);
+                }
+                end = dot < 0 ? 0 : dot;
+            }
+            if (node != root && !node.terminal) {
+                node.terminal = true;
+                count++;
+            }
+        }
+        return new DomainMatcher(root.freeze(), count, normalized);
+    }
+
+    /** The normalized entries (lower case, no "*." prefix) this matcher was compiled from. */
+    Set<String> domains() {
+        return domains;
+    }
+
+    /** Number of distinct domains in the matcher. */
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns true when the host of an http(s)/ftp URL is whitelisted. URLs without
+     * a network host (about:, data:, intent: ...) never match, as before.
+     */
+    boolean matchesUrl(String url) {
+        long range = hostRange(url);
+        return range >= 0 && matchesHost(url, (int) (range >>> 32), (int) range);
+    }
+
+    /**
+     * Locates the host of an http(s)/ftp URL without allocating: returns
+     * {@code start << 32 | end}, or -1 when the URL has no network host.
+     */
+    static long hostRange(String url) {
+        if (url == null) {
+            return -1;
+        }
+        int colon = url.indexOf(':');
+        if (colon <= 0 || !isNetworkScheme(url, colon)) {
+            return -1;
+        }
+        int start = colon + 1;
+        int len = url.length();
+        if (start + 1 >= len || url.charAt(start) != '/' || url.charAt(start + 1) != '/') {
+            return -1;
+        }
+        start += 2;
+
+        // Authority runs to the first '/', '?' or '#'.
+        int authorityEnd = len;
+        for (int i = start; i < len; i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                authorityEnd = i;
+                break;
+            }
+        }
+
+        // Skip userinfo (everything up to the last '@').
+        for (int i = authorityEnd - 1; i >= start; i--) {
+            if (url.charAt(i) == '@') {
+                start = i + 1;
+                break;
+            }
+        }
+
+        // Strip the port; IPv6 literals keep their brackets, like URL.getHost().
+        int hostEnd = authorityEnd;
+        if (start < authorityEnd && url.charAt(start) == '[') {
+            int close = url.indexOf(']', start);
+            hostEnd = close < 0 || close >= authorityEnd ? authorityEnd : close + 1;
+        } else {
+            for (int i = start; i < authorityEnd; i++) {
+                if (url.charAt(i) == ':') {
+                    hostEnd = i;
+                    break;
+                }
+            }
+        }
+        return ((long) start << 32) | hostEnd;
+    }
+
+    /** Returns true when host[start, end) equals or is a subdomain of a compiled entry. */
+    boolean matchesHost(String host, int start, int end) {
+        if (host == null || start >= end) {
+            return false;
+        }
+        // Tolerate a fully-qualified trailing dot.
+        if (host.charAt(end - 1) == '.') {
+            end--;
+        }
+        Node node = root;
+        int labelEnd = end;
+        while (labelEnd > start) {
+            int labelStart = labelEnd;
+            while (labelStart > start && host.charAt(labelStart - 1) != '.') {
+                labelStart--;
+            }
+            node = node.find(host, labelStart, labelEnd - labelStart);
+            if (node == null) {
+                return false;
+            }
+            if (node.terminal) {
+                return true;
+            }
+            labelEnd = labelStart - 1;
+        }
+        return false;
+    }
+
+    private static boolean isNetworkScheme(String url, int colon) {
+        switch (colon) {
+            case 3:
+                return url.regionMatches(true, 0, "ftp", 0, 3);
+            case 4:
+                return url.regionMatches(true, 0, "http", 0, 4);
+            case 5:
+                return url.regionMatches(true, 0, "https", 0, 5);
+            default:
+                return false;
+        }
+    }
+
+    /** Frozen trie node; children are a small array scanned with regionMatches. */
+    private static final class Node {
+        final String[] labels;
+        final Node[] children;
+        final boolean terminal;
+
+        Node(String[] labels, Node[] children, boolean terminal) {
+            this.labels = labels;
+            this.children = children;
+            this.terminal = terminal;
+        }
+
+        Node find(String host, int offset, int length) {
+            for (int i = 0; i < labels.length; i++) {
+                String label = labels[i];
+                if (label.length() == length && host.regionMatches(true, offset, label, 0, length)) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    /** Mutable node used only while compiling. */
+    private static final class Builder {
+        final String label;
+        final List<Builder> children = new ArrayList<>();
+        boolean terminal;
+
+        Builder(String label) {
+            this.label = label;
+        }
+
+        Builder child(String label) {
+            for (Builder b : children) {
+                if (b.label.equals(label)) {
+                    return b;
+                }
+            }
+            Builder b = new Builder(label);
+            children.add(b);
+            return b;
+        }
+
+        Node freeze() {
+            // Once a node is terminal every deeper entry is redundant; drop them.
+            if (terminal || children.isEmpty()) {
+                return new Node(new String[0], NO_CHILDREN, terminal);
+            }
+            String[] labels = new String[children.size()];
+            Node[] nodes = new Node[children.size()];
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = children.get(i).label;
+                nodes[i] = children.get(i).freeze();
+            }
+            return new Node(labels, nodes, false);
+        }
+    }
+}
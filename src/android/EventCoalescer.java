@@ -0,0 +1,171 @@
+package com.curbngo.browser;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Throttles and aggregates page activity events before they cross the Cordova bridge.
+ *
+ * Every event is first checked against its type's minimum interval; events that
+ * arrive sooner are counted as throttled and never sent on their own. In raw mode
+ * the surviving events are sent one by one as before. In batched mode they are
+ * folded into per-type buckets (count, first/last timestamp) that the owner drains
+ * once per flush window into a single payload.
+ *
+ * Buckets are created once per (channel, type) and reused across windows, so the
+ * steady state allocates nothing per event. Types beyond {@link #MAX_TYPES} share
+ * the "other" bucket so a misbehaving page cannot grow the maps without bound.
+ *
+ * Thread-safe; events arrive on the JavaBridge thread, drains on the UI thread.
+ */
+final class EventCoalescer {
+
+    /** Events from {@code Android.eventTriggered}. */
+    static final String CHANNEL_EVENTS = "events";
+    /** {@code {active: true, type: ...}} messages from {@code Android.postMessage}. */
+    static final String CHANNEL_ACTIVITY = "activity";
+
+    /** Result of {@link #offer}: drop the event. */
+    static final int DROP = 0;
+    /** Result of {@link #offer}: send the event now (raw mode). */
+    static final int SEND = 1;
+    /** Result of {@link #offer}: queued into the open window. */
+    static final int QUEUED = 2;
+    /** Result of {@link #offer}: queued and opened a new window; schedule a flush. */
+    static final int QUEUED_NEW_WINDOW = 3;
+
+    static final int MAX_TYPES = 32;
+    private static final String OTHER = "other";
+
+    private final boolean batched;
+    private final long flushMs;
+    private final Map<String, Long> minIntervalMs;
+    private final Map<String, Map<String, Bucket>> channels = new HashMap<>();
+
+    private boolean windowOpen;
+    private long windowStart;
+
+    EventCoalescer(boolean batched, long flushMs, Map<String, Long> minIntervalMs) {
+        this.batched = batched;
+        this.flushMs = flushMs;
+        this.minIntervalMs = minIntervalMs != null ? new HashMap<>(minIntervalMs) : new HashMap<String, Long>();
+    }
+
+    boolean isBatched() {
+        return batched;
+    }
+
+    long getFlushMs() {
+        return flushMs;
+    }
+
+    /** Records one event at wall-clock time {@code now} and says what to do with it. */
+    synchronized int offer(String channel, String type, long now) {
+        Bucket b = bucket(channel, type);
+        boolean throttled = b.lastAccepted != Long.MIN_VALUE && now - b.lastAccepted < b.minInterval;
+        if (throttled) {
+            b.throttled++;
+            if (!batched) {
+                return DROP;
+            }
+        } else {
+            b.lastAccepted = now;
+            if (!batched) {
+                return SEND;
+            }
+            if (b.count == 0) {
+                b.first = now;
+            }
+            b.last = now;
+            b.count++;
+        }
+        if (windowOpen) {
+            return QUEUED;
+        }
+        windowOpen = true;
+        windowStart = now;
+        return QUEUED_NEW_WINDOW;
+    }
+
+    /**
+     * Closes the current window and returns its aggregate, or null when nothing was
+     * recorded. Counters are reset for the next window.
+     */
+    synchronized JSONObject drain(long now) throws JSONException {
+        JSONObject payload = null;
+        for (Map.Entry<String, Map<String, Bucket>> channel : channels.entrySet()) {
+            JSONObject types = null;
+            for (Bucket b : channel.getValue().values()) {
+                if (b.count == 0 && b.throttled == 0) {
+                    continue;
+                }
+                JSONObject entry = new JSONObject();
+                entry.put("count", b.count);
+                entry.put("throttled", b.throttled);
+                if (b.count > 0) {
+                    entry.put("first", b.first);
+                    entry.put("last", b.last);
+                }
+                if (types == null) {
+                    types = new JSONObject();
+                }
+                types.put(b.type, entry);
+                b.count = 0;
+                b.throttled = 0;
+            }
+            if (types != null) {
+                if (payload == null) {
+                    payload = new JSONObject();
+                }
+                payload.put(channel.getKey(), types);
+            }
+        }
+        if (payload != null) {
+            payload.put("type", "activityBatch");
+            payload.put("windowStart", windowOpen ? windowStart : now);
+            payload.put("windowEnd", now);
+        }
+        windowOpen = false;
+        return payload;
+    }
+
+    private Bucket bucket(String channel, String type) {
+        Map<String, Bucket> types = channels.get(channel);
+        if (types == null) {
+            types = new HashMap<>();
+            channels.put(channel, types);
+        }
+        String key = type != null ? type : OTHER;
+        Bucket b = types.get(key);
+        if (b == null) {
+            if (types.size() >= MAX_TYPES) {
+                key = OTHER;
+                b = types.get(key);
+            }
+            if (b == null) {
+                Long interval = minIntervalMs.get(key);
+                b = new Bucket(key, interval != null ? interval : 0L);
+                types.put(key, b);
+            }
+        }
+        return b;
+    }
+
+    private static final class Bucket {
+        final String type;
+        final long minInterval;
+        long lastAccepted = Long.MIN_VALUE;
+        int count;
+        int throttled;
+        long first;
+        long last;
+
+        Bucket(String type, long minInterval) {
+            this.type = type;
+            this.minInterval = minInterval;
+        }
+    }
+}
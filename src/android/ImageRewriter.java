@@ -0,0 +1,292 @@
+package com.curbngo.browser;
+
+import org.apache.cordova.LOG;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Caps Shopify CDN images at the width the screen can actually show.
+ *
+ * Theme markup routinely asks cdn.shopify.com (or the shop's own /cdn/shop/ proxy)
+ * for 2048px+ product images. Requests for those are answered with the same image at
+ * {@code maxWidth} instead, using the CDN's own resizing: the {@code width} (and
+ * {@code height}) query parameters, or the legacy {@code _800x600} filename suffix.
+ * Images without any size are asked for at {@code maxWidth} too. Animated GIFs and
+ * SVGs are left alone.
+ *
+ * Parsing a URL is cached (theme srcsets repeat the same URLs over and over). Bytes
+ * served for rewritten images are counted, and when the size originally asked for is
+ * known the saving is estimated from the ratio of pixel areas.
+ *
+ * Pure Java; thread-safe (shouldInterceptRequest runs on several threads).
+ */
+final class ImageRewriter {
+
+    /** A rewritten request: where to fetch it, and the width the page had asked for (0 = original). */
+    static final class Rewrite {
+        final String url;
+        final int requestedWidth;
+
+        Rewrite(String url, int requestedWidth) {
+            this.url = url;
+            this.requestedWidth = requestedWidth;
+        }
+    }
+
+    private static final String TAG = "BrowserImageRewriter";
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+    private static final int CACHE_ENTRIES = 512;
+    private static final Rewrite UNCHANGED = new Rewrite(null, 0);
+
+    // name_800x600.jpg, name_800x.jpg, name_800x600_crop_center@2x.jpg
+    private static final Pattern SIZE_SUFFIX = Pattern.compile(
+        "_(\\d+)x(\\d*)((?:_crop_[a-z]+)?)(?:@(\\d)x)?(\\.(?:jpe?g|png|webp|avif))$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern RESIZABLE = Pattern.compile(
+        "\\.(?:jpe?g|png|webp|avif)$", Pattern.CASE_INSENSITIVE);
+
+    private final int maxWidth;
+    private final LinkedHashMap<String, Rewrite> cache = new LinkedHashMap<String, Rewrite>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Rewrite> eldest) {
+            return size() > CACHE_ENTRIES;
+        }
+    };
+
+    private final AtomicLong rewritten = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+    private final AtomicLong estimatedBytesSaved = new AtomicLong();
+    private final AtomicLong unknownOriginal = new AtomicLong();
+
+    /**
+     * @param maxWidth widest image worth fetching, in physical pixels; rounded up to a
+     *                 multiple of 100 so the CDN's resized copies are shared more often
+     */
+    ImageRewriter(int maxWidth) {
+        this.maxWidth = Math.max(100, (maxWidth + 99) / 100 * 100);
+    }
+
+    int maxWidth() {
+        return maxWidth;
+    }
+
+    /** Returns the capped request for a Shopify CDN image URL, or null to leave it alone. */
+    Rewrite rewrite(String url) {
+        Rewrite r;
+        synchronized (cache) {
+            r = cache.get(url);
+        }
+        if (r != null) {
+            cacheHits.incrementAndGet();
+            return r == UNCHANGED ? null : r;
+        }
+        cacheMisses.incrementAndGet();
+        r = compute(url);
+        synchronized (cache) {
+            cache.put(url, r != null ? r : UNCHANGED);
+        }
+        return r;
+    }
+
+    /**
+     * Fetches a rewritten image without cookies (CDN images are public). Returns null
+     * when the CDN did not answer 200, so the WebView loads the original instead.
+     */
+    AssetCache.Response fetch(Rewrite rewrite, Map<String, String> requestHeaders) {
+        HttpURLConnection conn = null;
+        try {
+            conn = (HttpURLConnection) new URL(rewrite.url).openConnection();
+            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            conn.setReadTimeout(READ_TIMEOUT_MS);
+            if (requestHeaders != null) {
+                for (Map.Entry<String, String> h : requestHeaders.entrySet()) {
+                    String name = h.getKey().toLowerCase(Locale.US);
+                    // Keep Accept: the CDN picks WebP/AVIF from it.
+                    if (!name.equals("cookie") && !name.equals("accept-encoding") && !name.equals("range")) {
+                        conn.setRequestProperty(h.getKey(), h.getValue());
+                    }
+                }
+            }
+            int status = conn.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                conn.disconnect();
+                fallbacks.incrementAndGet();
+                return null;
+            }
+            String contentType = conn.getContentType();
+            Map<String, String> headers = new HashMap<>();
+            for (String name : AssetCache.KEPT_HEADERS) {
+                String value = conn.getHeaderField(name);
+                if (value != null) {
+                    headers.put(name, value);
+                }
+            }
+            return new AssetCache.Response(status, "OK", AssetCache.mimeOf(contentType),
+                AssetCache.charsetOf(contentType), headers, conn.getInputStream(), false);
+        } catch (IOException e) {
+            LOG.d(TAG, "Fetch failed for " + rewrite.url + ": " + e.getMessage());
+            if (conn != null) {
+                conn.disconnect();
+            }
+            fallbacks.incrementAndGet();
+            return null;
+        }
+    }
+
+    /** Wraps the body served for {@code rewrite} so its size is counted once it has been read. */
+    InputStream track(final Rewrite rewrite, InputStream body) {
+        rewritten.incrementAndGet();
+        return new FilterInputStream(body) {
+            private long count;
+            private boolean reported;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    count++;
+                } else {
+                    report();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int n = super.read(buffer, offset, length);
+                if (n > 0) {
+                    count += n;
+                } else if (n < 0) {
+                    report();
+                }
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                report();
+                super.close();
+            }
+
+            private void report() {
+                if (reported) {
+                    return;
+                }
+                reported = true;
+                served(rewrite, count);
+            }
+        };
+    }
+
+    JSONObject toJSON() throws JSONException {
+        JSONObject o = new JSONObject();
+        o.put("maxWidth", maxWidth);
+        o.put("rewritten", rewritten.get());
+        o.put("fallbacks", fallbacks.get());
+        o.put("bytesServed", bytesServed.get());
+        o.put("estimatedBytesSaved", estimatedBytesSaved.get());
+        o.put("unknownOriginalSize", unknownOriginal.get());
+        o.put("parseCacheHits", cacheHits.get());
+        o.put("parseCacheMisses", cacheMisses.get());
+        return o;
+    }
+
+    private void served(Rewrite rewrite, long bytes) {
+        bytesServed.addAndGet(bytes);
+        if (rewrite.requestedWidth <= 0) {
+            unknownOriginal.incrementAndGet();
+            return;
+        }
+        // Encoded size tracks pixel count closely enough for photos.
+        double ratio = (double) rewrite.requestedWidth / maxWidth;
+        estimatedBytesSaved.addAndGet((long) (bytes * (ratio * ratio - 1)));
+    }
+
+    private Rewrite compute(String url) {
+        int q = url.indexOf('?');
+        String path = q < 0 ? url : url.substring(0, q);
+        if (!isShopifyCdn(path) || !RESIZABLE.matcher(path).find()) {
+            return null;
+        }
+        String query = q < 0 ? "" : url.substring(q + 1);
+
+        // Modern form: ?v=123&width=2048[&height=...]
+        int width = intParam(query, "width");
+        if (width > 0) {
+            if (width <= maxWidth) {
+                return null;
+            }
+            String capped = setParam(query, "width", maxWidth);
+            int height = intParam(query, "height");
+            if (height > 0) {
+                capped = setParam(capped, "height", Math.max(1, (int) ((long) height * maxWidth / width)));
+            }
+            return new Rewrite(path + "?" + capped, width);
+        }
+
+        // Legacy form: name_2048x2048.jpg (optionally _crop_x and @2x)
+        Matcher m = SIZE_SUFFIX.matcher(path);
+        if (m.find()) {
+            int w = Integer.parseInt(m.group(1));
+            int scale = m.group(4) != null ? Integer.parseInt(m.group(4)) : 1;
+            int effective = w * scale;
+            if (effective <= maxWidth) {
+                return null;
+            }
+            int newWidth = Math.max(1, maxWidth / scale);
+            String h = m.group(2);
+            String newHeight = h.isEmpty() ? "" : String.valueOf(Math.max(1, (int) ((long) Integer.parseInt(h) * newWidth / w)));
+            String suffix = "_" + newWidth + "x" + newHeight + m.group(3) + (scale > 1 ? "@" + scale + "x" : "") + m.group(5);
+            return new Rewrite(path.substring(0, m.start()) + suffix + (q < 0 ? "" : "?" + query), effective);
+        }
+
+        // No size at all: the CDN would send the original upload.
+        return new Rewrite(path + "?" + (query.isEmpty() ? "" : query + "&") + "width=" + maxWidth, 0);
+    }
+
+    private static boolean isShopifyCdn(String path) {
+        String lower = path.toLowerCase(Locale.US);
+        return lower.startsWith("https://cdn.shopify.com/") || lower.contains("/cdn/shop/");
+    }
+
+    private static int intParam(String query, String name) {
+        for (String part : query.split("&")) {
+            if (part.startsWith(name + "=")) {
+                try {
+                    return Integer.parseInt(part.substring(name.length() + 1));
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static String setParam(String query, String name, int value) {
+        StringBuilder sb = new StringBuilder(query.length() + 8);
+        for (String part : query.split("&")) {
+            if (sb.length() > 0) {
+                sb.append('&');
+            }
+            sb.append(part.startsWith(name + "=") ? name + "=" + value : part);
+        }
+        return sb.toString();
+    }
+}
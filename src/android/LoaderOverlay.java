@@ -0,0 +1,242 @@
+package com.curbngo.browser;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.webkit.WebView;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+import androidx.webkit.WebViewCompat;
+import androidx.webkit.WebViewFeature;
+
+/**
+ * The native loading overlay (spinner + label) shown over a browser instance's WebView
+ * while a navigation has nothing on screen yet.
+ *
+ * A navigation arms the overlay instead of showing it: it appears only if the page has
+ * not painted within {@code showDelayMs}, so fast navigations never flash it. Once shown
+ * it stays up for at least {@code minDisplayMs}, so a slow navigation that paints just
+ * after it appeared doesn't blink. The end of a navigation is its first real paint, as
+ * reported by a visual state callback posted when the new document commits; without
+ * that feature (or if it never fires) onPageFinished ends it, and {@code maxMs} is the
+ * failsafe.
+ *
+ * The view is built once and moved between layouts, never rebuilt. UI-thread only.
+ */
+final class LoaderOverlay {
+
+    private enum State { IDLE, ARMED, SHOWN }
+
+    private final Context context;
+    private final long maxMs;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private FrameLayout view;
+    private TextView label;
+
+    private boolean enabled = true;
+    private String text;
+    private long showDelayMs = OpenOptions.DEFAULT_LOADER_DELAY_MS;
+    private long minDisplayMs = OpenOptions.DEFAULT_LOADER_MIN_DISPLAY_MS;
+
+    private State state = State.IDLE;
+    private long navigation; // bumped per navigation; stale paint callbacks are ignored
+    private boolean awaitingPaint;
+    private long shownAt;
+
+    private final Runnable showRunnable = new Runnable() {
+        @Override
+        public void run() {
+            show();
+        }
+    };
+    private final Runnable hideRunnable = new Runnable() {
+        @Override
+        public void run() {
+            hideNow();
+        }
+    };
+
+    LoaderOverlay(Context context, String text, long maxMs) {
+        this.context = context;
+        this.text = text;
+        this.maxMs = maxMs;
+    }
+
+    /** Applies an open() call's loader options. */
+    void configure(boolean enabled, String text, long showDelayMs, long minDisplayMs) {
+        this.enabled = enabled;
+        this.showDelayMs = Math.max(0L, showDelayMs);
+        this.minDisplayMs = Math.max(0L, minDisplayMs);
+        if (!enabled) {
+            hideNow();
+        }
+        if (!text.equals(this.text)) {
+            this.text = text;
+            if (label != null) {
+                label.setText(text);
+            }
+        }
+    }
+
+    /**
+     * Adds the overlay on top of {@code layout} (same bounds, so it inherits its margins),
+     * taking it out of whichever layout held it before. Starts hidden.
+     */
+    void attachTo(FrameLayout layout) {
+        if (view == null) {
+            build();
+        }
+        ViewGroup parent = (ViewGroup) view.getParent();
+        if (parent == layout) {
+            return;
+        }
+        if (parent != null) {
+            parent.removeView(view);
+        }
+        hideNow();
+        layout.addView(view, new FrameLayout.LayoutParams(
+            FrameLayout.LayoutParams.MATCH_PARENT,
+            FrameLayout.LayoutParams.MATCH_PARENT));
+    }
+
+    /** A main-frame navigation started: show the overlay if it hasn't painted after the delay. */
+    void navigationStarted() {
+        navigation++;
+        awaitingPaint = false;
+        if (!enabled || view == null) {
+            return;
+        }
+        if (state == State.SHOWN) {
+            handler.removeCallbacks(hideRunnable); // stays up; re-arm the failsafe
+            handler.postDelayed(hideRunnable, maxMs);
+        } else if (state == State.IDLE) {
+            // Already armed (loadUrl, then onPageStarted or a redirect): the delay keeps running.
+            state = State.ARMED;
+            handler.postDelayed(showRunnable, showDelayMs);
+        }
+    }
+
+    /**
+     * The new document has committed. Asks {@code webView} to report when what it holds
+     * now has been drawn, which is the navigation's first paint.
+     */
+    void documentCommitted(WebView webView) {
+        if (state == State.IDLE || !WebViewFeature.isFeatureSupported(WebViewFeature.VISUAL_STATE_CALLBACK)) {
+            return;
+        }
+        awaitingPaint = true;
+        WebViewCompat.postVisualStateCallback(webView, navigation, new WebViewCompat.VisualStateCallback() {
+            @Override
+            public void onComplete(long requestId) {
+                if (requestId == navigation) {
+                    navigationEnded();
+                }
+            }
+        });
+    }
+
+    /**
+     * onPageFinished: ends the navigation unless its first paint is still to be reported.
+     * A WebView that isn't {@code shown} never draws, so its paint is not waited for.
+     */
+    void pageFinished(boolean shown) {
+        if (!awaitingPaint || !shown) {
+            navigationEnded();
+        }
+    }
+
+    /**
+     * The navigation painted or failed. Cancels a pending show, or hides once
+     * the overlay has been up for the minimum display time.
+     */
+    void navigationEnded() {
+        awaitingPaint = false;
+        if (state == State.ARMED) {
+            handler.removeCallbacks(showRunnable);
+            state = State.IDLE;
+        } else if (state == State.SHOWN) {
+            long remaining = minDisplayMs - (SystemClock.uptimeMillis() - shownAt);
+            handler.removeCallbacks(hideRunnable);
+            if (remaining > 0) {
+                handler.postDelayed(hideRunnable, remaining);
+            } else {
+                hideNow();
+            }
+        }
+    }
+
+    /** Hides the overlay at once and cancels anything pending (close, hide). */
+    void hideNow() {
+        handler.removeCallbacks(showRunnable);
+        handler.removeCallbacks(hideRunnable);
+        state = State.IDLE;
+        awaitingPaint = false;
+        if (view != null && view.getVisibility() != View.GONE) {
+            view.setVisibility(View.GONE);
+        }
+    }
+
+    private void show() {
+        if (state != State.ARMED || view == null) {
+            return;
+        }
+        state = State.SHOWN;
+        shownAt = SystemClock.uptimeMillis();
+        view.setVisibility(View.VISIBLE); // last child of the layout, so already on top
+        handler.postDelayed(hideRunnable, maxMs);
+    }
+
+    private int dp(int value) {
+        float density = context.getResources().getDisplayMetrics().density;
+        return Math.round(value * density);
+    }
+
+    private void build() {
+        boolean traced = Tracing.begin("Browser.buildLoaderView");
+        try {
+            buildViews();
+        } finally {
+            Tracing.end(traced);
+        }
+    }
+
+    private void buildViews() {
+        view = new FrameLayout(context);
+        view.setBackgroundColor(0xF2FFFFFF); // ~95% white so the page faintly shows through
+        view.setClickable(true);             // swallow taps while visible
+        view.setFocusable(true);
+        view.setVisibility(View.GONE);
+
+        LinearLayout box = new LinearLayout(context);
+        box.setOrientation(LinearLayout.VERTICAL);
+        box.setGravity(Gravity.CENTER);
+        view.addView(box, new FrameLayout.LayoutParams(
+            FrameLayout.LayoutParams.WRAP_CONTENT,
+            FrameLayout.LayoutParams.WRAP_CONTENT,
+            Gravity.CENTER));
+
+        ProgressBar spinner = new ProgressBar(context, null, android.R.attr.progressBarStyleLarge);
+        spinner.setIndeterminate(true);
+        int sz = dp(64);
+        box.addView(spinner, new LinearLayout.LayoutParams(sz, sz));
+
+        label = new TextView(context);
+        label.setText(text);
+        label.setTextColor(0xFF555555);
+        label.setTextSize(android.util.TypedValue.COMPLEX_UNIT_SP, 15);
+        label.setGravity(Gravity.CENTER);
+        LinearLayout.LayoutParams labelLp = new LinearLayout.LayoutParams(
+            LinearLayout.LayoutParams.WRAP_CONTENT,
+            LinearLayout.LayoutParams.WRAP_CONTENT);
+        labelLp.topMargin = dp(16);
+        box.addView(label, labelLp);
+    }
+}
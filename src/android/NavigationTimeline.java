@@ -0,0 +1,180 @@
+package com.curbngo.browser;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Bounded history of per-navigation timings.
+ *
+ * Native milestones come from the WebViewClient/WebChromeClient callbacks
+ * (page started, progress passing the loader threshold, page finished, main-frame
+ * error) and are stored as milliseconds since the navigation started. The in-page
+ * collector script later attaches Navigation Timing, paint/LCP and the slowest
+ * resources reported by the document's PerformanceObserver.
+ *
+ * The last {@code capacity} navigations are kept in a ring buffer; older ones are
+ * overwritten. Thread-safe: native hooks run on the UI thread, page reports on the
+ * JavaBridge thread, and getMetrics on the Cordova exec thread.
+ */
+final class NavigationTimeline {
+
+    /** Progress value at which the loader is hidden; recorded as "mostlyLoaded". */
+    static final int MOSTLY_LOADED_PROGRESS = 85;
+
+    private static final class Record {
+        String url;
+        long startedAtWall;
+        long startedAtNanos;
+        long mostlyLoadedMs = -1;
+        long finishedMs = -1;
+        int errorCode;
+        String errorDescription;
+        JSONObject page;
+
+        JSONObject toJSON() throws JSONException {
+            JSONObject o = new JSONObject();
+            o.put("url", url);
+            o.put("startedAt", startedAtWall);
+            if (mostlyLoadedMs >= 0) {
+                o.put("mostlyLoaded", mostlyLoadedMs);
+            }
+            if (finishedMs >= 0) {
+                o.put("finished", finishedMs);
+            }
+            if (errorDescription != null) {
+                JSONObject err = new JSONObject();
+                err.put("code", errorCode);
+                err.put("description", errorDescription);
+                o.put("error", err);
+            }
+            if (page != null) {
+                o.put("page", page);
+            }
+            return o;
+        }
+    }
+
+    private final Record[] ring;
+    private int next;
+    private int count;
+    private Record current;
+
+    NavigationTimeline(int capacity) {
+        ring = new Record[Math.max(1, capacity)];
+    }
+
+    int capacity() {
+        return ring.length;
+    }
+
+    /** Starts a new record; the oldest one is dropped when the buffer is full. */
+    synchronized void navigationStarted(String url) {
+        Record r = new Record();
+        r.url = url;
+        r.startedAtWall = System.currentTimeMillis();
+        r.startedAtNanos = System.nanoTime();
+        ring[next] = r;
+        next = (next + 1) % ring.length;
+        if (count < ring.length) {
+            count++;
+        }
+        current = r;
+    }
+
+    synchronized void progressChanged(int progress) {
+        if (current != null && current.mostlyLoadedMs < 0 && progress >= MOSTLY_LOADED_PROGRESS) {
+            current.mostlyLoadedMs = elapsedMs(current);
+        }
+    }
+
+    /**
+     * Marks the current navigation finished. Returns its record as JSON if it is now
+     * complete without an in-page report (for streaming), otherwise null.
+     */
+    synchronized JSONObject navigationFinished(boolean expectPageReport) throws JSONException {
+        if (current == null || current.finishedMs >= 0) {
+            return null;
+        }
+        current.finishedMs = elapsedMs(current);
+        return expectPageReport ? null : current.toJSON();
+    }
+
+    synchronized void navigationFailed(int code, String description) {
+        if (current != null && current.errorDescription == null) {
+            current.errorCode = code;
+            current.errorDescription = description != null ? description : "";
+        }
+    }
+
+    /**
+     * Attaches an in-page report to the newest navigation for the same URL and returns the
+     * completed record as JSON, or null if none matched. A report whose URL differs from
+     * the current navigation's only in its query or fragment (replaceState, hash changes
+     * after load) goes to the current one; any other URL is not this instance's main frame
+     * and is dropped rather than credited to whatever navigation is current.
+     */
+    synchronized JSONObject pageReported(JSONObject report) throws JSONException {
+        String url = report.optString("url", null);
+        if (url == null) {
+            return null;
+        }
+        Record target = null;
+        for (int i = 1; i <= count; i++) {
+            Record r = ring[(next - i + ring.length) % ring.length];
+            if (url.equals(r.url)) {
+                target = r;
+                break;
+            }
+        }
+        if (target == null && current != null && sameDocument(url, current.url)) {
+            target = current;
+        }
+        if (target == null || target.page != null) {
+            return null;
+        }
+        report.remove("url");
+        target.page = report;
+        return target.toJSON();
+    }
+
+    /** Oldest-first copy of every retained record. */
+    synchronized JSONArray snapshot() throws JSONException {
+        JSONArray out = new JSONArray();
+        for (int i = count; i >= 1; i--) {
+            out.put(ring[(next - i + ring.length) % ring.length].toJSON());
+        }
+        return out;
+    }
+
+    synchronized void clear() {
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = null;
+        }
+        next = 0;
+        count = 0;
+        current = null;
+    }
+
+    /** True when {@code a} and {@code b} differ at most in their query and fragment. */
+    static boolean sameDocument(String a, String b) {
+        return a != null && b != null && withoutQuery(a).equals(withoutQuery(b));
+    }
+
+    private static String withoutQuery(String url) {
+        int end = url.length();
+        int query = url.indexOf('?');
+        int fragment = url.indexOf('#');
+        if (query >= 0) {
+            end = query;
+        }
+        if (fragment >= 0 && fragment < end) {
+            end = fragment;
+        }
+        return url.substring(0, end);
+    }
+
+    private static long elapsedMs(Record r) {
+        return (System.nanoTime() - r.startedAtNanos) / 1000000L;
+    }
+}
@@ -0,0 +1,214 @@
+package com.curbngo.browser;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * open()'s options (or a registered profile's config), parsed and defaulted in one place.
+ *
+ * Parsing has no side effects and needs nothing beyond org.json, so a malformed option
+ * is caught before any of the instance's state changes. {@link BrowserProfile} compiles
+ * the result; BrowserInstance applies it.
+ */
+final class OpenOptions {
+
+    static final long DEFAULT_EVENT_FLUSH_MS = 1000L;
+    static final long MIN_EVENT_FLUSH_MS = 16L;
+    static final long DEFAULT_LOADER_DELAY_MS = 250L;
+    static final long DEFAULT_LOADER_MIN_DISPLAY_MS = 500L;
+    static final int DEFAULT_SNAPSHOT_MAX_BYTES = 512 * 1024;
+    static final long DEFAULT_SNAPSHOT_TTL_MS = 30L * 60 * 1000;
+
+    // Barcode scanning: barcodeScanURL + code is loaded per scan; capture is native key interception.
+    String barcodeScanURL;
+    boolean barcodeCapture;
+    boolean barcodeNavigate = true;
+    long barcodeMaxInterKeyMs = ScanDetector.DEFAULT_MAX_INTER_KEY_MS;
+    int barcodeMinLength = ScanDetector.DEFAULT_MIN_LENGTH;
+    int barcodeMaxLength = ScanDetector.DEFAULT_MAX_LENGTH;
+    boolean barcodeTabTerminator;      // Tab ends a scan as well as Enter
+
+    boolean shopifyHelpers;
+    boolean shopifyImages;     // only honoured with shopifyHelpers
+    int shopifyImageMaxWidth;  // 0 = the screen's longer side
+
+    boolean loader = true;
+    String loaderLabel;        // null = the default text
+    long loaderDelayMs = DEFAULT_LOADER_DELAY_MS;
+    long loaderMinDisplayMs = DEFAULT_LOADER_MIN_DISPLAY_MS;
+
+    boolean eventBatched;
+    Map<String, Long> eventRateLimits; // null = none
+    long eventFlushMs = DEFAULT_EVENT_FLUSH_MS;
+
+    boolean assetCache;
+    long assetCacheMaxMB;              // 0 = default
+    List<Pattern> assetCacheRules;     // null = default rules
+
+    List<String> blockRules;           // null = none
+
+    ResetScope resetScope = ResetScope.ALL;
+
+    boolean metrics;
+    boolean metricsEvents;
+    int metricsBufferSize;             // 0 = keep the current buffer
+
+    boolean portTransport;
+    List<String> portSubscribe;        // null = every type
+
+    // Extra allowed domains; the opened URL's host is always allowed on top of them.
+    // null = allow every domain (only after a parse failure).
+    Set<String> whitelist = new HashSet<>();
+
+    // Navigation state snapshots for restore:true after the process dies.
+    boolean snapshot;
+    int snapshotMaxBytes = DEFAULT_SNAPSHOT_MAX_BYTES;
+    long snapshotTtlMs = DEFAULT_SNAPSHOT_TTL_MS;
+
+    // Renderer crash/kill recovery, limited by a crash-loop breaker.
+    boolean rendererRecovery = true;
+    int rendererMaxCrashes = CrashLoopBreaker.DEFAULT_MAX_CRASHES;
+    long rendererCrashWindowMs = CrashLoopBreaker.DEFAULT_WINDOW_MS;
+
+    int offsetTop;
+
+    /**
+     * Parses {@code options} (null for none).
+     *
+     * @throws JSONException          when an option has the wrong type
+     * @throws PatternSyntaxException when an assetCacheRules entry is not a valid regex
+     */
+    static OpenOptions parse(JSONObject options) throws JSONException {
+        OpenOptions o = new OpenOptions();
+        if (options == null) {
+            return o;
+        }
+
+        if (options.has("barcodeScanURL")) {
+            o.barcodeScanURL = options.getString("barcodeScanURL");
+        }
+        o.barcodeCapture = o.barcodeScanURL != null || options.optBoolean("barcodeCapture", false);
+        o.barcodeNavigate = options.optBoolean("barcodeNavigate", true);
+        o.barcodeMaxInterKeyMs = options.optLong("barcodeMaxInterKeyMs", o.barcodeMaxInterKeyMs);
+        o.barcodeMinLength = options.optInt("barcodeMinLength", o.barcodeMinLength);
+        o.barcodeMaxLength = options.optInt("barcodeMaxLength", o.barcodeMaxLength);
+        o.barcodeTabTerminator = options.optBoolean("barcodeTabTerminator", false);
+
+        o.shopifyHelpers = options.optBoolean("shopifyHelpers", false);
+        o.shopifyImages = o.shopifyHelpers && options.optBoolean("shopifyImages", false);
+        o.shopifyImageMaxWidth = Math.max(0, options.optInt("shopifyImageMaxWidth", 0));
+
+        o.loader = options.optBoolean("loader", true);
+        String label = options.optString("loaderLabel", null);
+        o.loaderLabel = label != null && !label.isEmpty() ? label : null;
+        o.loaderDelayMs = options.optLong("loaderDelayMs", o.loaderDelayMs);
+        o.loaderMinDisplayMs = options.optLong("loaderMinDisplayMs", o.loaderMinDisplayMs);
+
+        o.eventBatched = "batched".equals(options.optString("eventDelivery", "raw"));
+        JSONObject limits = options.optJSONObject("eventRateLimits");
+        if (limits != null) {
+            o.eventRateLimits = new HashMap<>();
+            Iterator<String> types = limits.keys();
+            while (types.hasNext()) {
+                String type = types.next();
+                o.eventRateLimits.put(type, Math.max(0L, limits.optLong(type, 0L)));
+            }
+        }
+        o.eventFlushMs = Math.max(MIN_EVENT_FLUSH_MS, options.optLong("eventFlushMs", DEFAULT_EVENT_FLUSH_MS));
+
+        o.assetCache = options.optBoolean("assetCache", false);
+        o.assetCacheMaxMB = options.optLong("assetCacheMaxMB", 0L);
+        JSONArray ruleArray = options.optJSONArray("assetCacheRules");
+        if (ruleArray != null) {
+            o.assetCacheRules = new ArrayList<>();
+            for (int i = 0; i < ruleArray.length(); i++) {
+                o.assetCacheRules.add(Pattern.compile(ruleArray.getString(i)));
+            }
+        }
+
+        o.blockRules = strings(options.optJSONArray("blockRules"));
+
+        o.resetScope = ResetScope.parse(options.optString("resetScope", null), ResetScope.ALL);
+
+        o.metrics = options.optBoolean("metrics", false);
+        o.metricsEvents = options.optBoolean("metricsEvents", false);
+        o.metricsBufferSize = Math.max(0, options.optInt("metricsBufferSize", 0));
+
+        o.portTransport = "port".equals(options.optString("transport", "bridge"));
+        o.portSubscribe = o.portTransport ? strings(options.optJSONArray("portSubscribe")) : null;
+
+        if (options.has("whitelist")) {
+            o.whitelist.addAll(strings(options.getJSONArray("whitelist")));
+        }
+
+        o.snapshot = options.optBoolean("snapshot", false);
+        int maxKB = options.optInt("snapshotMaxKB", 0);
+        if (maxKB > 0) {
+            o.snapshotMaxBytes = maxKB * 1024;
+        }
+        o.snapshotTtlMs = Math.max(0L, options.optLong("snapshotTtlMs", o.snapshotTtlMs));
+
+        o.rendererRecovery = options.optBoolean("rendererRecovery", true);
+        o.rendererMaxCrashes = Math.max(1, options.optInt("rendererMaxCrashes", o.rendererMaxCrashes));
+        o.rendererCrashWindowMs = Math.max(0L, options.optLong("rendererCrashWindowMs", o.rendererCrashWindowMs));
+
+        o.offsetTop = options.optInt("offsetTop", 0);
+        return o;
+    }
+
+    /**
+     * What open() runs with when its options don't parse: every default, and no
+     * whitelist, so a bad option never locks the customer out of the page.
+     */
+    static OpenOptions fallback() {
+        OpenOptions o = new OpenOptions();
+        o.whitelist = null;
+        return o;
+    }
+
+    /** The activity-event coalescer these options ask for, or null for raw delivery. */
+    EventCoalescer eventCoalescer() {
+        if (!eventBatched && eventRateLimits == null) {
+            return null;
+        }
+        Map<String, Long> minIntervals = eventRateLimits != null ? eventRateLimits : new HashMap<String, Long>();
+        return new EventCoalescer(eventBatched, eventFlushMs, minIntervals);
+    }
+
+    /** Host of {@code url}, or null when it has none or doesn't parse. */
+    static String hostOf(String url) {
+        if (url == null) {
+            return null;
+        }
+        try {
+            String host = new URL(url).getHost();
+            return host != null && !host.isEmpty() ? host : null;
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    private static List<String> strings(JSONArray array) throws JSONException {
+        if (array == null) {
+            return null;
+        }
+        List<String> list = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            list.add(array.getString(i));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,444 @@
+package com.curbngo.browser;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The scripts Browser injects into every page, assembled once per open() session.
+ *
+ * Each script returns at once outside the top frame ({@link #TOP_FRAME_ONLY}) and
+ * guards itself with a window flag so it runs at most once per top-level
+ * document, whichever injection path delivers it: document-start registration
+ * (androidx.webkit) where the WebView supports it, or evaluateJavascript from
+ * onPageStarted/onPageFinished on older WebViews. Because document-start scripts
+ * run before the page has a DOM, anything touching head/body waits for
+ * DOMContentLoaded or load.
+ *
+ * Pure Java; no Android types.
+ */
+final class PageScripts {
+
+    /**
+     * Opens every script below. Document-start scripts are registered for all origins, so
+     * they also run in every iframe (payment widgets, chat, ads); the page scripts belong
+     * to the top document only, and an iframe must never see the port token or reach the
+     * Android bridge through them.
+     */
+    static final String TOP_FRAME_ONLY = "if(window!==window.top)return;";
+
+    /** Prefix of the message that carries the page's MessagePort; the session token follows. */
+    static final String PORT_HANDSHAKE = "__cngPort:";
+
+    /** Browser APIs and characteristics that Cloudflare checks. */
+    static final String BROWSER_ENHANCEMENT =
+        "(function(){" +
+        TOP_FRAME_ONLY +
+        "if(window.__cngBrowserEnhancement)return;" +
+        "window.__cngBrowserEnhancement=true;" +
+        "try {" +
+        // Add missing navigator properties
+        "if (!navigator.webdriver) Object.defineProperty(navigator, 'webdriver', {get: () => undefined});" +
+        "if (!navigator.plugins) Object.defineProperty(navigator, 'plugins', {get: () => [1,2,3,4,5]});" +
+        "if (!navigator.languages) Object.defineProperty(navigator, 'languages', {get: () => ['en-US', 'en']});" +
+        "if (!navigator.hardwareConcurrency) Object.defineProperty(navigator, 'hardwareConcurrency', {get: () => 4});" +
+        "if (!navigator.deviceMemory) Object.defineProperty(navigator, 'deviceMemory', {get: () => 8});" +
+        "if (!navigator.maxTouchPoints) Object.defineProperty(navigator, 'maxTouchPoints', {get: () => 5});" +
+        // Add chrome object
+        "if (!window.chrome) window.chrome = {runtime: {}};" +
+        // Add performance object
+        "if (!window.performance.memory) {" +
+        "Object.defineProperty(window.performance, 'memory', {" +
+        "get: () => ({usedJSHeapSize: 10000000, totalJSHeapSize: 20000000, jsHeapSizeLimit: 40000000})" +
+        "});" +
+        "}" +
+        // Add screen properties
+        "Object.defineProperty(screen, 'availTop', {get: () => 0});" +
+        "Object.defineProperty(screen, 'availLeft', {get: () => 0});" +
+        // Add missing Permission API
+        "if (!navigator.permissions) {" +
+        "navigator.permissions = {" +
+        "query: function() { return Promise.resolve({state: 'granted'}); }" +
+        "};" +
+        "}" +
+        "} catch(e) { console.log('Browser enhancement error:', e); }" +
+        "})();";
+
+    /** touchstart/keyup forwarding to Android.eventTriggered (feeds the event channel). */
+    static final String ACTIVITY_LISTENERS =
+        "(function(){" +
+        TOP_FRAME_ONLY +
+        "if(window.__cngActivityListeners)return;" +
+        "window.__cngActivityListeners=true;" +
+        "try {" +
+        "document.addEventListener('touchstart', function(event) { " +
+        "Android.eventTriggered('touchstart');" +
+        "}, { passive: true });" +
+        "document.addEventListener('keyup', function(event) { " +
+        "Android.eventTriggered('keyup');" +
+        "}, { passive: true });" +
+        "} catch (e) { console.error('Error adding event listeners:', e); }" +
+        "})();";
+
+    /**
+     * Collects Navigation Timing, first paint/FCP, LCP and the slowest resources from
+     * the document's PerformanceObserver and reports them to Android.postMetrics two
+     * seconds after load, once LCP has usually settled.
+     */
+    static final String METRICS_COLLECTOR =
+        "(function(){" +
+        TOP_FRAME_ONLY +
+        "if(window.__cngMetrics)return;" +
+        "window.__cngMetrics=true;" +
+        "try{" +
+        "var paint={},lcp=null;" +
+        "function observe(type,cb){try{new PerformanceObserver(function(l){l.getEntries().forEach(cb);}).observe({type:type,buffered:true});}catch(e){}}" +
+        "observe('paint',function(e){paint[e.name]=Math.round(e.startTime);});" +
+        "observe('largest-contentful-paint',function(e){lcp=Math.round(e.startTime);});" +
+        "function report(){try{" +
+        "var n=performance.getEntriesByType('navigation')[0]||{};" +
+        "var all=performance.getEntriesByType('resource');" +
+        "var res=all.map(function(e){return{name:e.name,type:e.initiatorType,start:Math.round(e.startTime),duration:Math.round(e.duration),size:e.transferSize||0};})" +
+        ".sort(function(a,b){return b.duration-a.duration;}).slice(0,30);" +
+        "Android.postMetrics(JSON.stringify({url:location.href," +
+        "navigation:{type:n.type||'',ttfb:Math.round(n.responseStart||0),domContentLoaded:Math.round(n.domContentLoadedEventEnd||0),load:Math.round(n.loadEventEnd||0),transferSize:n.transferSize||0}," +
+        "firstPaint:paint['first-paint'],firstContentfulPaint:paint['first-contentful-paint'],largestContentfulPaint:lcp," +
+        "resourceCount:all.length,resources:res}));" +
+        "}catch(e){}}" +
+        "function later(){setTimeout(report,2000);}" +
+        "if(document.readyState==='complete')later();else window.addEventListener('load',later,{once:true});" +
+        "}catch(e){}" +
+        "})();";
+
+    /**
+     * Injected on Shopify web shells. Fixes the variant-race on slow kiosks:
+     *  - shows a brief touch-blocking spinner overlay on /products/ pages until
+     *    the theme's <variant-radios>/<variant-selects>/<product-form> custom
+     *    elements are defined (i.e. the theme JS is hydrated), so fast taps can't
+     *    land before the page is wired up; and
+     *  - keeps the product form's hidden `id` input in sync with the currently
+     *    selected option values by reading the variant JSON embedded in the
+     *    picker element, so add-to-cart always submits the right variant even if
+     *    the theme JS hasn't run yet (Dawn-lineage themes).
+     * Idempotent per document via the window.__cngShopifyHelpers guard.
+     */
+    static final String SHOPIFY_HELPERS =
+        "(function(){" +
+        TOP_FRAME_ONLY +
+        "if(window.__cngShopifyHelpers)return;" +
+        "window.__cngShopifyHelpers=true;" +
+        "var OV='__cngShopifyOverlay',MAXMS=8000,dismissed=false;" +
+        "function isProductPage(){return /\\/products\\//.test(location.pathname);}" +
+        "function pickers(){return document.querySelectorAll('variant-radios,variant-selects');}" +
+        "function showOverlay(){try{if(document.getElementById(OV))return;" +
+        "var d=document.createElement('div');d.id=OV;" +
+        "d.style.cssText='position:fixed;top:0;left:0;right:0;bottom:0;z-index:2147483647;background:rgba(255,255,255,0.92);display:flex;align-items:center;justify-content:center;';" +
+        "var s=document.createElement('div');" +
+        "s.style.cssText='width:46px;height:46px;border:5px solid rgba(0,0,0,0.15);border-top-color:rgba(0,0,0,0.55);border-radius:50%;animation:__cngspin 0.8s linear infinite;';" +
+        "var st=document.createElement('style');st.textContent='@keyframes __cngspin{to{transform:rotate(360deg)}}';" +
+        "d.appendChild(st);d.appendChild(s);(document.body||document.documentElement).appendChild(d);}catch(e){}}" +
+        "function hideOverlay(){try{var d=document.getElementById(OV);if(d&&d.parentNode)d.parentNode.removeChild(d);}catch(e){}}" +
+        // Prefer the real add-to-cart form: the one carrying the [name=add] submit button,
+        // then one with a variant-id input. Avoids latching onto the Shop Pay installment
+        // form, which is also action=/cart/add and often appears first in the DOM.
+        "function bestCartForm(){var fs=document.querySelectorAll('form[action*=\"/cart/add\"]'),i;" +
+        "for(i=0;i<fs.length;i++){if(fs[i].querySelector('[name=\"add\"]'))return fs[i];}" +
+        "for(i=0;i<fs.length;i++){if(fs[i].querySelector('input[name=\"id\"],input.product-variant-id'))return fs[i];}" +
+        "return fs[0]||null;}" +
+        "function pickerForm(p){" +
+        "try{var i=p.querySelector('[form]');if(i){var f=document.getElementById(i.getAttribute('form'));if(f)return f;}}catch(e){}" +
+        "try{if(p.closest){var f2=p.closest('form');if(f2)return f2;var pf=p.closest('product-form');if(pf){var f3=pf.querySelector('form');if(f3)return f3;}}}catch(e){}" +
+        "return bestCartForm();}" +
+        "function optsOf(v){return v.options||[v.option1,v.option2,v.option3].filter(function(x){return x!=null;});}" +
+        // Each picker's variant JSON is parsed once per JSON node into two hash indexes: by
+        // the option tuple in order, and by the sorted tuple for themes that report the
+        // picked values out of order. A re-rendered picker brings a new node, hence a new index.
+        "var IDX=typeof WeakMap==='function'?new WeakMap():null,SEP='\\u0001';" +
+        "var stats=window.__cngVariantStats={parses:0,lookups:0,misses:0,syncs:0,syncMs:0};" +
+        "function tupleKey(a,sorted){var s=[];for(var i=0;i<a.length;i++)s.push(String(a[i]));if(sorted)s.sort();return s.join(SEP);}" +
+        "function variantIndex(j){var x=IDX&&IDX.get(j);if(x)return x;" +
+        "var vs=JSON.parse(j.textContent);stats.parses++;x={exact:Object.create(null),loose:Object.create(null),size:0};" +
+        "if(Array.isArray(vs)){for(var i=0;i<vs.length;i++){var o=optsOf(vs[i]),k=tupleKey(o,false),u=tupleKey(o,true);" +
+        "if(!(k in x.exact))x.exact[k]=vs[i];if(!(u in x.loose))x.loose[u]=vs[i];}x.size=vs.length;}" +
+        "if(IDX)IDX.set(j,x);return x;}" +
+        "function matchVariant(x,picked){stats.lookups++;" +
+        "var v=x.exact[tupleKey(picked,false)]||x.loose[tupleKey(picked,true)]||null;if(!v)stats.misses++;return v;}" +
+        "function syncPicker(p){try{" +
+        "var j=p.querySelector('script[type=\"application/json\"]');if(!j)return;" +
+        "var x=variantIndex(j);if(!x.size)return;" +
+        "var picked=[],i;var rs=p.querySelectorAll('input[type=\"radio\"]:checked');" +
+        "if(rs.length){for(i=0;i<rs.length;i++)picked.push(rs[i].value);}else{var ss=p.querySelectorAll('select');for(i=0;i<ss.length;i++)picked.push(ss[i].value);}" +
+        "if(!picked.length)return;var v=matchVariant(x,picked);if(!v)return;" +
+        "var f=pickerForm(p);if(!f)return;" +
+        "var inp=f.querySelector('input[name=\"id\"]')||f.querySelector('input[name$=\"[id]\"]')||f.querySelector('input.product-variant-id');" +
+        "if(!inp){inp=document.createElement('input');inp.type='hidden';inp.name='id';f.appendChild(inp);}" +
+        // Dawn-lineage themes render the variant-id input with the `disabled` attribute and
+        // only un-disable it once the theme JS picks a variant. A disabled input is not
+        // submitted, so a fast tap on Add-to-cart posts /cart/add without `id` and Shopify
+        // rejects it with "Required parameter missing or invalid: items". Force-enable it.
+        "if(inp.disabled){inp.disabled=false;}inp.removeAttribute('disabled');" +
+        "if(String(inp.value)!==String(v.id))inp.value=String(v.id);}catch(e){}}" +
+        "function syncAll(){var t0=performance.now();try{var ps=pickers();for(var i=0;i<ps.length;i++)syncPicker(ps[i]);}catch(e){}" +
+        // Backstop for the "theme JS hasn't run at all" case: un-disable any pre-populated
+        // variant-id input so a native /cart/add submit still carries the (first-available) id.
+        "try{var ds=document.querySelectorAll('form[action*=\"/cart/add\"] input[name=\"id\"][disabled],form[action*=\"/cart/add\"] input.product-variant-id[disabled]');for(var k=0;k<ds.length;k++){if(ds[k].value){ds[k].disabled=false;ds[k].removeAttribute(\"disabled\");}}}catch(e){}" +
+        "stats.syncs++;stats.syncMs+=performance.now()-t0;}" +
+        "function isVariantControl(t){try{return !!(t&&t.closest&&t.closest('variant-radios,variant-selects'));}catch(e){return false;}}" +
+        "document.addEventListener('change',function(e){if(isVariantControl(e.target))syncAll();},true);" +
+        "document.addEventListener('submit',function(e){var f=e.target;if(f&&f.tagName==='FORM'&&/\\/cart\\/add/.test(f.getAttribute('action')||''))syncAll();},true);" +
+        "document.addEventListener('click',function(e){try{var b=e.target&&e.target.closest?e.target.closest('[name=\"add\"]'):null;if(b)syncAll();}catch(err){}},true);" +
+        "function dismiss(){if(dismissed)return;dismissed=true;syncAll();hideOverlay();}" +
+        "function onReady(){var waits=[];try{if(window.customElements){['variant-radios','variant-selects','product-form','product-info'].forEach(function(t){if(document.querySelector(t))waits.push(customElements.whenDefined(t).catch(function(){}));});}}catch(e){}" +
+        "if(waits.length){Promise.all(waits).then(function(){setTimeout(dismiss,50);});}else{dismiss();}}" +
+        "if(isProductPage())showOverlay();" +
+        "setTimeout(dismiss,MAXMS);" +
+        "if(document.readyState==='complete'){setTimeout(dismiss,0);}else{window.addEventListener('load',function(){setTimeout(dismiss,0);},{once:true});}" +
+        "if(document.readyState==='loading'){document.addEventListener('DOMContentLoaded',onReady,{once:true});}else{onReady();}" +
+        "})();";
+
+    private final String barcode;
+    private final String portBridge;
+    private final boolean shopifyHelpers;
+    private final boolean activityListeners;
+    private final boolean metrics;
+    private final List<String> documentScripts;
+
+    /**
+     * @param barcodeScanURL    scan navigation path, or null to skip {@link #BARCODE_COMPANION}
+     * @param shopifyHelpers    include {@link #SHOPIFY_HELPERS}
+     * @param activityListeners include {@link #ACTIVITY_LISTENERS}
+     * @param metrics           include {@link #METRICS_COLLECTOR}
+     * @param portToken         handshake token for the window.BrowserPort shim, or null to skip it
+     */
+    PageScripts(String barcodeScanURL, boolean shopifyHelpers, boolean activityListeners, boolean metrics,
+                String portToken) {
+        this.barcode = barcodeScanURL != null && !barcodeScanURL.isEmpty() ? BARCODE_COMPANION : null;
+        this.portBridge = portToken != null ? portBridgeScript(portToken) : null;
+        this.shopifyHelpers = shopifyHelpers;
+        this.activityListeners = activityListeners;
+        this.metrics = metrics;
+
+        // Shopify first so its variant-id backstop is in place before anything else runs.
+        List<String> scripts = new ArrayList<>();
+        if (shopifyHelpers) {
+            scripts.add(SHOPIFY_HELPERS);
+        }
+        // Observers registered at document start see every paint and resource entry.
+        if (metrics) {
+            scripts.add(METRICS_COLLECTOR);
+        }
+        // Before any page script can try to send on it.
+        if (portBridge != null) {
+            scripts.add(portBridge);
+        }
+        scripts.add(BROWSER_ENHANCEMENT);
+        if (barcode != null) {
+            scripts.add(barcode);
+        }
+        if (activityListeners) {
+            scripts.add(ACTIVITY_LISTENERS);
+        }
+        this.documentScripts = Collections.unmodifiableList(scripts);
+    }
+
+    /** Every script for this session, in injection order. */
+    List<String> documentScripts() {
+        return documentScripts;
+    }
+
+    boolean hasShopifyHelpers() {
+        return shopifyHelpers;
+    }
+
+    /** The session's barcode companion script, or null when no barcodeScanURL was given. */
+    String barcode() {
+        return barcode;
+    }
+
+    boolean hasActivityListeners() {
+        return activityListeners;
+    }
+
+    boolean hasMetrics() {
+        return metrics;
+    }
+
+    boolean hasPortBridge() {
+        return portBridge != null;
+    }
+
+    /**
+     * window.BrowserPort: send(type, data), on(type, fn), off(type, fn) over the
+     * MessagePort that {@link PortChannel} posts with {@code token}. Sends before the
+     * port arrives are queued (up to 100); incoming JSON is parsed only for types
+     * with a handler.
+     */
+    static String portBridgeScript(String token) {
+        return
+            "(function(){" +
+            TOP_FRAME_ONLY +
+            "if(window.BrowserPort)return;" +
+            "var HANDSHAKE=" + JSONObject.quote(PORT_HANDSHAKE + token) + ";" +
+            "var port=null,queue=[],handlers={};" +
+            "function deliver(e){" +
+            "var d=e.data;if(typeof d!=='string')return;" +
+            "var i=d.indexOf('\\n'),t=i<0?d:d.substring(0,i),fns=handlers[t];" +
+            "if(!fns||!fns.length)return;" +
+            "var v;try{v=i<0||i===d.length-1?undefined:JSON.parse(d.substring(i+1));}catch(x){return;}" +
+            "fns.slice().forEach(function(fn){try{fn(v);}catch(x){console.error('BrowserPort handler error:',x);}});" +
+            "}" +
+            "window.addEventListener('message',function(e){" +
+            "if(e.data!==HANDSHAKE||!e.ports||!e.ports.length)return;" +
+            "e.stopImmediatePropagation();" +
+            "port=e.ports[0];port.onmessage=deliver;" +
+            "queue.forEach(function(m){port.postMessage(m);});queue=[];" +
+            "},true);" +
+            "window.BrowserPort={" +
+            "send:function(type,data){" +
+            "var m=String(type)+(data===undefined?'':'\\n'+JSON.stringify(data));" +
+            "if(port)port.postMessage(m);else if(queue.length<100)queue.push(m);" +
+            "}," +
+            "on:function(type,fn){(handlers[type]=handlers[type]||[]).push(fn);}," +
+            "off:function(type,fn){var l=handlers[type];if(l){var i=l.indexOf(fn);if(i>=0)l.splice(i,1);}}" +
+            "};" +
+            "})();";
+    }
+
+    /**
+     * Runs {@code snippets} (a JSON array of source strings) one after another in a
+     * single evaluation and reports {@code [{value|error, ms}, ...]} in order through
+     * Android.scriptResults. A snippet that returns a promise is awaited for at most
+     * {@code perSnippetMs}. Setting window.__cngBatches[batchId].cancelled skips the
+     * snippets not yet started; see {@link #cancelScriptBatch}.
+     */
+    static String scriptBatch(String batchId, String snippets, long perSnippetMs) {
+        return
+            "(function(id,snippets,perMs){" +
+            "var all=window.__cngBatches=window.__cngBatches||{};" +
+            "var batch=all[id]={cancelled:false};" +
+            "var results=[];" +
+            "function clean(v){if(v===undefined)return null;try{return JSON.parse(JSON.stringify(v));}catch(e){return String(v);}}" +
+            "function message(e){return String(e&&e.message||e);}" +
+            "function finish(){" +
+            "delete all[id];" +
+            "for(var k=0;k<snippets.length;k++)if(!results[k])results[k]={error:'cancelled'};" +
+            "Android.scriptResults(id,JSON.stringify(results));" +
+            "}" +
+            "function run(i){" +
+            "if(i>=snippets.length||batch.cancelled){finish();return;}" +
+            "var started=Date.now(),settled=false,timer=0;" +
+            "function settle(r){if(settled)return;settled=true;clearTimeout(timer);r.ms=Date.now()-started;results[i]=r;run(i+1);}" +
+            "try{" +
+            "var v=(0,eval)(snippets[i]);" +
+            "if(v&&typeof v.then==='function'){" +
+            "timer=setTimeout(function(){settle({error:'timeout'});},perMs);" +
+            "v.then(function(x){settle({value:clean(x)});},function(e){settle({error:message(e)});});" +
+            "}else settle({value:clean(v)});" +
+            "}catch(e){settle({error:message(e)});}" +
+            "}" +
+            "run(0);" +
+            "return true;" +
+            "})(" + JSONObject.quote(batchId) + "," + snippets + "," + perSnippetMs + ")";
+    }
+
+    /** Marks a running {@link #scriptBatch} cancelled so its remaining snippets are skipped. */
+    static String cancelScriptBatch(String batchId) {
+        return "(function(){var b=window.__cngBatches&&window.__cngBatches[" + JSONObject.quote(batchId) + "];" +
+            "if(b)b.cancelled=true;return !!b;})()";
+    }
+
+    /**
+     * Evaluates {@code code} (awaiting a returned promise), serializes the result once
+     * (strings as-is, anything else as JSON) and parks it in window.__cngStreams for
+     * {@link #nextStreamChunk} to hand out. Reports the length and kind ("text" or
+     * "json"), or an error, through Android.scriptStreamReady. Results longer than
+     * {@code maxLength} characters are refused.
+     */
+    static String scriptStream(String streamId, String code, int chunkLength, int maxLength) {
+        return
+            "(function(id,code,chunk,max){" +
+            "var all=window.__cngStreams=window.__cngStreams||{};" +
+            "var s=all[id]={data:'',pos:0};" +
+            "function fail(e){delete all[id];Android.scriptStreamReady(id,-1,null,String(e&&e.message||e));}" +
+            "function ready(v){" +
+            "if(all[id]!==s)return;" +
+            "var kind=typeof v==='string'?'text':'json',d;" +
+            "try{d=kind==='text'?v:JSON.stringify(v===undefined?null:v);}catch(e){fail(e);return;}" +
+            "if(d.length>max){fail('Result is '+d.length+' characters, over the '+max+' limit');return;}" +
+            "s.data=d;s.chunk=chunk;" +
+            "Android.scriptStreamReady(id,d.length,kind,null);" +
+            "}" +
+            "try{var v=(0,eval)(code);if(v&&typeof v.then==='function')v.then(ready,fail);else ready(v);}catch(e){fail(e);}" +
+            "return true;" +
+            "})(" + JSONObject.quote(streamId) + "," + JSONObject.quote(code) + "," + chunkLength + "," + maxLength + ")";
+    }
+
+    /**
+     * Returns the next chunk of a {@link #scriptStream} result, or null once it is
+     * exhausted (or gone). Never splits a surrogate pair.
+     */
+    static String nextStreamChunk(String streamId) {
+        return
+            "(function(id){" +
+            "var all=window.__cngStreams,s=all&&all[id];" +
+            "if(!s)return null;" +
+            "if(s.pos>=s.data.length){delete all[id];return null;}" +
+            "var end=Math.min(s.pos+s.chunk,s.data.length);" +
+            "var c=s.data.charCodeAt(end-1);" +
+            "if(end<s.data.length&&c>=0xD800&&c<=0xDBFF)end--;" +
+            "var out=s.data.substring(s.pos,end);" +
+            "s.pos=end;" +
+            "return out;" +
+            "})(" + JSONObject.quote(streamId) + ")";
+    }
+
+    /** Drops a {@link #scriptStream} result without reading the rest of it. */
+    static String discardScriptStream(String streamId) {
+        return "(function(){if(window.__cngStreams)delete window.__cngStreams[" + JSONObject.quote(streamId) + "];})()";
+    }
+
+    /**
+     * Companion of the native barcode capture ({@link ScanDetector}): the viewport fix
+     * and the activity/logged-in messages that used to ride along with the page-side
+     * keypress collector. Scanning itself no longer happens in the page.
+     */
+    static final String BARCODE_COMPANION =
+        "(function(){" +
+        TOP_FRAME_ONLY +
+        "if(window.cngPageInitialized)" +
+        "return;" +
+        "window.cngPageInitialized = true;" +
+        "window.barcodeScannerInitialized = true;" +
+        "var cEventList = ['keyup', 'touchstart'];" +
+        "cEventList.forEach(function (eventName) {" +
+        "window.addEventListener(eventName, function (e) {" +
+        "Android.postMessage(JSON.stringify({" +
+        "active: true," +
+        "type: e.type" +
+        "}));" +
+        "}, { passive: true });" +
+        "});" +
+        // The viewport meta needs <head>; at document start it does not exist yet.
+        "function cngViewport(){" +
+        "var vp = document.querySelector('meta[name=viewport]');" +
+        "if (vp) vp.setAttribute('content', 'width=device-width');" +
+        "else {" +
+        "var meta = document.createElement('meta');" +
+        "meta.name = 'viewport';" +
+        "meta.content = 'width=device-width';" +
+        "(document.head || document.documentElement).appendChild(meta);" +
+        "}" +
+        "}" +
+        // ShopifyAnalytics.meta is set by the theme's own scripts; check once the page has loaded.
+        "function cngLoggedIn(){" +
+        "if(typeof ShopifyAnalytics !== 'undefined' && typeof ShopifyAnalytics.meta !== 'undefined' && typeof ShopifyAnalytics.meta.page !== 'undefined' && typeof ShopifyAnalytics.meta.page.customerId !== 'undefined')" +
+        "Android.postMessage(JSON.stringify({" +
+        "logged_in: true" +
+        "}));" +
+        "}" +
+        "if (document.readyState === 'loading') document.addEventListener('DOMContentLoaded', cngViewport, { once: true }); else cngViewport();" +
+        "if (document.readyState === 'complete') cngLoggedIn(); else window.addEventListener('load', cngLoggedIn, { once: true });" +
+        "})();";
+}
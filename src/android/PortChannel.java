@@ -0,0 +1,128 @@
+package com.curbngo.browser;
+
+import org.apache.cordova.LOG;
+
+import org.json.JSONException;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.webkit.WebView;
+
+import androidx.webkit.WebMessageCompat;
+import androidx.webkit.WebMessagePortCompat;
+import androidx.webkit.WebViewCompat;
+import androidx.webkit.WebViewFeature;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Optional page/native transport over an HTML MessageChannel, as an alternative to
+ * the synchronous Android.* JavaScript interface.
+ *
+ * For every committed document native creates a channel, keeps one port and posts
+ * the other to the page in a handshake message carrying the session token. The
+ * {@link PageScripts#portBridgeScript} shim (window.BrowserPort) accepts only a port
+ * with that token and queues whatever the page sends before it arrives.
+ *
+ * Messages are {@link PortFrame}s: {@code type + "\n" + json}. Only the type prefix
+ * is read on arrival; the JSON is parsed when the host subscribed to that type, and
+ * everything else is dropped unparsed. Port callbacks run on one shared background
+ * thread, so neither the UI thread nor the JavaBridge thread is involved.
+ */
+final class PortChannel {
+
+    /** Receives subscribed messages on the port thread. */
+    interface Listener {
+        void onMessage(String type, Object payload);
+    }
+
+    private static final String TAG = "BrowserPortChannel";
+    private static Handler handler; // shared by every channel
+
+    private final String token;
+    private final Listener listener;
+    private final Set<String> subscriptions; // null = every type
+    private WebMessagePortCompat port; // UI thread only
+
+    /**
+     * @param subscriptions message types to deliver, or null for all of them
+     */
+    PortChannel(String token, Collection<String> subscriptions, Listener listener) {
+        this.token = token;
+        this.listener = listener;
+        this.subscriptions = subscriptions != null ? new HashSet<>(subscriptions) : null;
+    }
+
+    static boolean isSupported() {
+        return WebViewFeature.isFeatureSupported(WebViewFeature.CREATE_WEB_MESSAGE_CHANNEL)
+            && WebViewFeature.isFeatureSupported(WebViewFeature.POST_WEB_MESSAGE)
+            && WebViewFeature.isFeatureSupported(WebViewFeature.WEB_MESSAGE_PORT_POST_MESSAGE)
+            && WebViewFeature.isFeatureSupported(WebViewFeature.WEB_MESSAGE_PORT_SET_MESSAGE_CALLBACK);
+    }
+
+    private static synchronized Handler callbackHandler() {
+        if (handler == null) {
+            HandlerThread thread = new HandlerThread("BrowserPort");
+            thread.start();
+            handler = new Handler(thread.getLooper());
+        }
+        return handler;
+    }
+
+    /**
+     * Hands a fresh port to the document currently committed in {@code view}, closing
+     * the previous document's one. UI-thread only.
+     */
+    void connect(WebView view) {
+        close();
+        WebMessagePortCompat[] ports = WebViewCompat.createWebMessageChannel(view);
+        port = ports[0];
+        port.setWebMessageCallback(callbackHandler(), new WebMessagePortCompat.WebMessageCallbackCompat() {
+            @Override
+            public void onMessage(WebMessagePortCompat source, WebMessageCompat message) {
+                receive(message.getData());
+            }
+        });
+        WebViewCompat.postWebMessage(view,
+            new WebMessageCompat(PageScripts.PORT_HANDSHAKE + token, new WebMessagePortCompat[] { ports[1] }),
+            Uri.parse("*"));
+    }
+
+    /** Pushes a message to the page. Returns false when no document is connected. UI-thread only. */
+    boolean post(String type, String json) {
+        if (port == null) {
+            return false;
+        }
+        port.postMessage(new WebMessageCompat(PortFrame.encode(type, json)));
+        return true;
+    }
+
+    /** UI-thread only. */
+    void close() {
+        if (port != null) {
+            port.close();
+            port = null;
+        }
+    }
+
+    private void receive(String data) {
+        if (data == null) {
+            return;
+        }
+        String type = PortFrame.type(data);
+        if (subscriptions != null && !subscriptions.contains(type)) {
+            return;
+        }
+        Object payload;
+        try {
+            payload = PortFrame.payload(data);
+        } catch (JSONException e) {
+            LOG.e(TAG, "Error parsing port message '" + type + "': " + e.getMessage());
+            return;
+        }
+        listener.onMessage(type, payload);
+    }
+}
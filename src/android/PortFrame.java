@@ -0,0 +1,42 @@
+package com.curbngo.browser;
+
+import org.json.JSONException;
+import org.json.JSONTokener;
+
+/**
+ * The port transport's wire format: {@code type}, optionally followed by a newline and
+ * a JSON payload. The type can be read without touching the payload, which is what lets
+ * {@link PortChannel} drop unsubscribed messages unparsed.
+ *
+ * Pure Java.
+ */
+final class PortFrame {
+
+    private PortFrame() {
+    }
+
+    /** {@code type}, plus "\n" and {@code json} when there is one. */
+    static String encode(String type, String json) {
+        return json != null ? type + "\n" + json : type;
+    }
+
+    /** The frame's type: everything up to the first newline. */
+    static String type(String frame) {
+        int newline = frame.indexOf('\n');
+        return newline < 0 ? frame : frame.substring(0, newline);
+    }
+
+    /**
+     * Parses the frame's payload: a JSONObject, JSONArray, String, Number, Boolean or
+     * JSONObject.NULL, or null when the frame has none.
+     *
+     * @throws JSONException when the payload is not valid JSON
+     */
+    static Object payload(String frame) throws JSONException {
+        int newline = frame.indexOf('\n');
+        if (newline < 0 || newline + 1 == frame.length()) {
+            return null;
+        }
+        return new JSONTokener(frame.substring(newline + 1)).nextValue();
+    }
+}
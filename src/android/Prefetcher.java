@@ -0,0 +1,493 @@
+package com.curbngo.browser;
+
+import org.apache.cordova.LOG;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Background fetcher behind Browser.prefetch().
+ *
+ * For each requested page it resolves the host (warming the system DNS cache),
+ * fetches the HTML with the session's cookies, and then fetches the page's
+ * critical subresources (stylesheets, head scripts, preloads). Responses are
+ * held in memory for a short time (never past their max-age) and handed to the
+ * WebView, once each, from shouldInterceptRequest, so the real navigation skips
+ * those round trips. A stored response keeps its end-to-end headers (CSP,
+ * X-Frame-Options, caching...), so a prefetched document behaves like a fetched one.
+ *
+ * Everything is per browser instance: a batch, its entries and its fetches belong
+ * to the instance that asked, only that instance's WebView is served them, and
+ * {@link #cancelInFlight(String)} and {@link #clear(String)} leave other instances'
+ * work alone. Every URL, page or subresource, must pass the {@link UrlFilter} given
+ * with its batch (the requesting instance's whitelist). Work runs on a small pool
+ * shared by every instance, with a concurrency limit; each prefetch() call has a byte
+ * budget and the store has a total one.
+ *
+ * The store holds session data (HTML fetched with cookies), so an instance's entries
+ * must be cleared whenever its session is wiped.
+ */
+final class Prefetcher {
+
+    private static final String TAG = "BrowserPrefetcher";
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    private static final int READ_TIMEOUT_MS = 15000;
+    private static final int MAX_SUBRESOURCES = 12;
+    private static final long STORE_MAX_BYTES = 16L * 1024 * 1024;
+
+    /**
+     * Response headers not replayed: cookies were already handed to the cookie store,
+     * and the body is stored decoded and whole.
+     */
+    private static final Set<String> DROPPED_HEADERS = new HashSet<>(Arrays.asList(
+        "set-cookie", "set-cookie2", "content-length", "content-encoding", "transfer-encoding", "connection",
+        "keep-alive"));
+
+    private static final Pattern SUBRESOURCE = Pattern.compile(
+        "<link\\b[^>]*\\brel\\s*=\\s*[\"']?(?:stylesheet|preload|modulepreload)[\"']?[^>]*>"
+            + "|<script\\b[^>]*\\bsrc\\s*=[^>]*>",
+        Pattern.CASE_INSENSITIVE);
+    private static final Pattern HREF_OR_SRC = Pattern.compile(
+        "\\b(?:href|src)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s>]+))", Pattern.CASE_INSENSITIVE);
+    private static final Pattern HEAD_END = Pattern.compile("</head\\s*>", Pattern.CASE_INSENSITIVE);
+
+    /** Decides whether a URL may be prefetched. */
+    interface UrlFilter {
+        boolean allows(String url);
+    }
+
+    /** Bridge to the WebView's cookie store, so prefetched pages see the live session. */
+    interface CookieStore {
+        String get(String url);
+
+        void set(String url, String setCookieHeader);
+    }
+
+    /** Called once a prefetch() batch has finished, been cancelled, or run out of budget. */
+    interface Listener {
+        void onComplete(Result result);
+    }
+
+    /** Outcome of one prefetch() call. */
+    static final class Result {
+        final AtomicInteger fetched = new AtomicInteger();
+        final AtomicInteger skipped = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicInteger cancelled = new AtomicInteger();
+        final AtomicLong bytes = new AtomicLong();
+        final int requested;
+
+        Result(int requested) {
+            this.requested = requested;
+        }
+    }
+
+    /** A stored response. */
+    static final class Entry {
+        final int status;
+        final String reason;
+        final String mimeType;
+        final String encoding;
+        final Map<String, String> headers;
+        final byte[] body;
+        final long expiresAt;
+
+        Entry(int status, String reason, String mimeType, String encoding, Map<String, String> headers,
+              byte[] body, long expiresAt) {
+            this.status = status;
+            this.reason = reason;
+            this.mimeType = mimeType;
+            this.encoding = encoding;
+            this.headers = headers;
+            this.body = body;
+            this.expiresAt = expiresAt;
+        }
+
+        InputStream open() {
+            return new ByteArrayInputStream(body);
+        }
+    }
+
+    private final ExecutorService executor;
+    private final int concurrency;
+    private final CookieStore cookies;
+    private final long ttlMs;
+
+    // Keyed by storeKey(instance, url), oldest first.
+    private final LinkedHashMap<String, Entry> store = new LinkedHashMap<>();
+    private long storeBytes;
+
+    // Running fetches and the instance each one belongs to.
+    private final Map<HttpURLConnection, String> connections = new HashMap<>();
+    // Per instance: bumped to cancel everything that instance has in flight.
+    private final ConcurrentHashMap<String, AtomicInteger> generations = new ConcurrentHashMap<>();
+
+    Prefetcher(int concurrency, long ttlMs, CookieStore cookies) {
+        this.concurrency = Math.max(1, concurrency);
+        this.executor = Executors.newFixedThreadPool(this.concurrency);
+        this.ttlMs = ttlMs;
+        this.cookies = cookies;
+    }
+
+    /**
+     * Prefetches {@code urls} (and, if asked, their critical subresources) that pass
+     * {@code filter} for browser instance {@code instance}, using at most {@code maxBytes}
+     * of body data. Returns immediately; {@code listener} is called once on a worker
+     * thread when the batch is done.
+     */
+    void prefetch(final String instance, List<String> urls, final UrlFilter filter, final long maxBytes,
+                  final boolean subresources, final Listener listener) {
+        final Result result = new Result(urls.size());
+        final AtomicInteger generation = generation(instance);
+        final int gen = generation.get();
+        final AtomicInteger pending = new AtomicInteger(urls.size());
+        if (urls.isEmpty()) {
+            listener.onComplete(result);
+            return;
+        }
+        for (final String url : urls) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        fetchPage(instance, url, filter, generation, gen, maxBytes, subresources, result);
+                    } finally {
+                        if (pending.decrementAndGet() == 0) {
+                            listener.onComplete(result);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns and removes the response stored for {@code instance} at {@code url} if it
+     * is still fresh. Safe to call from any thread (WebView calls it from its IO threads).
+     */
+    synchronized Entry take(String instance, String url) {
+        if (store.isEmpty()) {
+            return null;
+        }
+        Entry e = store.remove(storeKey(instance, stripFragment(url)));
+        if (e == null) {
+            return null;
+        }
+        storeBytes -= e.body.length;
+        if (System.currentTimeMillis() > e.expiresAt) {
+            return null;
+        }
+        return e;
+    }
+
+    /**
+     * Aborts {@code instance}'s running fetches; its queued ones see the new generation
+     * and finish as cancelled without touching the network. Completed entries stay available.
+     */
+    void cancelInFlight(String instance) {
+        generation(instance).incrementAndGet();
+        synchronized (connections) {
+            for (Map.Entry<HttpURLConnection, String> c : connections.entrySet()) {
+                if (c.getValue().equals(instance)) {
+                    c.getKey().disconnect();
+                }
+            }
+        }
+    }
+
+    /** Cancels {@code instance}'s running fetches and drops the responses stored for it. */
+    void clear(String instance) {
+        cancelInFlight(instance);
+        generations.remove(instance); // its batches hold the bumped counter, so they stay cancelled
+        String prefix = storeKey(instance, "");
+        synchronized (this) {
+            Iterator<Map.Entry<String, Entry>> it = store.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Entry> e = it.next();
+                if (e.getKey().startsWith(prefix)) {
+                    it.remove();
+                    storeBytes -= e.getValue().body.length;
+                }
+            }
+        }
+    }
+
+    /** Cancels every instance's running fetches and drops every stored response. */
+    void clear() {
+        for (AtomicInteger generation : generations.values()) {
+            generation.incrementAndGet();
+        }
+        synchronized (connections) {
+            for (HttpURLConnection c : connections.keySet()) {
+                c.disconnect();
+            }
+        }
+        synchronized (this) {
+            store.clear();
+            storeBytes = 0;
+        }
+    }
+
+    /** Stops the worker threads. The prefetcher cannot be used afterwards. */
+    void shutdown() {
+        clear();
+        executor.shutdownNow();
+    }
+
+    int concurrency() {
+        return concurrency;
+    }
+
+    // --- internals ----------------------------------------------------------
+
+    private AtomicInteger generation(String instance) {
+        AtomicInteger generation = generations.get(instance);
+        if (generation == null) {
+            AtomicInteger created = new AtomicInteger();
+            generation = generations.putIfAbsent(instance, created);
+            if (generation == null) {
+                generation = created;
+            }
+        }
+        return generation;
+    }
+
+    private static String storeKey(String instance, String url) {
+        return instance + '\n' + url; // '\n' can't appear in a URL
+    }
+
+    private void fetchPage(String instance, String url, UrlFilter filter, AtomicInteger generation, int gen,
+                           long maxBytes, boolean subresources, Result result) {
+        if (gen != generation.get()) {
+            result.cancelled.incrementAndGet();
+            return;
+        }
+        if (!filter.allows(url)) {
+            result.skipped.incrementAndGet();
+            return;
+        }
+        Fetched page = fetch(instance, url, generation, gen, maxBytes, result);
+        if (page == null || !subresources || !page.mimeType.startsWith("text/html")) {
+            return;
+        }
+        Charset cs = Charset.forName("UTF-8");
+        try {
+            if (page.encoding != null) {
+                cs = Charset.forName(page.encoding);
+            }
+        } catch (Exception ignored) {
+        }
+        for (String sub : criticalSubresources(url, new String(page.body, cs))) {
+            if (gen != generation.get()) {
+                result.cancelled.incrementAndGet();
+                return;
+            }
+            if (!filter.allows(sub)) {
+                result.skipped.incrementAndGet();
+                continue;
+            }
+            fetch(instance, sub, generation, gen, maxBytes, result);
+        }
+    }
+
+    private static final class Fetched {
+        final String mimeType;
+        final String encoding;
+        final byte[] body;
+
+        Fetched(String mimeType, String encoding, byte[] body) {
+            this.mimeType = mimeType;
+            this.encoding = encoding;
+            this.body = body;
+        }
+    }
+
+    private Fetched fetch(String instance, String url, AtomicInteger generation, int gen, long maxBytes,
+                          Result result) {
+        HttpURLConnection conn = null;
+        InputStream in = null;
+        try {
+            URL u = new URL(url);
+            InetAddress.getAllByName(u.getHost()); // warm the resolver before connecting
+            conn = (HttpURLConnection) u.openConnection();
+            synchronized (connections) {
+                connections.put(conn, instance);
+            }
+            if (gen != generation.get()) {
+                result.cancelled.incrementAndGet();
+                return null;
+            }
+            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            conn.setReadTimeout(READ_TIMEOUT_MS);
+            conn.setUseCaches(false);
+            conn.setInstanceFollowRedirects(false);
+            conn.setRequestProperty("Purpose", "prefetch");
+            String cookie = cookies != null ? cookies.get(url) : null;
+            if (cookie != null && !cookie.isEmpty()) {
+                conn.setRequestProperty("Cookie", cookie);
+            }
+
+            int status = conn.getResponseCode();
+            if (cookies != null) {
+                for (Map.Entry<String, List<String>> h : conn.getHeaderFields().entrySet()) {
+                    if ("Set-Cookie".equalsIgnoreCase(h.getKey())) {
+                        for (String sc : h.getValue()) {
+                            cookies.set(url, sc);
+                        }
+                    }
+                }
+            }
+            // Redirects and errors are left to the real navigation.
+            if (status != HttpURLConnection.HTTP_OK || !AssetCache.isStorable(conn.getHeaderField("Cache-Control"))) {
+                result.failed.incrementAndGet();
+                return null;
+            }
+
+            in = conn.getInputStream();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                if (gen != generation.get()) {
+                    result.cancelled.incrementAndGet();
+                    return null;
+                }
+                if (result.bytes.addAndGet(n) > maxBytes) {
+                    result.cancelled.incrementAndGet();
+                    return null;
+                }
+                out.write(buf, 0, n);
+            }
+
+            String contentType = conn.getContentType();
+            long now = System.currentTimeMillis();
+            long maxAge = AssetCache.maxAgeMs(conn.getHeaderField("Cache-Control"));
+            long expiresAt = now + (maxAge < 0 ? ttlMs : Math.min(ttlMs, maxAge));
+            Entry entry = new Entry(status, "OK", AssetCache.mimeOf(contentType), AssetCache.charsetOf(contentType),
+                replayedHeaders(conn.getHeaderFields()), out.toByteArray(), expiresAt);
+            put(storeKey(instance, stripFragment(url)), entry);
+            result.fetched.incrementAndGet();
+            return new Fetched(entry.mimeType, entry.encoding, entry.body);
+        } catch (IOException | RuntimeException e) {
+            if (gen != generation.get()) {
+                result.cancelled.incrementAndGet();
+            } else {
+                LOG.d(TAG, "Prefetch failed for " + url + ": " + e.getMessage());
+                result.failed.incrementAndGet();
+            }
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+            if (conn != null) {
+                synchronized (connections) {
+                    connections.remove(conn);
+                }
+                conn.disconnect();
+            }
+        }
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        Entry old = store.remove(key);
+        if (old != null) {
+            storeBytes -= old.body.length;
+        }
+        store.put(key, entry);
+        storeBytes += entry.body.length;
+        // Oldest first; also drop anything already expired.
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Entry>> it = store.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next().getValue();
+            if (storeBytes <= STORE_MAX_BYTES && now <= e.expiresAt) {
+                break;
+            }
+            it.remove();
+            storeBytes -= e.body.length;
+        }
+    }
+
+    /** The response headers to replay with a stored body, repeated ones joined with ", ". */
+    static Map<String, String> replayedHeaders(Map<String, List<String>> fields) {
+        Map<String, String> headers = new HashMap<>();
+        for (Map.Entry<String, List<String>> h : fields.entrySet()) {
+            String name = h.getKey();
+            String lower = name != null ? name.toLowerCase(Locale.US) : null;
+            if (lower == null || h.getValue() == null || h.getValue().isEmpty() || DROPPED_HEADERS.contains(lower)
+                    || lower.startsWith("x-android-")) {
+                continue; // null is the status line; X-Android-* are added by the platform's client
+            }
+            StringBuilder value = new StringBuilder();
+            for (String v : h.getValue()) {
+                if (value.length() > 0) {
+                    value.append(", ");
+                }
+                value.append(v);
+            }
+            headers.put(name, value.toString());
+        }
+        return headers;
+    }
+
+    /** Stylesheets, scripts and preloads referenced from the document head, resolved against {@code base}. */
+    static List<String> criticalSubresources(String base, String html) {
+        Matcher headEnd = HEAD_END.matcher(html);
+        String head = headEnd.find() ? html.substring(0, headEnd.start()) : html;
+        Set<String> out = new LinkedHashSet<>();
+        Matcher tag = SUBRESOURCE.matcher(head);
+        while (tag.find() && out.size() < MAX_SUBRESOURCES) {
+            Matcher attr = HREF_OR_SRC.matcher(tag.group());
+            if (!attr.find()) {
+                continue;
+            }
+            String ref = attr.group(1) != null ? attr.group(1) : attr.group(2) != null ? attr.group(2) : attr.group(3);
+            ref = ref.replace("&amp;", "&").trim();
+            if (ref.isEmpty() || ref.startsWith("data:") || ref.startsWith("javascript:")) {
+                continue;
+            }
+            try {
+                String resolved = new URL(new URL(base), ref).toString();
+                String lower = resolved.toLowerCase(Locale.US);
+                if (lower.startsWith("http://") || lower.startsWith("https://")) {
+                    out.add(stripFragment(resolved));
+                }
+            } catch (IOException ignored) {
+            }
+        }
+        return new ArrayList<>(out);
+    }
+
+    static String stripFragment(String url) {
+        int hash = url.indexOf('#');
+        return hash < 0 ? url : url.substring(0, hash);
+    }
+}
@@ -0,0 +1,164 @@
+package com.curbngo.browser;
+
+import org.apache.cordova.CallbackContext;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.os.SystemClock;
+import android.webkit.WebView;
+
+import androidx.webkit.ScriptHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds a browser instance's speculative next page: a second WebView that loads a
+ * predicted URL out of sight, so a later navigate() to it can swap views instead of
+ * loading. At most one page is held per instance; a new preload replaces the old one.
+ *
+ * A page is only served while fresh (its TTL counts from the preload request) and for
+ * the URL it was asked for or the one it ended up on after redirects. Every navigate()
+ * made while a page is held counts as a hit or a miss, which gives the hit rate.
+ *
+ * Swapping views replaces the live WebView's back/forward list with the preload's own
+ * (just the preloaded page), so a page is not served over a live view that has history
+ * unless it was preloaded with replaceHistory; the navigation then loads normally and
+ * counts as a miss.
+ *
+ * The page itself is UI-thread only; the counters are read from the exec thread.
+ */
+final class Preloader {
+
+    static final long DEFAULT_TTL_MS = 60000L;
+
+    /** One offscreen page. */
+    static final class Page {
+        final WebView view;
+        final String url;
+        final WebAppInterface bridge; // muted until the page is swapped in
+        final List<ScriptHandler> scriptHandlers = new ArrayList<>();
+        final long requestedAt = SystemClock.uptimeMillis();
+        final long expiresAt;
+        final boolean replaceHistory; // may be swapped in over a live view that has history
+        boolean documentStart;
+        boolean committed;
+        boolean finished;
+        String finalUrl;
+        CallbackContext callback; // preload() caller, until the page finishes or is dropped
+
+        Page(WebView view, String url, WebAppInterface bridge, long ttlMs, boolean replaceHistory,
+             CallbackContext callback) {
+            this.view = view;
+            this.url = url;
+            this.bridge = bridge;
+            this.expiresAt = requestedAt + ttlMs;
+            this.replaceHistory = replaceHistory;
+            this.callback = callback;
+        }
+
+        boolean matches(String other) {
+            String wanted = stripFragment(other);
+            return wanted.equals(stripFragment(url)) || (finalUrl != null && wanted.equals(stripFragment(finalUrl)));
+        }
+
+        boolean isFresh() {
+            return SystemClock.uptimeMillis() < expiresAt;
+        }
+    }
+
+    private Page page;
+
+    private int requested;
+    private int hits;
+    private int misses;
+    private int expired;
+    private int keptHistory;
+    private int refusedForMemory;
+    private int droppedForMemory;
+
+    /** The page being held, if any. UI-thread only. */
+    Page page() {
+        return page;
+    }
+
+    /** Starts holding {@code next}; returns the page it replaces, for the caller to dispose of. */
+    synchronized Page hold(Page next) {
+        Page previous = page;
+        page = next;
+        requested++;
+        return previous;
+    }
+
+    /**
+     * Takes the held page for a navigation to {@code url} when it is fresh, matches, and
+     * may replace the live view's history ({@code liveHasHistory}: it can go back).
+     * Returns null on a miss (or when nothing is held); the held page is then left for
+     * the caller to {@link #drop}.
+     */
+    synchronized Page take(String url, boolean liveHasHistory) {
+        if (page == null) {
+            return null;
+        }
+        if (!page.matches(url)) {
+            misses++;
+            return null;
+        }
+        if (!page.isFresh()) {
+            expired++;
+            misses++;
+            return null;
+        }
+        if (liveHasHistory && !page.replaceHistory) {
+            keptHistory++;
+            misses++;
+            return null;
+        }
+        hits++;
+        Page hit = page;
+        page = null;
+        return hit;
+    }
+
+    /** Stops holding the page (if it is still {@code which}) and returns it for disposal. */
+    synchronized Page drop(Page which) {
+        if (which == null || page != which) {
+            return null;
+        }
+        page = null;
+        return which;
+    }
+
+    /** Counts a page expiring before anyone navigated to it. */
+    synchronized void expiredUnused() {
+        expired++;
+    }
+
+    synchronized void refusedForMemory() {
+        refusedForMemory++;
+    }
+
+    synchronized void droppedForMemory() {
+        droppedForMemory++;
+    }
+
+    synchronized JSONObject toJSON() throws JSONException {
+        JSONObject o = new JSONObject();
+        o.put("requested", requested);
+        o.put("hits", hits);
+        o.put("misses", misses);
+        o.put("hitRate", hits + misses > 0 ? (double) hits / (hits + misses) : 0d);
+        o.put("expired", expired);
+        o.put("keptHistory", keptHistory);
+        o.put("refusedForMemory", refusedForMemory);
+        o.put("droppedForMemory", droppedForMemory);
+        o.put("holding", page != null ? page.url : JSONObject.NULL);
+        return o;
+    }
+
+    private static String stripFragment(String url) {
+        int hash = url.indexOf('#');
+        return hash < 0 ? url : url.substring(0, hash);
+    }
+}
@@ -0,0 +1,28 @@
+package com.curbngo.browser;
+
+/** What a {@link SessionReset} clears between kiosk customers. */
+enum ResetScope {
+    /**
+     * Nothing; reports completion right away. Cookies and storage are shared by
+     * every WebView in the process, so this is how a second browser instance
+     * opens without signing the first one out.
+     */
+    NONE,
+    /** Cookies and web storage: everything that can identify the customer. */
+    IDENTITY,
+    /** Identity plus the HTTP cache, service workers, Cache Storage and IndexedDB. */
+    ALL;
+
+    static ResetScope parse(String value, ResetScope fallback) {
+        if ("none".equalsIgnoreCase(value)) {
+            return NONE;
+        }
+        if ("identity".equalsIgnoreCase(value)) {
+            return IDENTITY;
+        }
+        if ("all".equalsIgnoreCase(value)) {
+            return ALL;
+        }
+        return fallback;
+    }
+}
@@ -0,0 +1,101 @@
+package com.curbngo.browser;
+
+/**
+ * Tells barcode-scanner bursts apart from human typing using key timing alone.
+ *
+ * A USB/Bluetooth scanner is a keyboard that types the whole code, then a
+ * terminator (Enter, optionally Tab), with a few milliseconds between keys; a
+ * person rarely manages less than ~80 ms. Characters are collected while every
+ * gap stays within {@code maxInterKeyMs}; a slower key starts a new run. A
+ * terminator completes a scan when the run is at least {@code minLength}
+ * characters and the terminator itself arrived within the gap limit. A run
+ * longer than {@code maxLength} is not a code we accept: the rest of it is
+ * discarded up to its terminator or the next gap, so its tail can't pass as a scan.
+ *
+ * The buffer is allocated once; feeding keys allocates nothing. Pure Java; not
+ * thread-safe (used from the UI thread).
+ */
+final class ScanDetector {
+
+    static final long DEFAULT_MAX_INTER_KEY_MS = 50L;
+    static final int DEFAULT_MIN_LENGTH = 4;
+    static final int DEFAULT_MAX_LENGTH = 128;
+
+    private final long maxInterKeyMs;
+    private final int minLength;
+    private final char[] buffer;
+
+    private int length;
+    private boolean overflowed; // discarding an over-long run until it ends
+    private long firstAt;
+    private long lastAt;
+
+    // Last completed scan
+    private long scanStartedAt;
+    private long scanEndedAt;
+    private int scanLength;
+
+    ScanDetector(long maxInterKeyMs, int minLength, int maxLength) {
+        this.maxInterKeyMs = Math.max(1L, maxInterKeyMs);
+        this.minLength = Math.max(1, minLength);
+        this.buffer = new char[Math.max(this.minLength, maxLength)];
+    }
+
+    /** Feeds one printable character typed at {@code time} (ms, any monotonic clock). */
+    void onChar(char c, long time) {
+        if ((length > 0 || overflowed) && time - lastAt > maxInterKeyMs) {
+            length = 0; // too slow: a person, or the start of a new burst
+            overflowed = false;
+        }
+        lastAt = time;
+        if (overflowed) {
+            return;
+        }
+        if (length == buffer.length) {
+            length = 0; // longer than any code we accept
+            overflowed = true;
+            return;
+        }
+        if (length == 0) {
+            firstAt = time;
+        }
+        buffer[length++] = c;
+    }
+
+    /**
+     * Feeds a terminator key. Returns true when it completes a scan, which must be read
+     * with {@link #code()} before the next key is fed; the run is cleared either way.
+     */
+    boolean onTerminator(long time) {
+        boolean scan = length >= minLength && time - lastAt <= maxInterKeyMs;
+        if (scan) {
+            scanStartedAt = firstAt;
+            scanEndedAt = time;
+            scanLength = length;
+        }
+        length = 0;
+        overflowed = false;
+        return scan;
+    }
+
+    /** The code completed by the last successful {@link #onTerminator}. */
+    String code() {
+        return new String(buffer, 0, scanLength);
+    }
+
+    /** First key to terminator, in ms, for the last scan. */
+    long scanDurationMs() {
+        return scanEndedAt - scanStartedAt;
+    }
+
+    /** Time of the last scan's terminator key. */
+    long scanEndedAt() {
+        return scanEndedAt;
+    }
+
+    /** Drops any partial run (e.g. focus moved away). */
+    void reset() {
+        length = 0;
+        overflowed = false;
+    }
+}
@@ -0,0 +1,195 @@
+package com.curbngo.browser;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.LOG;
+import org.apache.cordova.PluginResult;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.webkit.ValueCallback;
+import android.webkit.WebView;
+
+/**
+ * One executeScriptStream() call: a script result pulled out of the page in bounded
+ * chunks instead of one evaluateJavascript string.
+ *
+ * The page keeps the serialized result (see {@link PageScripts#scriptStream}) and
+ * reports its length through Android.scriptStreamReady. Native then pulls one chunk
+ * per evaluateJavascript round trip and forwards it as a keep-alive PluginResult.
+ * At most {@code window} chunks are unacknowledged by the host at any time; the
+ * Browser.js wrapper acks each chunk once its handler has run, which is what lets
+ * the next pull happen. Native heap use is therefore bounded by one chunk, however
+ * large the result.
+ *
+ * UI-thread only.
+ */
+final class ScriptStream {
+
+    static final int DEFAULT_CHUNK_LENGTH = 64 * 1024;
+    static final int MIN_CHUNK_LENGTH = 1024;
+    static final int MAX_CHUNK_LENGTH = 512 * 1024;
+    static final int DEFAULT_MAX_LENGTH = 32 * 1024 * 1024;
+    static final int DEFAULT_WINDOW = 4;
+    static final long DEFAULT_READY_TIMEOUT_MS = 30000L;
+
+    private static final String TAG = "BrowserScriptStream";
+
+    final String id;
+    private final WebView view;
+    private final CallbackContext callback;
+    private final int window;
+    private final Runnable onFinished;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private boolean ready;
+    private boolean pulling;
+    private boolean finished;
+    private int inFlight;
+    private int chunks;
+    private long length;
+
+    ScriptStream(String id, WebView view, CallbackContext callback, int window, Runnable onFinished) {
+        this.id = id;
+        this.view = view;
+        this.callback = callback;
+        this.window = Math.max(1, window);
+        this.onFinished = onFinished;
+    }
+
+    /** Starts the producer in the page; fails if it does not report within {@code readyTimeoutMs}. */
+    void start(String code, int chunkLength, int maxLength, final long readyTimeoutMs) {
+        handler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (!ready) {
+                    fail("Script result not ready after " + readyTimeoutMs + " ms");
+                }
+            }
+        }, readyTimeoutMs);
+        view.evaluateJavascript(PageScripts.scriptStream(id, code, chunkLength, maxLength), new ValueCallback<String>() {
+            @Override
+            public void onReceiveValue(String value) {
+                if (!"true".equals(value)) {
+                    fail("Script stream could not start in this page");
+                }
+            }
+        });
+    }
+
+    /** The page has the result ({@code error} null) or gave up. */
+    void onReady(long resultLength, String kind, String error) {
+        if (finished || ready) {
+            return;
+        }
+        ready = true;
+        handler.removeCallbacksAndMessages(null);
+        if (error != null) {
+            fail(error);
+            return;
+        }
+        try {
+            JSONObject event = new JSONObject();
+            event.put("type", "start");
+            event.put("stream", id);
+            event.put("length", resultLength);
+            event.put("kind", kind);
+            send(event, true);
+        } catch (JSONException e) {
+            fail("Error starting script stream: " + e.getMessage());
+            return;
+        }
+        pump();
+    }
+
+    /** The host has handled one chunk. */
+    void onAck() {
+        if (inFlight > 0) {
+            inFlight--;
+        }
+        pump();
+    }
+
+    /** Ends the stream with an error and drops the page-side copy. */
+    void fail(String reason) {
+        if (finished) {
+            return;
+        }
+        finish();
+        view.evaluateJavascript(PageScripts.discardScriptStream(id), null);
+        callback.error(reason);
+    }
+
+    private void pump() {
+        if (finished || !ready || pulling || inFlight >= window) {
+            return;
+        }
+        pulling = true;
+        view.evaluateJavascript(PageScripts.nextStreamChunk(id), new ValueCallback<String>() {
+            @Override
+            public void onReceiveValue(String value) {
+                pulling = false;
+                if (finished) {
+                    return;
+                }
+                Object chunk;
+                try {
+                    chunk = value != null ? new JSONTokener(value).nextValue() : null;
+                } catch (JSONException e) {
+                    fail("Error reading script stream: " + e.getMessage());
+                    return;
+                }
+                if (!(chunk instanceof String)) {
+                    complete();
+                    return;
+                }
+                String data = (String) chunk;
+                try {
+                    JSONObject event = new JSONObject();
+                    event.put("type", "chunk");
+                    event.put("stream", id);
+                    event.put("seq", chunks);
+                    event.put("data", data);
+                    chunks++;
+                    length += data.length();
+                    inFlight++;
+                    send(event, true);
+                } catch (JSONException e) {
+                    fail("Error sending script chunk: " + e.getMessage());
+                    return;
+                }
+                pump();
+            }
+        });
+    }
+
+    private void complete() {
+        finish();
+        try {
+            JSONObject event = new JSONObject();
+            event.put("type", "end");
+            event.put("stream", id);
+            event.put("chunks", chunks);
+            event.put("length", length);
+            send(event, false);
+        } catch (JSONException e) {
+            LOG.e(TAG, "Error ending script stream: " + e.getMessage());
+            callback.error("Error ending script stream: " + e.getMessage());
+        }
+    }
+
+    private void finish() {
+        finished = true;
+        handler.removeCallbacksAndMessages(null);
+        onFinished.run();
+    }
+
+    private void send(JSONObject event, boolean keepCallback) {
+        PluginResult r = new PluginResult(PluginResult.Status.OK, event);
+        r.setKeepCallback(keepCallback);
+        callback.sendPluginResult(r);
+    }
+}
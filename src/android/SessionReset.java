@@ -0,0 +1,279 @@
+package com.curbngo.browser;
+
+import org.apache.cordova.LOG;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.webkit.CookieManager;
+import android.webkit.ValueCallback;
+import android.webkit.WebStorage;
+import android.webkit.WebView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Wipes session data between kiosk customers and reports when it is done.
+ *
+ * All steps start at once on the UI thread and complete independently:
+ *  - cookies, via removeAllCookies with a completion callback, then flush();
+ *  - WebStorage.deleteAllData() (localStorage, IndexedDB, Cache Storage and
+ *    service-worker registrations for every origin). It has no callback of its
+ *    own; a getOrigins() query issued right after it goes through the same quota
+ *    manager, and its answer is taken as the delete having been processed;
+ *  - the live document's localStorage and sessionStorage, when a WebView is given;
+ *  - for {@link ResetScope#ALL} only, the live document's service workers, Cache
+ *    Storage and IndexedDB. Those are promises, so a second script waits for all of
+ *    them to settle and reports each outcome through the Android bridge
+ *    ({@link #documentReported}). An IndexedDB delete that the page's own open
+ *    connection blocks settles as "blocked": it completes once the page unloads.
+ *    When the next session's load unloads the document first, the script reports
+ *    at pagehide, with what hadn't settled as "unloaded";
+ *  - for {@link ResetScope#ALL} only: the WebView HTTP cache.
+ *
+ * {@link Listener#onIdentityCleared} fires as soon as cookies and web storage (the
+ * WebStorage wipe and the document's own storage) are cleared, so the next session
+ * can start loading while the slower steps are still running;
+ * {@link Listener#onComplete} fires when every step is done. A step that hasn't
+ * reported after {@link #TIMEOUT_MS} (e.g. the renderer is gone) is given up on:
+ * both callbacks still fire so the kiosk never hangs, and the {@link Outcome}
+ * names it as timed out rather than cleared.
+ * UI-thread only.
+ */
+final class SessionReset {
+
+    interface Listener {
+        void onIdentityCleared(long elapsedMs);
+
+        void onComplete(long elapsedMs, Outcome outcome);
+    }
+
+    /** How the steps ended. Empty lists mean everything was cleared. */
+    static final class Outcome {
+        /** Steps that never reported back before the timeout. */
+        final List<String> timedOut;
+        /** Steps (or in-page stores) that reported an error. */
+        final List<String> failed;
+
+        Outcome(List<String> timedOut, List<String> failed) {
+            this.timedOut = timedOut;
+            this.failed = failed;
+        }
+
+        /** "ok", "failed" or "timedOut" (which wins over failed). */
+        String status() {
+            return !timedOut.isEmpty() ? "timedOut" : !failed.isEmpty() ? "failed" : "ok";
+        }
+    }
+
+    static final long TIMEOUT_MS = 3000L;
+
+    static final String STEP_COOKIES = "cookies";
+    static final String STEP_WEB_STORAGE = "webStorage";
+    static final String STEP_DOCUMENT = "document";
+    static final String STEP_DOCUMENT_STORES = "documentStores";
+    static final String STEP_HTTP_CACHE = "httpCache";
+
+    private static final String TAG = "BrowserSessionReset";
+
+    private static final String IDENTITY_SCRIPT =
+        "(function(){try{localStorage.clear();sessionStorage.clear();}catch(e){}return true;})()";
+
+    // Resets waiting for their document to report, by token. UI thread only.
+    private static final Map<String, SessionReset> awaitingDocument = new HashMap<>();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final ResetScope scope;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final long startedAt = SystemClock.elapsedRealtime();
+
+    private final Set<String> identityPending = new LinkedHashSet<>();
+    private final Set<String> pending = new LinkedHashSet<>();
+    private final List<String> timedOut = new ArrayList<>();
+    private final List<String> failed = new ArrayList<>();
+    private String token;
+    private boolean identityReported;
+    private boolean completeReported;
+
+    private SessionReset(ResetScope scope, Listener listener) {
+        this.scope = scope;
+        this.listener = listener;
+    }
+
+    /** Starts a reset. {@code view} may be null when there is no live document to clean. */
+    static void run(WebView view, ResetScope scope, Listener listener) {
+        new SessionReset(scope, listener).start(view);
+    }
+
+    /**
+     * The document-side script's report: {@code resultsJson} maps each in-page store to
+     * "ok" or its error. Called by the Android bridge; any thread.
+     */
+    static void documentReported(final String token, final String resultsJson) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                SessionReset reset = awaitingDocument.remove(token);
+                if (reset != null) {
+                    reset.documentDone(resultsJson);
+                }
+            }
+        });
+    }
+
+    private void start(WebView view) {
+        if (scope == ResetScope.NONE) {
+            report();
+            return;
+        }
+        identityPending.add(STEP_COOKIES);
+        identityPending.add(STEP_WEB_STORAGE);
+        if (view != null) {
+            identityPending.add(STEP_DOCUMENT);
+        }
+        pending.addAll(identityPending);
+        if (view != null && scope == ResetScope.ALL) {
+            pending.add(STEP_DOCUMENT_STORES);
+            pending.add(STEP_HTTP_CACHE);
+        }
+
+        handler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                timedOut.addAll(pending);
+                LOG.w(TAG, "Session reset timed out waiting for " + timedOut);
+                if (token != null) {
+                    awaitingDocument.remove(token);
+                }
+                identityPending.clear();
+                pending.clear();
+                report();
+            }
+        }, TIMEOUT_MS);
+
+        final CookieManager cookies = CookieManager.getInstance();
+        cookies.removeAllCookies(new ValueCallback<Boolean>() {
+            @Override
+            public void onReceiveValue(Boolean removed) {
+                cookies.flush();
+                done(STEP_COOKIES);
+            }
+        });
+
+        WebStorage storage = WebStorage.getInstance();
+        storage.deleteAllData();
+        storage.getOrigins(new ValueCallback<Map>() {
+            @Override
+            public void onReceiveValue(Map origins) {
+                done(STEP_WEB_STORAGE);
+            }
+        });
+
+        if (view != null) {
+            view.evaluateJavascript(IDENTITY_SCRIPT, new ValueCallback<String>() {
+                @Override
+                public void onReceiveValue(String value) {
+                    done(STEP_DOCUMENT);
+                }
+            });
+            if (scope == ResetScope.ALL) {
+                token = UUID.randomUUID().toString();
+                awaitingDocument.put(token, this);
+                view.evaluateJavascript(storesScript(token), null);
+                view.clearCache(true);
+                done(STEP_HTTP_CACHE);
+            }
+        }
+    }
+
+    private void documentDone(String resultsJson) {
+        if (!pending.contains(STEP_DOCUMENT_STORES)) {
+            return; // already timed out
+        }
+        try {
+            JSONObject results = new JSONObject(resultsJson);
+            Iterator<String> stores = results.keys();
+            while (stores.hasNext()) {
+                String store = stores.next();
+                String result = results.optString(store);
+                if ("blocked".equals(result) || "unloaded".equals(result)) {
+                    // Not a failure: deleteAllData() already covers the origin's stores.
+                    LOG.d(TAG, "The document's " + store + " delete did not settle in the page: " + result);
+                } else if (!"ok".equals(result)) {
+                    LOG.w(TAG, "Could not clear the document's " + store + ": " + result);
+                    failed.add(store);
+                }
+            }
+        } catch (JSONException e) {
+            failed.add(STEP_DOCUMENT_STORES);
+        }
+        done(STEP_DOCUMENT_STORES);
+    }
+
+    private void done(String step) {
+        identityPending.remove(step);
+        pending.remove(step);
+        report();
+    }
+
+    private void report() {
+        long elapsed = SystemClock.elapsedRealtime() - startedAt;
+        if (!identityReported && identityPending.isEmpty()) {
+            identityReported = true;
+            listener.onIdentityCleared(elapsed);
+        }
+        if (!completeReported && pending.isEmpty()) {
+            completeReported = true;
+            handler.removeCallbacksAndMessages(null);
+            listener.onComplete(elapsed, new Outcome(Collections.unmodifiableList(timedOut),
+                Collections.unmodifiableList(failed)));
+        }
+    }
+
+    /**
+     * Waits for the document's service-worker, Cache Storage and IndexedDB deletes to
+     * settle, then reports {store: "ok" | "blocked" | error} to Android.sessionResetDone
+     * with {@code token}. If the document unloads first, it reports then, with the stores
+     * still unsettled as "unloaded".
+     */
+    private static String storesScript(String token) {
+        return
+            "(function(token){" +
+            "var names=[],steps=[],out={},sent=false;" +
+            "function settle(ps){if(Promise.allSettled)return Promise.allSettled(ps);" +
+            "return Promise.all(ps.map(function(p){return p.then(function(v){return{status:'fulfilled',value:v};}," +
+            "function(e){return{status:'rejected',reason:e};});}));}" +
+            "function result(r){return r.status==='fulfilled'?(r.value==='blocked'?'blocked':'ok'):String(r.reason&&r.reason.message||r.reason);}" +
+            "function send(){if(sent)return;sent=true;Android.sessionResetDone(token,JSON.stringify(out));}" +
+            "function step(name,run){names.push(name);out[name]='unloaded';var p;try{p=Promise.resolve(run());}catch(e){p=Promise.reject(e);}" +
+            "steps.push(p);settle([p]).then(function(rs){out[name]=result(rs[0]);});}" +
+            "if('serviceWorker' in navigator)step('serviceWorkers',function(){" +
+            "return navigator.serviceWorker.getRegistrations().then(function(rs){" +
+            "return Promise.all(rs.map(function(r){return r.unregister();}));});});" +
+            "if('caches' in window)step('cacheStorage',function(){" +
+            "return caches.keys().then(function(ks){return Promise.all(ks.map(function(k){return caches.delete(k);}));});});" +
+            "if('indexedDB' in window&&indexedDB.databases)step('indexedDB',function(){" +
+            "return indexedDB.databases().then(function(ds){return Promise.all(ds.map(function(d){" +
+            "return new Promise(function(ok,fail){var q=indexedDB.deleteDatabase(d.name);" +
+            // The page's own open connection blocks the delete until it unloads; don't wait for that.
+            "q.onsuccess=function(){ok('ok');};q.onblocked=function(){ok('blocked');};q.onerror=function(){fail(q.error);};});}))" +
+            ".then(function(rs){return rs.indexOf('blocked')>=0?'blocked':'ok';});});});" +
+            "settle(steps).then(function(rs){rs.forEach(function(r,i){out[names[i]]=result(r);});send();});" +
+            // The next session's load replaces this document; report what settled before it goes.
+            "window.addEventListener('pagehide',send);" +
+            "return true;" +
+            "})(" + JSONObject.quote(token) + ")";
+    }
+}
@@ -0,0 +1,210 @@
+package com.curbngo.browser;
+
+import org.apache.cordova.LOG;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.webkit.WebView;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Opt-in on-disk copy of a browser instance's navigation state (WebView.saveState), so
+ * that after the app is killed or crashes, open() with restore:true continues the
+ * session where it was instead of at the start URL.
+ *
+ * saveState and the Parcel holding its result are UI-thread work, so a snapshot is
+ * taken there and handed to one shared writer thread as bytes. The writer replaces the
+ * previous file through a temp file and a rename, so a crash mid-write never leaves a
+ * torn snapshot. A snapshot over the size cap is not written, and the older one it
+ * would have replaced is deleted since it no longer matches the page. Reads and clears
+ * go through the same thread, so they always see the latest write. A snapshot older
+ * than its TTL is deleted instead of restored.
+ */
+final class SessionSnapshot {
+
+    private static final String TAG = "BrowserSnapshot";
+    private static final String DIR = "browser-snapshots";
+    private static final int VERSION = 1;
+
+    // One writer for every instance: keeps each file's writes, reads and deletes in order.
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor();
+
+    /** A snapshot read back from disk. */
+    static final class Saved {
+        final Bundle state;
+        final String url;
+        final long ageMs;
+        final int bytes;
+
+        Saved(Bundle state, String url, long ageMs, int bytes) {
+            this.state = state;
+            this.url = url;
+            this.ageMs = ageMs;
+            this.bytes = bytes;
+        }
+    }
+
+    private final File file;
+
+    SessionSnapshot(Context context, String instanceId) {
+        this.file = new File(new File(context.getFilesDir(), DIR), AssetCache.keyFor(instanceId) + ".state");
+    }
+
+    /** Snapshots {@code view}'s back/forward list and queues the write. UI-thread only. */
+    void save(WebView view, final int maxBytes) {
+        Bundle state = new Bundle();
+        android.webkit.WebBackForwardList list = view.saveState(state);
+        if (list == null || list.getSize() == 0) {
+            return; // nothing worth keeping yet (and don't replace a snapshot that has something)
+        }
+        final byte[] data;
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeBundle(state);
+            data = parcel.marshall();
+        } finally {
+            parcel.recycle();
+        }
+        final String url = view.getUrl();
+        final long savedAt = System.currentTimeMillis();
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (data.length > maxBytes) {
+                    LOG.d(TAG, "Snapshot of " + data.length + " bytes is over the " + maxBytes + " byte cap; not kept");
+                    file.delete();
+                    return;
+                }
+                write(data, url != null ? url : "", savedAt);
+            }
+        });
+    }
+
+    /**
+     * Reads the snapshot back, or returns null when there is none, it is older than
+     * {@code ttlMs}, or it can't be read. Blocks on the writer; call off the UI thread.
+     */
+    Saved read(final long ttlMs) {
+        try {
+            return writer.submit(new Callable<Saved>() {
+                @Override
+                public Saved call() {
+                    return load(ttlMs);
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            LOG.e(TAG, "Failed to read snapshot: " + e.getCause());
+            return null;
+        }
+    }
+
+    /** Deletes the snapshot once pending writes are done. Any thread. */
+    void clear() {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                file.delete();
+            }
+        });
+    }
+
+    private void write(byte[] data, String url, long savedAt) {
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            LOG.e(TAG, "Cannot create " + dir);
+            return;
+        }
+        File tmp = new File(dir, file.getName() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new FileOutputStream(tmp));
+            out.writeInt(VERSION);
+            out.writeLong(savedAt);
+            out.writeUTF(url);
+            out.writeInt(data.length);
+            out.write(data);
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file)) {
+                throw new IOException("rename failed");
+            }
+        } catch (IOException e) {
+            LOG.e(TAG, "Failed to write snapshot: " + e.getMessage());
+            tmp.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private Saved load(long ttlMs) {
+        if (!file.isFile()) {
+            return null;
+        }
+        DataInputStream in = null;
+        byte[] data;
+        String url;
+        long age;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            if (in.readInt() != VERSION) {
+                throw new IOException("unknown snapshot version");
+            }
+            age = System.currentTimeMillis() - in.readLong();
+            url = in.readUTF();
+            int length = in.readInt();
+            if (age < 0 || age > ttlMs) {
+                LOG.d(TAG, "Snapshot is " + age + " ms old; discarded");
+                file.delete();
+                return null;
+            }
+            if (length < 0 || length > file.length()) {
+                throw new IOException("corrupt snapshot");
+            }
+            data = new byte[length];
+            in.readFully(data);
+        } catch (IOException e) {
+            LOG.e(TAG, "Discarding unreadable snapshot: " + e.getMessage());
+            file.delete();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(data, 0, data.length);
+            parcel.setDataPosition(0);
+            Bundle state = parcel.readBundle(WebView.class.getClassLoader());
+            return state != null ? new Saved(state, url, age, data.length) : null;
+        } catch (RuntimeException e) {
+            LOG.e(TAG, "Discarding snapshot that doesn't unmarshal: " + e.getMessage());
+            file.delete();
+            return null;
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
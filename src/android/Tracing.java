@@ -0,0 +1,109 @@
+package com.curbngo.browser;
+
+import android.os.Build;
+import android.os.Trace;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional android.os.Trace instrumentation, visible in Perfetto/systrace captures.
+ *
+ * Off by default; switched at runtime (setTracing action, or the BrowserTracing
+ * preference) so field devices can be profiled without a debug build. While off,
+ * every call is one volatile read and a branch.
+ *
+ * Sections must be closed with the value {@link #begin} returned, so switching in the
+ * middle of a section never unbalances the thread's section stack. Async slices and
+ * counters need API 29; below that only sections are recorded.
+ */
+final class Tracing {
+
+    private static volatile boolean enabled;
+    private static final AtomicInteger cookies = new AtomicInteger();
+
+    private Tracing() {
+    }
+
+    static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Opens a section on the calling thread; pass the result to {@link #end}. */
+    static boolean begin(String name) {
+        if (!enabled) {
+            return false;
+        }
+        Trace.beginSection(name);
+        return true;
+    }
+
+    static void end(boolean begun) {
+        if (begun) {
+            Trace.endSection();
+        }
+    }
+
+    /** Starts an async slice (one that may end on another thread); returns its cookie, 0 if not traced. */
+    static int beginAsync(String name) {
+        if (!enabled || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            return 0;
+        }
+        int cookie = cookies.incrementAndGet();
+        if (cookie == 0) {
+            cookie = cookies.incrementAndGet();
+        }
+        Trace.beginAsyncSection(name, cookie);
+        return cookie;
+    }
+
+    static void endAsync(String name, int cookie) {
+        if (cookie != 0) {
+            Trace.endAsyncSection(name, cookie);
+        }
+    }
+
+    /**
+     * Wraps a UI-thread hop: the wait in the queue becomes an async "{@code name}.hop"
+     * slice and the run itself a {@code name} section. Returns {@code task} untouched
+     * while tracing is off.
+     */
+    static Runnable wrap(final String name, final Runnable task) {
+        if (!enabled) {
+            return task;
+        }
+        final int hop = beginAsync(name + ".hop");
+        return new Runnable() {
+            @Override
+            public void run() {
+                endAsync(name + ".hop", hop);
+                boolean traced = begin(name);
+                try {
+                    task.run();
+                } finally {
+                    end(traced);
+                }
+            }
+        };
+    }
+
+    /** A monotonically increasing trace counter, only advanced while tracing is on. */
+    static final class Counter {
+        private final String name;
+        private final AtomicLong value = new AtomicLong();
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        void increment() {
+            if (enabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                Trace.setCounter(name, value.incrementAndGet());
+            }
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.curbngo.browser;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.webkit.JavascriptInterface;
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.LOG;
@@ -12,37 +14,182 @@ public class WebAppInterface {
 
     private static final String TAG = "WebAppInterface";
 
-    private CallbackContext callbackContext;
+    // Messages delivered to the host, across all instances; a trace counter while tracing is on.
+    private static final Tracing.Counter SENT = new Tracing.Counter("Browser.bridgeMessages");
+
+    // Written on the UI thread by open(), read on the JavaBridge thread.
+    private volatile CallbackContext callbackContext;
+
+    // Optional throttling/batching of activity events; null means raw delivery, as before.
+    private volatile EventCoalescer coalescer;
+    private final Handler flushHandler = new Handler(Looper.getMainLooper());
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushEvents();
+        }
+    };
+
+    /** Receives the in-page performance report posted by the metrics collector script. */
+    public interface PageMetricsListener {
+        void onPageMetrics(JSONObject metrics);
+    }
+
+    private volatile PageMetricsListener metricsListener;
+
+    /** Receives the ordered results of an executeScripts() batch. */
+    public interface ScriptResultsListener {
+        void onScriptResults(String batchId, String resultsJson);
+    }
+
+    private volatile ScriptResultsListener scriptResultsListener;
+
+    /** Told when an executeScriptStream() producer has its result ready (or failed). */
+    public interface ScriptStreamListener {
+        void onScriptStreamReady(String streamId, long length, String kind, String error);
+    }
+
+    private volatile ScriptStreamListener scriptStreamListener;
 
     public WebAppInterface(CallbackContext callbackContext) {
         LOG.d(TAG, "instantiating");
         this.callbackContext = callbackContext;
     }
 
+    /** Re-targets the bridge when a pooled WebView is handed to a new open() call. */
+    public void setCallbackContext(CallbackContext callbackContext) {
+        this.callbackContext = callbackContext;
+    }
+
+    public void setPageMetricsListener(PageMetricsListener listener) {
+        this.metricsListener = listener;
+    }
+
+    public void setScriptResultsListener(ScriptResultsListener listener) {
+        this.scriptResultsListener = listener;
+    }
+
+    public void setScriptStreamListener(ScriptStreamListener listener) {
+        this.scriptStreamListener = listener;
+    }
+
+    /**
+     * Switches event delivery. Pending batched events are flushed to the previous
+     * session first. Pass null for plain one-result-per-event delivery.
+     */
+    public void setCoalescer(EventCoalescer coalescer) {
+        flushEvents();
+        this.coalescer = coalescer;
+    }
+
+    /** Sends whatever the current batch window holds right away. */
+    public void flushEvents() {
+        flushHandler.removeCallbacks(flushRunnable);
+        EventCoalescer c = coalescer;
+        if (c == null) {
+            return;
+        }
+        try {
+            JSONObject batch = c.drain(System.currentTimeMillis());
+            if (batch != null) {
+                send(new PluginResult(PluginResult.Status.OK, batch));
+            }
+        } catch (JSONException e) {
+            LOG.e(TAG, "Error building event batch: " + e.getMessage());
+        }
+    }
+
     @JavascriptInterface
     public void eventTriggered(String eventType) {
-        if (callbackContext != null) {
-            PluginResult r = new PluginResult(PluginResult.Status.OK, eventType);
-            r.setKeepCallback(true);
-            callbackContext.sendPluginResult(r);
+        if (callbackContext != null && admit(EventCoalescer.CHANNEL_EVENTS, eventType)) {
+            send(new PluginResult(PluginResult.Status.OK, eventType));
         }
     }
 
     @JavascriptInterface
     public void postMessage(String jsonMessage) {
         if (callbackContext != null) {
+            boolean traced = Tracing.begin("Browser.postMessage.parse");
             try {
-                JSONObject messageObj = new JSONObject(jsonMessage);
-                PluginResult r = new PluginResult(PluginResult.Status.OK, messageObj);
-                r.setKeepCallback(true);
-                callbackContext.sendPluginResult(r);
+                JSONObject messageObj;
+                try {
+                    messageObj = new JSONObject(jsonMessage);
+                } finally {
+                    Tracing.end(traced);
+                }
+                if (messageObj.optBoolean("active", false)
+                        && !admit(EventCoalescer.CHANNEL_ACTIVITY, messageObj.optString("type", null))) {
+                    return;
+                }
+                send(new PluginResult(PluginResult.Status.OK, messageObj));
             } catch (JSONException e) {
                 LOG.e(TAG, "Error parsing JSON message: " + e.getMessage());
                 // Fall back to sending as string
-                PluginResult r = new PluginResult(PluginResult.Status.OK, jsonMessage);
-                r.setKeepCallback(true);
-                callbackContext.sendPluginResult(r);
+                send(new PluginResult(PluginResult.Status.OK, jsonMessage));
             }
         }
     }
-} 
\ No newline at end of file
+
+    @JavascriptInterface
+    public void postMetrics(String jsonMetrics) {
+        PageMetricsListener listener = metricsListener;
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.onPageMetrics(new JSONObject(jsonMetrics));
+        } catch (JSONException e) {
+            LOG.e(TAG, "Error parsing page metrics: " + e.getMessage());
+        }
+    }
+
+    @JavascriptInterface
+    public void scriptResults(String batchId, String resultsJson) {
+        ScriptResultsListener listener = scriptResultsListener;
+        if (listener != null && batchId != null) {
+            listener.onScriptResults(batchId, resultsJson);
+        }
+    }
+
+    @JavascriptInterface
+    public void scriptStreamReady(String streamId, long length, String kind, String error) {
+        ScriptStreamListener listener = scriptStreamListener;
+        if (listener != null && streamId != null) {
+            listener.onScriptStreamReady(streamId, length, kind, error);
+        }
+    }
+
+    /** Report of a session reset's in-page cleanup; see {@link SessionReset}. */
+    @JavascriptInterface
+    public void sessionResetDone(String token, String resultsJson) {
+        if (token != null) {
+            SessionReset.documentReported(token, resultsJson);
+        }
+    }
+
+    /** Runs an activity event through the coalescer; true if it should be sent on its own now. */
+    private boolean admit(String channel, String type) {
+        EventCoalescer c = coalescer;
+        if (c == null) {
+            return true;
+        }
+        switch (c.offer(channel, type, System.currentTimeMillis())) {
+            case EventCoalescer.SEND:
+                return true;
+            case EventCoalescer.QUEUED_NEW_WINDOW:
+                flushHandler.postDelayed(flushRunnable, c.getFlushMs());
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private void send(PluginResult r) {
+        CallbackContext cb = callbackContext;
+        if (cb != null) {
+            r.setKeepCallback(true);
+            cb.sendPluginResult(r);
+            SENT.increment();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.curbngo.browser;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.view.ViewGroup;
+import android.webkit.RenderProcessGoneDetail;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import org.apache.cordova.LOG;
+
+import java.util.ArrayDeque;
+
+/**
+ * Small pool of pre-built, pre-configured WebViews so open() does not pay the
+ * Chromium instantiation cost on the customer's tap.
+ *
+ * Instances are created by the owner's {@link Factory} (same settings, clients and
+ * JS bridge as a fresh open()), warmed one per main-thread idle slice, and
+ * returned by close() after being reset to about:blank. The pool never grows past
+ * {@code maxSize}, refuses returns while the system reports low memory, and drops
+ * its idle instances when the app is asked to trim memory.
+ *
+ * All methods except the ComponentCallbacks2 hooks must be called on the UI thread.
+ */
+final class WebViewPool implements ComponentCallbacks2 {
+
+    private static final String TAG = "BrowserWebViewPool";
+
+    interface Factory {
+        WebView create();
+    }
+
+    private final Context context;
+    private final int maxSize;
+    private final Factory factory;
+    private final ArrayDeque<WebView> idle = new ArrayDeque<>();
+    private MessageQueue.IdleHandler warmer;
+
+    // Idle WebViews share the renderer with the live ones. If it dies they are dropped;
+    // the default client would let the app die with it.
+    private final WebViewClient idleClient = new WebViewClient() {
+        @Override
+        public boolean onRenderProcessGone(WebView view, RenderProcessGoneDetail detail) {
+            idle.remove(view);
+            view.destroy();
+            return true;
+        }
+    };
+
+    WebViewPool(Context context, int maxSize, Factory factory) {
+        this.context = context.getApplicationContext();
+        this.maxSize = maxSize;
+        this.factory = factory;
+        this.context.registerComponentCallbacks(this);
+    }
+
+    /** Fills the pool one WebView per idle pass of the main looper. */
+    void prewarm() {
+        if (warmer != null || idle.size() >= maxSize) {
+            return;
+        }
+        warmer = new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                if (idle.size() >= maxSize || isMemoryLow()) {
+                    warmer = null;
+                    return false;
+                }
+                WebView view = factory.create();
+                view.setWebViewClient(idleClient);
+                idle.addLast(view);
+                LOG.d(TAG, "Prewarmed WebView (" + idle.size() + "/" + maxSize + ")");
+                boolean more = idle.size() < maxSize;
+                if (!more) {
+                    warmer = null;
+                }
+                return more;
+            }
+        };
+        Looper.myQueue().addIdleHandler(warmer);
+    }
+
+    /** Returns a ready WebView, or null when the pool is empty. */
+    WebView acquire() {
+        WebView view = idle.pollFirst();
+        if (view != null) {
+            view.clearHistory(); // drop the about:blank entry left by release()
+            LOG.d(TAG, "Reusing pooled WebView (" + idle.size() + " left)");
+        }
+        return view;
+    }
+
+    /**
+     * Takes a WebView back. It is reset and kept if there is room and memory allows,
+     * otherwise destroyed. Either way the caller must not touch it afterwards.
+     */
+    void release(WebView view) {
+        if (view == null) {
+            return;
+        }
+        ViewGroup parent = (ViewGroup) view.getParent();
+        if (parent != null) {
+            parent.removeView(view);
+        }
+        if (idle.size() >= maxSize || isMemoryLow()) {
+            view.destroy();
+            return;
+        }
+        view.stopLoading();
+        view.loadUrl("about:blank");
+        view.clearHistory();
+        view.setWebViewClient(idleClient);
+        idle.addLast(view);
+    }
+
+    /** Destroys every idle WebView and stops warming. */
+    void clear() {
+        if (warmer != null) {
+            Looper.myQueue().removeIdleHandler(warmer);
+            warmer = null;
+        }
+        WebView view;
+        while ((view = idle.pollFirst()) != null) {
+            view.destroy();
+        }
+    }
+
+    /** Clears the pool and stops listening for memory callbacks. */
+    void dispose() {
+        clear();
+        context.unregisterComponentCallbacks(this);
+    }
+
+    private boolean isMemoryLow() {
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (am == null) {
+            return false;
+        }
+        ActivityManager.MemoryInfo info = new ActivityManager.MemoryInfo();
+        am.getMemoryInfo(info);
+        return info.lowMemory;
+    }
+
+    // --- ComponentCallbacks2 (delivered on the main thread) ------------------
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            LOG.d(TAG, "Trim memory level " + level + ", dropping " + idle.size() + " pooled WebView(s)");
+            clear();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        clear();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+}
@@ -1,32 +1,131 @@
 var exec = require('cordova/exec');
 
+// Every method takes an optional browser instance id (config.id / options.id for the
+// methods that already take an object, a trailing argument otherwise). Omitting it
+// targets the default instance.
 var Browser = {
+    // config.snapshot: true keeps the navigation state on disk (capped by snapshotMaxKB,
+    // default 512; stale after snapshotTtlMs, default 30 min) until close(). After the app
+    // was killed, open() with restore: true resumes from it instead of loading url.
+    // If the page's renderer crashes or is killed, the WebView is rebuilt and the page reloaded
+    // (rendererRecovery: false to turn off); a renderProcessGone event reports it. More than
+    // rendererMaxCrashes (default 3) within rendererCrashWindowMs (default 60000) stops it.
+    // Barcode scans are captured natively (barcodeScanURL or barcodeCapture: true) and end on
+    // Enter; barcodeTabTerminator: true also ends them on Tab, for scanners set to a Tab suffix.
     open: function(url, config, successCallback, errorCallback) {
         exec(successCallback, errorCallback, 'Browser', 'open', [url, config]);
     },
 
-    close: function(successCallback, errorCallback) {
-        exec(successCallback, errorCallback, 'Browser', 'close', []);
+    // Compiles an open() config once under a name; open(url, { profile: name, id, restore })
+    // then reuses it instead of parsing options (the call's other options are ignored).
+    registerProfile: function(name, config, successCallback, errorCallback) {
+        exec(successCallback, errorCallback, 'Browser', 'registerProfile', [name, config]);
     },
 
-    back: function(successCallback, errorCallback) {
-        exec(successCallback, errorCallback, 'Browser', 'back', []);
+    close: function(successCallback, errorCallback, id) {
+        exec(successCallback, errorCallback, 'Browser', 'close', [id]);
     },
 
-    hide: function(successCallback, errorCallback) {
-        exec(successCallback, errorCallback, 'Browser', 'hide', []);
+    back: function(successCallback, errorCallback, id) {
+        exec(successCallback, errorCallback, 'Browser', 'back', [id]);
     },
 
-    show: function(successCallback, errorCallback) {
-        exec(successCallback, errorCallback, 'Browser', 'show', []);
+    hide: function(successCallback, errorCallback, id) {
+        exec(successCallback, errorCallback, 'Browser', 'hide', [id]);
+    },
+
+    show: function(successCallback, errorCallback, id) {
+        exec(successCallback, errorCallback, 'Browser', 'show', [id]);
     },
 
     executeScript: function(config, successCallback, errorCallback) {
         exec(successCallback, errorCallback, 'Browser', 'executeScript', [config]);
     },
 
-    navigate: function(url, successCallback, errorCallback) {
-        exec(successCallback, errorCallback, 'Browser', 'navigate', [url]);
+    // Runs an array of snippets in one call; resolves with [{value|error, ms}, ...] in order.
+    // options: { timeoutMs (per snippet, default 5000), totalTimeoutMs (default 15000), id }
+    executeScripts: function(snippets, options, successCallback, errorCallback) {
+        exec(successCallback, errorCallback, 'Browser', 'executeScripts', [snippets, options]);
+    },
+
+    // Streams a large result back in chunks: onChunk(data, info) is called per chunk (return a
+    // promise to hold back the next ones until it settles); successCallback gets the summary.
+    // config: { code, chunkSize (chars, default 65536), maxLength (chars), window, timeoutMs, id }
+    executeScriptStream: function(config, onChunk, successCallback, errorCallback) {
+        var id = config && config.id;
+        exec(function(msg) {
+            if (msg && msg.type === 'chunk') {
+                var ack = function() {
+                    exec(null, null, 'Browser', 'streamAck', [msg.stream, id]);
+                };
+                var handled = onChunk ? onChunk(msg.data, msg) : null;
+                if (handled && typeof handled.then === 'function') {
+                    handled.then(ack, ack);
+                } else {
+                    ack();
+                }
+            } else if (msg && msg.type === 'end' && successCallback) {
+                successCallback(msg);
+            }
+        }, errorCallback, 'Browser', 'executeScriptStream', [config]);
+    },
+
+    navigate: function(url, successCallback, errorCallback, id) {
+        exec(successCallback, errorCallback, 'Browser', 'navigate', [url, id]);
+    },
+
+    // options: { mode: 'replace' (default) | 'add' | 'remove', id }
+    updateWhitelist: function(domains, options, successCallback, errorCallback) {
+        exec(successCallback, errorCallback, 'Browser', 'updateWhitelist', [domains, options]);
+    },
+
+    // Pushes data to window.BrowserPort.on(type, ...) handlers; needs open(url, {transport: 'port'}).
+    postMessage: function(type, data, options, successCallback, errorCallback) {
+        exec(successCallback, errorCallback, 'Browser', 'postMessage', [type, data, options]);
+    },
+
+    prefetch: function(urls, options, successCallback, errorCallback) {
+        exec(successCallback, errorCallback, 'Browser', 'prefetch', [urls, options]);
+    },
+
+    // Renders url offscreen so a later navigate(url) swaps it in; resolves once it has loaded.
+    // A swap replaces the back history with the preloaded page alone, so once the live page
+    // can go back, navigate(url) loads normally instead (a miss, counted as keptHistory in
+    // getPreloadStats) unless the preload was made with replaceHistory: true.
+    // options: { ttlMs (default 60000), replaceHistory (default false), id }
+    preload: function(url, options, successCallback, errorCallback) {
+        exec(successCallback, errorCallback, 'Browser', 'preload', [url, options]);
+    },
+
+    getMetrics: function(successCallback, errorCallback, id) {
+        exec(successCallback, errorCallback, 'Browser', 'getMetrics', [id]);
+    },
+
+    getPowerStats: function(successCallback, errorCallback, id) {
+        exec(successCallback, errorCallback, 'Browser', 'getPowerStats', [id]);
+    },
+
+    // Bytes served and estimated saved by open()'s shopifyImages width capping.
+    getImageStats: function(successCallback, errorCallback, id) {
+        exec(successCallback, errorCallback, 'Browser', 'getImageStats', [id]);
+    },
+
+    // Per-rule hit counts for open()'s blockRules.
+    getBlockStats: function(successCallback, errorCallback, id) {
+        exec(successCallback, errorCallback, 'Browser', 'getBlockStats', [id]);
+    },
+
+    getPreloadStats: function(successCallback, errorCallback, id) {
+        exec(successCallback, errorCallback, 'Browser', 'getPreloadStats', [id]);
+    },
+
+    getCacheStats: function(successCallback, errorCallback, id) {
+        exec(successCallback, errorCallback, 'Browser', 'getCacheStats', [id]);
+    },
+
+    // Turns android.os.Trace sections and counters on or off (for Perfetto/systrace captures).
+    setTracing: function(enabled, successCallback, errorCallback) {
+        exec(successCallback, errorCallback, 'Browser', 'setTracing', [!!enabled]);
     }
 };
 